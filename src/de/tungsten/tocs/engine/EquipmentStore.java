@@ -105,7 +105,7 @@ public class EquipmentStore implements ISubSystem {
 		if ( connection.getPlayer().consumeMoney( selection.getPrice() ) ) {
 			// consumeMoney gibt true zurck, wenn sich der Spieler das leisten kann.
 			Node hands = NodeLocator.findNodeAtPlayer( Node.NODE_HANDS, connection.getPlayer() );
-			hands.addChild( new WeaponNode( connection.getPlayer(), new String[] { selection.getName() }, "", selection) );
+			new WeaponNode( hands, new String[] { selection.getName() }, "", selection );
 		}
 	}
 	
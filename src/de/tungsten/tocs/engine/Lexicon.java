@@ -0,0 +1,138 @@
+package de.tungsten.tocs.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Das Lexikon ordnet jedem bekannten Wort eine fortlaufende Nummer zu, beginnend bei 0.
+ * Bekannt sind die Schlsselwrter der Parser, die Prpositionen, die Richtungen und
+ * die Namen aller Knoten, also auch alle Namen, die eine Karte ldt.
+ * <p>
+ * Wrter werden beim Erstellen der Knoten und Parser mit {@link #intern(String)}
+ * eingetragen. Beim Parsen wird jedes Wort der Eingabe nur einmal mit
+ * {@link #lookup(String)} nachgeschlagen, danach werden nur noch Nummern verglichen
+ * bzw. als Index in Arrays verwendet. Ein Wort, das nicht im Lexikon steht, kann zu
+ * keinem Knoten gehren, die Suche kann dann sofort abgebrochen werden.
+ * <p>
+ * Die Eingaben der Spieler werden nie eingetragen. Da aber jeder Knoten seine Namen
+ * eintrgt, wchst das Lexikon nicht nur mit der Karte, sondern auch mit den
+ * Nicknames der Spieler und den Namen gekaufter Waffen (siehe
+ * {@link de.tungsten.tocs.engine.nodes.WeaponNode WeaponNode}). Wrter werden nie
+ * wieder entfernt, das Lexikon ist also so gro wie die Zahl der verschiedenen Namen,
+ * die seit dem Start des Servers vorkamen. Gro- und Kleinschreibung wird
+ * unterschieden, wie beim Vergleich der Namen von Knoten.
+ * <p>
+ * Diese Klasse ist als Singleton implementiert, die einzige Instanz kann mit
+ * {@link #getInstance()} erreicht werden. Nachschlagen ist ohne Sperre mglich, nur das
+ * Eintragen neuer Wrter ist <code>synchronized</code>.
+ *
+ * @author tungsten
+ *
+ */
+public class Lexicon {
+
+	/**
+	 * Die Nummer aller Wrter, die nicht im Lexikon stehen. Sie ist kleiner als jede
+	 * gltige Nummer.
+	 */
+	public static final int UNKNOWN = -1;
+
+	private static final Lexicon instance = new Lexicon();
+
+	/**
+	 * Gibt die einzige existierende Instanz der Klasse <code>Lexicon</code> zurck.
+	 *
+	 * @return	Die einzige existierende Instanz dieser Klasse.
+	 */
+	public static Lexicon getInstance() {
+		return instance;
+	}
+
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+	/**
+	 * Die Wrter, an der Stelle ihrer Nummer. Wird beim Eintragen durch eine grere
+	 * Kopie ersetzt.
+	 */
+	private volatile String[] words = new String[ 64 ];
+	private volatile int size = 0;
+
+	private Lexicon() {}
+
+	/**
+	 * Trgt das gegebene Wort ein, falls es noch nicht im Lexikon steht, und gibt seine
+	 * Nummer zurck.
+	 *
+	 * @param word	Das Wort.
+	 * @return		Die Nummer des Wortes, sie ndert sich nie mehr.
+	 */
+	public int intern( String word ) {
+
+		Integer id = ids.get( word );
+		if ( id != null ) return id;
+
+		synchronized ( this ) {
+
+			id = ids.get( word );
+			if ( id != null ) return id;
+
+			if ( size == words.length )
+				words = Arrays.copyOf( words, size * 2 );
+
+			// Erst das Wort, dann die Nummer verffentlichen
+			words[size] = word;
+			ids.put( word, size );
+			return size++;
+		}
+	}
+
+	/**
+	 * Trgt alle gegebenen Wrter ein.
+	 *
+	 * @param words	Die Wrter.
+	 * @return		Die Nummern der Wrter, in derselben Reihenfolge.
+	 */
+	public int[] intern( String[] words ) {
+
+		int[] result = new int[ words.length ];
+		for (int i = 0; i < words.length; i++)
+			result[i] = intern( words[i] );
+
+		return result;
+	}
+
+	/**
+	 * Gibt die Nummer des gegebenen Wortes zurck, ohne es einzutragen.
+	 *
+	 * @param word	Das Wort.
+	 * @return		Die Nummer des Wortes, oder {@link #UNKNOWN}, wenn es nicht im
+	 * 				Lexikon steht.
+	 */
+	public int lookup( String word ) {
+
+		Integer id = ids.get( word );
+		return id != null ? id : UNKNOWN;
+	}
+
+	/**
+	 * Gibt das Wort mit der gegebenen Nummer zurck.
+	 *
+	 * @param id	Die Nummer eines Wortes.
+	 * @return		Das Wort, oder <code>null</code>, wenn es keines mit dieser Nummer
+	 * 				gibt.
+	 */
+	public String getWord( int id ) {
+
+		String[] current = words;
+		return id >= 0 && id < current.length ? current[id] : null;
+	}
+
+	/**
+	 * Gibt die Anzahl der Wrter im Lexikon zurck. Alle Nummern sind kleiner.
+	 *
+	 * @return	Die Anzahl der Wrter.
+	 */
+	public int size() {
+		return size;
+	}
+}
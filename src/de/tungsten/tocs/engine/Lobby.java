@@ -1,8 +1,14 @@
 package de.tungsten.tocs.engine;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import de.tungsten.tocs.net.BroadcastService;
 import de.tungsten.tocs.net.IPlayerConnection;
 
 /**
@@ -100,7 +106,7 @@ public class Lobby  {
 	/**
 	 * Die zu den {@link #connections} passenden <code>LobbySubSystem</code>s.
 	 */
-	private Set<LobbySubSystem> subSystems = new HashSet<LobbySubSystem>();
+	private Map<IPlayerConnection, LobbySubSystem> subSystems = new HashMap<IPlayerConnection, LobbySubSystem>();
 	
 	/**
 	 * Gibt an, ob das Spiel gerade läuft (<code>true</code>), oder ob sich alle Spieler noch in der Lobby befinden
@@ -125,7 +131,7 @@ public class Lobby  {
 		
 		// LobbySubSystem erstellen
 		LobbySubSystem subSystem = new LobbySubSystem( this );
-		subSystems.add( subSystem );
+		subSystems.put( connection, subSystem );
 		
 		// Countdown starten wenn es der zweite Spieler ist
 		if ( subSystems.size() == 2 )
@@ -143,28 +149,41 @@ public class Lobby  {
 	 */
 	public synchronized void update() {
 		
-		// Wenn schon alle gespawnt sind, muss nichts gemacht werden.
-		if ( gameRunning ) return;
+		// Wenn das Spiel schon läuft, darf jeder sofort spawnen, der bereit ist.
+		if ( gameRunning ) {
+			releaseReady();
+			return;
+		}
 		
 		// Rausfinden ob alle Spieler ready sind.
 		boolean allReady = true;
-		for (LobbySubSystem current : subSystems) {
+		for (LobbySubSystem current : subSystems.values()) {
 			if ( !current.isReady() ) allReady = false;
 		}
 		
 		// Alle Spieler releasen
-		if ( allReady ) {
-			gameRunning = true;
-			
-			for (LobbySubSystem current : subSystems) {
-				current.releasePlayer();
-				subSystems.remove( current );
-			}
-
-			for (IPlayerConnection current : connections) {
-				connections.remove( current );
-			}
-		}
+		if ( allReady ) releaseAll();
+	}
+	
+	/**
+	 * Entfernt die gegebene <code>IPlayerConnection</code> aus der <code>Lobby</code>, z.B. weil der Spieler die
+	 * Verbindung getrennt hat. Wartet der Spieler bereits im <code>LobbySubSystem</code> auf das Spawnen, wird er
+	 * freigegeben. Waren alle anderen Spieler bereits ready, dürfen sie jetzt spawnen.
+	 * 
+	 * @param connection	Die zu entfernende Verbindung. Befindet sie sich nicht in der <code>Lobby</code>, passiert
+	 * 						nichts.
+	 */
+	public synchronized void remove( IPlayerConnection connection ) {
+		
+		connections.remove( connection );
+		
+		LobbySubSystem subSystem = subSystems.remove( connection );
+		if ( subSystem == null ) return;
+		
+		subSystem.releasePlayer();
+		
+		// Vielleicht hat nur noch dieser Spieler gefehlt
+		if ( !subSystems.isEmpty() ) update();
 	}
 	
 	/**
@@ -174,25 +193,53 @@ public class Lobby  {
 	 * 
 	 * @param seconds
 	 */
-	private synchronized void checkCountdown( int seconds ) {
+	private void checkCountdown( int seconds ) {
 		
-		// Mitteilung
-		for (IPlayerConnection current : connections) {
-			current.write( "Game starts in " + seconds + " seconds." );
+		// Mitteilung. Der BroadcastService blockiert nicht, trotzdem wird nur eine
+		// Kopie der Empfänger unter dem Monitor erstellt.
+		List<IPlayerConnection> recipients;
+		synchronized ( this ) {
+			recipients = new ArrayList<IPlayerConnection>( connections );
 		}
+		BroadcastService.getInstance().broadcast( "Game starts in " + seconds + " seconds.", recipients );
 		
 		// Wenn schon alle gespawnt sind muss nichts geschehen, sonst
 		// nur wenn der Countdown fertig ist.
-		if ( seconds == 0 && !gameRunning ) {
-			gameRunning = true;
-			
-			for (LobbySubSystem current : subSystems) {
-				current.releasePlayer();
-				subSystems.remove( current );
-			}
+		synchronized ( this ) {
+			if ( seconds == 0 && !gameRunning ) releaseAll();
+		}
+	}
+	
+	/**
+	 * Startet das Spiel und erlaubt allen Spielern in der <code>Lobby</code> zu spawnen. Muss mit dem Monitor dieser
+	 * <code>Lobby</code> aufgerufen werden.
+	 */
+	private void releaseAll() {
+		
+		gameRunning = true;
+		
+		for (LobbySubSystem current : subSystems.values()) {
+			current.releasePlayer();
+		}
+		
+		subSystems.clear();
+		connections.clear();
+	}
+	
+	/**
+	 * Gibt alle Spieler frei, die bereits <code>Ready</code> gewählt haben, und entfernt sie aus der Lobby. Wird
+	 * aufgerufen, wenn das Spiel bereits läuft und ein später hinzugekommener Spieler bereit ist.
+	 */
+	private void releaseReady() {
+		
+		Iterator<Map.Entry<IPlayerConnection, LobbySubSystem>> iterator = subSystems.entrySet().iterator();
+		while ( iterator.hasNext() ) {
 			
-			for (IPlayerConnection current : connections) {
-				connections.remove( current );
+			Map.Entry<IPlayerConnection, LobbySubSystem> entry = iterator.next();
+			if ( entry.getValue().isReady() ) {
+				entry.getValue().releasePlayer();
+				connections.remove( entry.getKey() );
+				iterator.remove();
 			}
 		}
 	}
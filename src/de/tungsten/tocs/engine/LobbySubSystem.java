@@ -1,6 +1,7 @@
 package de.tungsten.tocs.engine;
 
 import java.io.File;
+import java.util.concurrent.CountDownLatch;
 
 import de.tungsten.tocs.config.Configuration;
 import de.tungsten.tocs.config.StringType;
@@ -38,11 +39,13 @@ public class LobbySubSystem implements ISubSystem {
 	private	static final String	DEFAULT_STORE_PATH 	= "data/default_store.xml";
 	
 	/**
-	 * Dieses Flag ist auf <code>true</code>, solange nicht {@link #releasePlayer()} aufgerufen wurde. Wenn das
-	 * Ende der Methode {@link #operate(IPlayerConnection)} erreicht wurde, wird solange gewartet, bis dieses
-	 * Flag auf <code>false</code> steht. 
+	 * Dieser Latch wird erst von {@link #releasePlayer()} geöffnet. Wenn das Ende der Methode 
+	 * {@link #operate(IPlayerConnection)} erreicht wurde, wird solange gewartet, bis er geöffnet ist. 
+	 * <p>
+	 * Statt <code>wait()</code> und <code>notify()</code> wird ein <code>CountDownLatch</code> verwendet, da ein 
+	 * virtueller Thread, der in einem <code>synchronized</code>-Block wartet, seinen Träger-Thread blockiert.
 	 */
-	private boolean waiting = true;
+	private final CountDownLatch release = new CountDownLatch( 1 );
 	
 	/**
 	 * Dieses Flag gibt an, ob der Spieler bereits die Option <code>Ready</code> gewählt hat (<code>true</code>).
@@ -162,11 +165,9 @@ public class LobbySubSystem implements ISubSystem {
 		lobby.update();
 		
 		// Warten bis spawnen erlaubt.
-		while ( waiting ) {
+		while ( release.getCount() > 0 ) {
 			try {
-				synchronized ( this ) {
-					wait();
-				}
+				release.await();
 			} catch ( InterruptedException e ) {}
 		}
 	}
@@ -189,9 +190,6 @@ public class LobbySubSystem implements ISubSystem {
 	 * 
 	 */
 	public void releasePlayer() {
-		waiting = false;
-		synchronized ( this ) {
-			notify(); // Objekt aufwecken. Dieses notify gehört zu dem wait in operate
-		}
+		release.countDown(); // Dieses countDown gehört zu dem await in operate
 	}
 }
@@ -0,0 +1,449 @@
+package de.tungsten.tocs.engine;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.tungsten.tocs.LogLevel;
+import de.tungsten.tocs.Logger;
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.config.IntegerType;
+import de.tungsten.tocs.config.StringType;
+import de.tungsten.tocs.engine.nodes.Node;
+import de.tungsten.tocs.engine.nodes.NodeTable;
+import de.tungsten.tocs.engine.nodes.Room;
+
+/**
+ * Legt fest, in welchem Thread nderungen an der Welt ausgefhrt werden.
+ * <p>
+ * Im Modus {@link #EXECUTION_MODE_SHARED} werden alle Befehle direkt im Thread der
+ * Verbindung ausgefhrt, die Konsistenz stellen die Knoten selbst sicher (siehe
+ * {@link Node#move(Node)}).
+ * <p>
+ * Im Modus {@link #EXECUTION_MODE_ROOMS} gehrt jeder {@link Room} zu einer von
+ * {@link #CONFIG_ROOM_GROUPS} Gruppen, und jede Gruppe hat einen eigenen Thread mit
+ * einer Warteschlange (Mailbox). Alle Befehle, die einen Raum betreffen, werden
+ * nacheinander im Thread seiner Gruppe ausgefhrt: die Befehle der Spieler in diesem
+ * Raum, und alles, was mit den Knoten darin passiert. Ein Raum und sein Inhalt werden
+ * also immer nur von einem einzigen Thread verndert, Rume verschiedener Gruppen
+ * dagegen parallel.
+ * <p>
+ * Bewegt sich ein Knoten in einen Raum einer anderen Gruppe, wird er mit
+ * {@link #move(Node, Node, Runnable)} im Thread der alten Gruppe aus seinem Raum
+ * entfernt und als Nachricht an die neue Gruppe bergeben, die ihn in ihren Raum
+ * einfgt. Kein Thread wartet dabei auf einen anderen. Solange der Knoten unterwegs
+ * ist, gehrt er bereits zur neuen Gruppe, Aufgaben fr ihn (z.B. das Entfernen eines
+ * Spielers, der die Verbindung trennt) werden also erst nach seiner Ankunft
+ * ausgefhrt.
+ * <p>
+ * Die Instanz des Servers ist als Singleton implementiert und kann mit
+ * {@link #getInstance()} erreicht werden.
+ *
+ * @author tungsten
+ *
+ */
+public class RoomActors {
+
+	private static final String LOG_NAME = "(CORE) RoomActors";
+
+	// "shared": Befehle im Thread der Verbindung ausfhren, "rooms": im Thread der
+	// Gruppe des Raums
+	public	static final String	CONFIG_EXECUTION_MODE	= "executionMode";
+	public	static final String	EXECUTION_MODE_SHARED	= "shared";
+	public	static final String	EXECUTION_MODE_ROOMS	= "rooms";
+	private static final String	DEFAULT_EXECUTION_MODE	= EXECUTION_MODE_SHARED;
+
+	// Anzahl der Gruppen und damit Threads, 0 fr einen pro Prozessor
+	public	static final String	CONFIG_ROOM_GROUPS		= "roomGroups";
+	private static final int	DEFAULT_ROOM_GROUPS		= 0;
+
+	private static RoomActors instance = null;
+
+	/**
+	 * Gibt die Instanz des Servers zurck. Beim ersten Aufruf wird der Modus aus der
+	 * Konfiguration gelesen.
+	 *
+	 * @return	Die einzige existierende Instanz dieser Klasse.
+	 */
+	public static synchronized RoomActors getInstance() {
+
+		if ( instance == null ) {
+
+			Configuration config = Configuration.getInstance();
+			String mode = (String) config.getValue(
+					CONFIG_EXECUTION_MODE,
+					StringType.getInstance(),
+					DEFAULT_EXECUTION_MODE );
+
+			int groups = 0;
+			if ( mode.equals( EXECUTION_MODE_ROOMS ) ) {
+
+				groups = (int) config.getValue(
+						CONFIG_ROOM_GROUPS,
+						IntegerType.getInstance(),
+						DEFAULT_ROOM_GROUPS );
+				if ( groups <= 0 )
+					groups = Runtime.getRuntime().availableProcessors();
+
+				Logger.getInstance().log( LogLevel.INFO, LOG_NAME, "Rooms are executed in " + groups + " groups." );
+			}
+
+			instance = new RoomActors( groups );
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Ersetzt die Instanz des Servers, z.B. in Tests. Die Threads der bisherigen
+	 * Instanz werden nicht beendet, siehe {@link #shutdown()}.
+	 *
+	 * @param actors	Die neue Instanz.
+	 */
+	public static synchronized void setInstance( RoomActors actors ) {
+		instance = actors;
+	}
+
+	/**
+	 * Die Mailbox, deren Thread gerade luft, oder <code>null</code> in allen
+	 * anderen Threads.
+	 */
+	private static final ThreadLocal<Mailbox> currentMailbox = new ThreadLocal<Mailbox>();
+
+	/**
+	 * Der Befehl, der gerade im aktuellen Thread ausgefhrt wird. bergaben an andere
+	 * Gruppen gehren noch zu diesem Befehl.
+	 */
+	private static final ThreadLocal<Command> currentCommand = new ThreadLocal<Command>();
+
+	/**
+	 * Die Mailboxen der Gruppen, <code>null</code> im Modus
+	 * {@link #EXECUTION_MODE_SHARED}.
+	 */
+	private final Mailbox[] mailboxes;
+
+	/**
+	 * Die Anzahl der Knoten, die an eine andere Gruppe bergeben wurden.
+	 */
+	private final AtomicLong handoffs = new AtomicLong();
+
+	/**
+	 * Die Knoten, die gerade an eine andere Gruppe bergeben werden, mit ihrem neuen
+	 * Parent-Knoten. Sie haben bis zur Ankunft keinen Parent-Knoten.
+	 */
+	private final ConcurrentHashMap<Node, Node> inTransit = new ConcurrentHashMap<Node, Node>();
+
+	/**
+	 * Erstellt eine neue Instanz mit der gegebenen Anzahl Gruppen.
+	 *
+	 * @param groups	Die Anzahl der Gruppen, in die die Rume aufgeteilt werden,
+	 * 					oder 0 fr den Modus {@link #EXECUTION_MODE_SHARED}.
+	 */
+	public RoomActors( int groups ) {
+
+		if ( groups > 0 ) {
+			mailboxes = new Mailbox[ groups ];
+			for (int i = 0; i < groups; i++)
+				mailboxes[i] = new Mailbox( i );
+		} else
+			mailboxes = null;
+	}
+
+	/**
+	 * Gibt zurck, ob die Rume von eigenen Threads ausgefhrt werden.
+	 *
+	 * @return	<code>true</code> im Modus {@link #EXECUTION_MODE_ROOMS}.
+	 */
+	public boolean isEnabled() {
+		return mailboxes != null;
+	}
+
+	/**
+	 * Gibt die Anzahl der Gruppen zurck.
+	 *
+	 * @return	Die Anzahl der Gruppen, 0 im Modus {@link #EXECUTION_MODE_SHARED}.
+	 */
+	public int getGroupCount() {
+		return mailboxes != null ? mailboxes.length : 0;
+	}
+
+	/**
+	 * Gibt die Gruppe des Raums zurck, in dem sich der gegebene Knoten befindet.
+	 * Rume werden anhand ihrer {@link Node#getID() ID} auf die Gruppen verteilt. Fr
+	 * einen Knoten, der gerade mit {@link #move(Node, Node, Runnable)} bergeben wird,
+	 * ist das bereits die Gruppe seines Ziels.
+	 *
+	 * @param node	Ein Knoten, oder ein Raum.
+	 * @return		Die Nummer der Gruppe, oder -1, wenn sich der Knoten in keinem Raum
+	 * 				befindet oder der Modus {@link #EXECUTION_MODE_SHARED} ist.
+	 */
+	public int getGroup( Node node ) {
+
+		if ( mailboxes == null ) return -1;
+
+		Node current = node;
+		while ( current != null ) {
+
+			if ( current instanceof Room )
+				return current.getID() % mailboxes.length;
+
+			Node parent = current.getParent();
+			current = parent != null ? parent : inTransit.get( current );
+		}
+		return -1;
+	}
+
+	/**
+	 * Gibt die Anzahl der Knoten zurck, die sich in einen Raum einer anderen Gruppe
+	 * bewegt haben.
+	 *
+	 * @return	Die Anzahl der bergaben zwischen Gruppen.
+	 */
+	public long getHandoffs() {
+		return handoffs.get();
+	}
+
+	/**
+	 * Fhrt die gegebene Aufgabe im Thread der Gruppe aus, zu der der Raum des
+	 * gegebenen Knotens gehrt, und kehrt sofort zurck. Im Modus
+	 * {@link #EXECUTION_MODE_SHARED} oder wenn sich der Knoten in keinem Raum befindet,
+	 * wird sie sofort im aktuellen Thread ausgefhrt.
+	 *
+	 * @param node	Der Knoten, den die Aufgabe verndert.
+	 * @param task	Die auszufhrende Aufgabe.
+	 */
+	public void execute( Node node, Runnable task ) {
+
+		Mailbox mailbox = getMailbox( node );
+		if ( mailbox == null || mailbox == currentMailbox.get() )
+			task.run();
+		else
+			mailbox.execute( new Delivery( null, node, task ) );
+	}
+
+	/**
+	 * Fhrt die gegebene Aufgabe wie {@link #execute(Node, Runnable)} aus, wartet aber,
+	 * bis sie abgeschlossen ist. Dazu gehren auch alle bergaben an andere Gruppen,
+	 * die die Aufgabe mit {@link #move(Node, Node, Runnable)} veranlasst hat. Ein
+	 * Spieler, der sich in einen anderen Raum bewegt, ist also dort angekommen, bevor
+	 * sein nchster Befehl ausgefhrt wird.
+	 * <p>
+	 * Hat sich der Knoten bis zur Ausfhrung in einen Raum einer anderen Gruppe
+	 * bewegt, wird die Aufgabe an diese Gruppe weitergegeben.
+	 *
+	 * @param node	Der Knoten, den die Aufgabe verndert, z.B. der Spieler, dessen
+	 * 				Befehl ausgefhrt wird.
+	 * @param task	Die auszufhrende Aufgabe.
+	 */
+	public void run( Node node, Runnable task ) {
+
+		Mailbox mailbox = getMailbox( node );
+		if ( mailbox == null || mailbox == currentMailbox.get() ) {
+			task.run();
+			return;
+		}
+
+		Command command = new Command();
+		mailbox.execute( new Delivery( command, node, task ) );
+		command.await();
+	}
+
+	/**
+	 * Bewegt den gegebenen Knoten zu <code>target</code>, wie {@link Node#move(Node)}.
+	 * Muss im Thread der Gruppe des Knotens aufgerufen werden, z.B. whrend eines
+	 * Befehls, der mit {@link #run(Node, Runnable)} ausgefhrt wird.
+	 * <p>
+	 * Gehrt <code>target</code> zu einer anderen Gruppe, wird der Knoten hier aus
+	 * seinem Raum entfernt und im Thread der anderen Gruppe eingefgt. Nimmt
+	 * <code>target</code> ihn dort nicht auf, wird er auf dieselbe Weise an seinen
+	 * bisherigen Parent-Knoten zurckgegeben. Wurde der Knoten unterwegs aus der
+	 * {@link NodeTable} ausgetragen, z.B. weil der Spieler die Verbindung getrennt hat,
+	 * wird er nicht mehr eingefgt.
+	 *
+	 * @param node		Der zu bewegende Knoten.
+	 * @param target	Der neue Parent-Knoten.
+	 * @param then		Wird im Thread der Gruppe von <code>target</code> ausgefhrt,
+	 * 					nachdem der Knoten dort angekommen ist, z.B. um den neuen Raum
+	 * 					zu beschreiben. Kann <code>null</code> sein.
+	 */
+	public void move( final Node node, final Node target, final Runnable then ) {
+
+		Mailbox to = getMailbox( target );
+		if ( to == null || to == currentMailbox.get() ) {
+
+			node.move( target );
+			if ( then != null && node.getParent() == target )
+				then.run();
+			return;
+		}
+
+		// Den Knoten hier entfernen, dort einfgen. Ab jetzt gehen Aufgaben fr den
+		// Knoten an die neue Gruppe.
+		final Node source = node.getParent();
+		inTransit.put( node, target );
+		if ( source != null )
+			source.removeChild( node );
+		handoffs.incrementAndGet();
+
+		to.execute( new Delivery( currentCommand.get(), target, new Runnable() {
+			@Override
+			public void run() {
+
+				// Zwischen dem Eintragen in inTransit und dieser bergabe konnte eine
+				// Aufgabe vor ihr in die Mailbox gelangen und den Knoten austragen
+				if ( NodeTable.getInstance().get( node.getID() ) != node ) {
+					inTransit.remove( node, target );
+					return;
+				}
+
+				node.move( target );
+
+				if ( node.getParent() == target ) {
+					inTransit.remove( node, target );
+					if ( then != null ) then.run();
+
+				} else if ( source != null ) {
+					// Zurck zum bisherigen Parent-Knoten, erst danach gehrt der Knoten
+					// nicht mehr zu dieser Gruppe
+					move( node, source, null );
+					inTransit.remove( node, target );
+
+				} else
+					inTransit.remove( node, target );
+			}
+		} ) );
+	}
+
+	/**
+	 * Beendet die Threads aller Gruppen, nachdem sie die bereits bergebenen Aufgaben
+	 * ausgefhrt haben.
+	 */
+	public void shutdown() {
+
+		if ( mailboxes == null ) return;
+
+		for (Mailbox mailbox : mailboxes)
+			mailbox.executor.shutdown();
+
+		try {
+			for (Mailbox mailbox : mailboxes)
+				mailbox.executor.awaitTermination( 5, TimeUnit.SECONDS );
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private Mailbox getMailbox( Node node ) {
+
+		int group = getGroup( node );
+		return group >= 0 ? mailboxes[ group ] : null;
+	}
+
+	/**
+	 * Die Warteschlange einer Gruppe, deren Aufgaben von einem einzigen Thread
+	 * nacheinander ausgefhrt werden.
+	 */
+	private static class Mailbox {
+
+		private final ExecutorService executor;
+
+		Mailbox( final int group ) {
+
+			executor = Executors.newSingleThreadExecutor( new ThreadFactory() {
+				@Override
+				public Thread newThread( final Runnable r ) {
+
+					Thread thread = new Thread( new Runnable() {
+						@Override
+						public void run() {
+							currentMailbox.set( Mailbox.this );
+							r.run();
+						}
+					}, "TOCS Room-Group-" + group );
+					thread.setDaemon( true );
+					return thread;
+				}
+			} );
+		}
+
+		void execute( Runnable task ) {
+			executor.execute( task );
+		}
+	}
+
+	/**
+	 * Eine Aufgabe in der Mailbox einer Gruppe. Hat sich der Knoten, den sie verndert,
+	 * inzwischen in eine andere Gruppe bewegt, wird sie dorthin weitergegeben.
+	 */
+	private class Delivery implements Runnable {
+
+		private final Command command;
+		private final Node node;
+		private final Runnable task;
+
+		Delivery( Command command, Node node, Runnable task ) {
+
+			this.command = command;
+			this.node = node;
+			this.task = task;
+
+			if ( command != null ) command.fork();
+		}
+
+		@Override
+		public void run() {
+
+			Mailbox mailbox = getMailbox( node );
+			if ( mailbox != null && mailbox != currentMailbox.get() ) {
+				mailbox.execute( this );
+				return;
+			}
+
+			Command previous = currentCommand.get();
+			currentCommand.set( command );
+			try {
+				task.run();
+
+			} catch ( RuntimeException e ) {
+				Logger.getInstance().log( LogLevel.ERROR, LOG_NAME, "Task failed: " + e );
+
+			} finally {
+				currentCommand.set( previous );
+				if ( command != null ) command.done();
+			}
+		}
+	}
+
+	/**
+	 * Zhlt die Aufgaben eines Befehls, die noch nicht abgeschlossen sind.
+	 */
+	private static class Command {
+
+		private int pending = 0;
+
+		synchronized void fork() {
+			pending++;
+		}
+
+		synchronized void done() {
+			if ( --pending == 0 ) notifyAll();
+		}
+
+		synchronized void await() {
+
+			boolean interrupted = false;
+			while ( pending > 0 ) {
+				try {
+					wait();
+				} catch ( InterruptedException e ) {
+					interrupted = true;
+				}
+			}
+
+			if ( interrupted ) Thread.currentThread().interrupt();
+		}
+	}
+}
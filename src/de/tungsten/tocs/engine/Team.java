@@ -42,6 +42,24 @@ public enum Team {
 		}
 	}
 	
+	/**
+	 * Teilt der Enumeration mit, dass ein Spieler ein Team verlassen hat, z.B.
+	 * weil er die Verbindung getrennt hat.
+	 * 
+	 * @param team
+	 */
+	public static void decrementTeam( Team team ) {
+		switch (team) {
+		case TERRORISTS:
+			terroristCount--;
+			break;
+
+		default:
+			counterTerroristCount--;
+			break;
+		}
+	}
+	
 	/**
 	 * .
 	 * 
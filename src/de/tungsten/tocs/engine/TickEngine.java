@@ -0,0 +1,399 @@
+package de.tungsten.tocs.engine;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.tungsten.tocs.LogLevel;
+import de.tungsten.tocs.Logger;
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.config.IntegerType;
+import de.tungsten.tocs.engine.nodes.Player;
+import de.tungsten.tocs.net.AbstractConnection;
+import de.tungsten.tocs.net.IPlayerConnection;
+
+/**
+ * Fhrt die Befehle der Spieler in festen Zeitabstnden (Ticks) aus, statt
+ * sofort in dem Thread, der sie empfangen hat.
+ * <p>
+ * Die Verbindungen bergeben die Befehle mit
+ * {@link #submit(IPlayerConnection, Runnable)}. Zu Beginn jedes Ticks werden alle
+ * bis dahin eingetroffenen Befehle auf die Warteschlangen der einzelnen Spieler
+ * verteilt und dann als ein Stapel ausgefhrt, in einer festen Reihenfolge: reihum
+ * je ein Befehl pro Spieler, die Spieler nach ihrer {@link Player#getID() ID}
+ * sortiert, die Befehle eines Spielers in der Reihenfolge ihres Eintreffens. Ein
+ * Spieler, der viele Befehle auf einmal schickt, hlt die anderen also nicht auf.
+ * Danach werden die flligen Timer (siehe {@link #schedule(Runnable, int)})
+ * ausgefhrt, und zum Schluss werden die Ausgaben jedes Spielers, der in diesem
+ * Tick einen Befehl ausgefhrt hat, gemeinsam gesendet. Das Senden bernimmt
+ * {@link AbstractConnection#requestFlush()} in einem anderen Thread, damit ein
+ * Spieler, der mit dem Empfangen nicht hinterherkommt, nicht alle Ticks aufhlt.
+ * Andere Verbindungen, die {@link Flushable} sind (z.B. in Tests), werden direkt
+ * mit <code>flush()</code> gesendet, ihr <code>flush()</code> darf also nicht
+ * blockieren.
+ * <p>
+ * Alle Befehle und Timer laufen im selben Thread, nacheinander. Ein Befehl wartet
+ * also hchstens einen Tick plus die Dauer des Ticks selbst, unabhngig davon, wie
+ * viele Spieler gleichzeitig Befehle schicken.
+ * <p>
+ * Ist {@link #CONFIG_TICK_RATE} 0, ist die Engine ausgeschaltet und die Befehle
+ * werden wie bisher sofort ausgefhrt. Die Instanz des Servers ist als Singleton
+ * implementiert und kann mit {@link #getInstance()} erreicht werden.
+ *
+ * @author tungsten
+ *
+ */
+public class TickEngine {
+
+	private static final String LOG_NAME = "(CORE) TickEngine";
+
+	// Anzahl der Ticks pro Sekunde, 0 um die Befehle sofort auszufhren
+	public	static final String	CONFIG_TICK_RATE	= "tickRate";
+	private static final int	DEFAULT_TICK_RATE	= 0;
+
+	private static TickEngine instance = null;
+
+	/**
+	 * Gibt die Instanz des Servers zurck. Beim ersten Aufruf wird die Tick-Rate aus
+	 * der Konfiguration gelesen und die Engine gestartet.
+	 *
+	 * @return	Die einzige existierende Instanz dieser Klasse.
+	 */
+	public static synchronized TickEngine getInstance() {
+
+		if ( instance == null ) {
+
+			int rate = (int) Configuration.getInstance().getValue(
+					CONFIG_TICK_RATE,
+					IntegerType.getInstance(),
+					DEFAULT_TICK_RATE );
+
+			instance = new TickEngine( rate );
+			if ( instance.isEnabled() ) {
+				instance.start();
+				Logger.getInstance().log( LogLevel.INFO, LOG_NAME, "Running at " + rate + " ticks per second." );
+			}
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Ersetzt die Instanz des Servers, z.B. in Tests. Die bisherige Instanz wird
+	 * nicht angehalten, siehe {@link #shutdown()}.
+	 *
+	 * @param engine	Die neue Instanz.
+	 */
+	public static synchronized void setInstance( TickEngine engine ) {
+		instance = engine;
+	}
+
+	/**
+	 * Ein Befehl eines Spielers, der auf seinen Tick wartet.
+	 */
+	private static class Command {
+
+		final IPlayerConnection connection;
+		final Runnable task;
+
+		Command( IPlayerConnection connection, Runnable task ) {
+			this.connection = connection;
+			this.task = task;
+		}
+	}
+
+	/**
+	 * Ein Timer, der in Tick {@link #due} ausgefhrt wird. Timer mit demselben Tick
+	 * werden in der Reihenfolge ausgefhrt, in der sie eingeplant wurden.
+	 */
+	private static class Timer {
+
+		final long due;
+		final long sequence;
+		final Runnable task;
+
+		Timer( long due, long sequence, Runnable task ) {
+			this.due = due;
+			this.sequence = sequence;
+			this.task = task;
+		}
+	}
+
+	private static final Comparator<Timer> TIMER_ORDER = new Comparator<Timer>() {
+		@Override
+		public int compare( Timer a, Timer b ) {
+			if ( a.due != b.due ) return a.due < b.due ? -1 : 1;
+			return a.sequence < b.sequence ? -1 : ( a.sequence == b.sequence ? 0 : 1 );
+		}
+	};
+
+	private static final Comparator<List<Command>> PLAYER_ORDER = new Comparator<List<Command>>() {
+		@Override
+		public int compare( List<Command> a, List<Command> b ) {
+			int x = getPlayerID( a.get( 0 ).connection );
+			int y = getPlayerID( b.get( 0 ).connection );
+			return x < y ? -1 : ( x == y ? 0 : 1 );
+		}
+	};
+
+	/**
+	 * Die Ticks pro Sekunde, 0 wenn die Engine ausgeschaltet ist.
+	 */
+	private final int rate;
+
+	/**
+	 * Die Befehle, die seit dem letzten Tick eingetroffen sind, in der Reihenfolge
+	 * ihres Eintreffens.
+	 */
+	private final Queue<Command> incoming = new ConcurrentLinkedQueue<Command>();
+
+	/**
+	 * Die eingeplanten Timer, der nchste zuerst. Wird auf sich selbst gesperrt.
+	 */
+	private final PriorityQueue<Timer> timers = new PriorityQueue<Timer>( 16, TIMER_ORDER );
+	private long timerSequence = 0;
+
+	/**
+	 * Die Nummer des aktuellen bzw. zuletzt ausgefhrten Ticks.
+	 */
+	private volatile long tick = 0;
+
+	private final AtomicLong commands	= new AtomicLong();
+	private final AtomicLong overruns	= new AtomicLong();
+
+	private ScheduledExecutorService executor = null;
+
+	/**
+	 * Erstellt eine neue, noch nicht gestartete <code>TickEngine</code>.
+	 *
+	 * @param rate	Die Anzahl der Ticks pro Sekunde, oder 0, um die Befehle sofort
+	 * 				auszufhren.
+	 */
+	public TickEngine( int rate ) {
+		this.rate = Math.max( 0, rate );
+	}
+
+	/**
+	 * Gibt zurck, ob die Befehle in Ticks ausgefhrt werden.
+	 *
+	 * @return	<code>true</code>, wenn die Tick-Rate grer als 0 ist.
+	 */
+	public boolean isEnabled() {
+		return rate > 0;
+	}
+
+	/**
+	 * Gibt die Anzahl der Ticks pro Sekunde zurck.
+	 *
+	 * @return	Die Tick-Rate, 0 wenn die Engine ausgeschaltet ist.
+	 */
+	public int getRate() {
+		return rate;
+	}
+
+	/**
+	 * Startet den Thread, der {@link #tick()} in festen Abstnden aufruft. Dauert ein
+	 * Tick lnger als vorgesehen, folgt der nchste sofort.
+	 */
+	public synchronized void start() {
+
+		if ( rate == 0 || executor != null ) return;
+
+		executor = new ScheduledThreadPoolExecutor( 1, new ThreadFactory() {
+			@Override
+			public Thread newThread( Runnable r ) {
+				Thread thread = new Thread( r, "TOCS Tick" );
+				thread.setDaemon( true );
+				return thread;
+			}
+		} );
+
+		final long period = TimeUnit.SECONDS.toNanos( 1 ) / rate;
+		executor.scheduleAtFixedRate( new Runnable() {
+			@Override
+			public void run() {
+
+				long start = System.nanoTime();
+				tick();
+				if ( System.nanoTime() - start > period )
+					overruns.incrementAndGet();
+			}
+		}, period, period, TimeUnit.NANOSECONDS );
+	}
+
+	/**
+	 * Hlt den Thread der Engine an. Befehle, die noch nicht ausgefhrt wurden, werden
+	 * verworfen.
+	 */
+	public synchronized void shutdown() {
+
+		if ( executor == null ) return;
+
+		executor.shutdown();
+		try {
+			executor.awaitTermination( 5, TimeUnit.SECONDS );
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+		executor = null;
+	}
+
+	/**
+	 * bergibt einen Befehl des Spielers hinter der gegebenen Verbindung. Er wird im
+	 * nchsten Tick ausgefhrt. Ist die Engine ausgeschaltet, wird er sofort im
+	 * aktuellen Thread ausgefhrt.
+	 *
+	 * @param connection	Die Verbindung des Spielers.
+	 * @param task			Der Befehl, z.B. das Parsen einer Eingabe.
+	 */
+	public void submit( IPlayerConnection connection, Runnable task ) {
+
+		if ( rate == 0 )
+			task.run();
+		else
+			incoming.offer( new Command( connection, task ) );
+	}
+
+	/**
+	 * Plant die gegebene Aufgabe fr einen spteren Tick ein. Sie wird im Thread der
+	 * Engine ausgefhrt, nach den Befehlen der Spieler.
+	 *
+	 * @param task	Die auszufhrende Aufgabe.
+	 * @param ticks	Nach wie vielen Ticks die Aufgabe ausgefhrt wird, mindestens 1.
+	 */
+	public void schedule( Runnable task, int ticks ) {
+
+		synchronized ( timers ) {
+			timers.add( new Timer( tick + Math.max( 1, ticks ), timerSequence++, task ) );
+		}
+	}
+
+	/**
+	 * Fhrt einen Tick aus: alle eingetroffenen Befehle, dann die flligen Timer,
+	 * dann werden die Ausgaben gesendet. Wird normalerweise nur vom Thread der Engine
+	 * aufgerufen, eine nicht gestartete Engine kann damit aber auch von Hand (z.B. in
+	 * Tests) weitergeschaltet werden. Darf nie von mehreren Threads gleichzeitig
+	 * aufgerufen werden.
+	 */
+	public void tick() {
+
+		long now = ++tick;
+
+		// Die eingetroffenen Befehle auf die Spieler verteilen
+		Map<IPlayerConnection, List<Command>> perPlayer = new LinkedHashMap<IPlayerConnection, List<Command>>();
+		Command command;
+		int count = 0;
+		while ( (command = incoming.poll()) != null ) {
+
+			count++;
+			List<Command> queue = perPlayer.get( command.connection );
+			if ( queue == null ) {
+				queue = new ArrayList<Command>();
+				perPlayer.put( command.connection, queue );
+			}
+			queue.add( command );
+		}
+
+		// Spieler nach ID sortieren, bei gleicher ID bleibt die Reihenfolge des
+		// Eintreffens erhalten
+		List<List<Command>> queues = new ArrayList<List<Command>>( perPlayer.values() );
+		Collections.sort( queues, PLAYER_ORDER );
+
+		// Reihum je einen Befehl pro Spieler ausfhren
+		for (int round = 0, remaining = queues.size(); remaining > 0; round++) {
+
+			remaining = 0;
+			for (List<Command> queue : queues) {
+				if ( round < queue.size() ) {
+					run( queue.get( round ).task );
+					remaining += queue.size() - round - 1;
+				}
+			}
+		}
+		commands.addAndGet( count );
+
+		// Fllige Timer, auch solche, die von den Befehlen eingeplant wurden
+		while ( true ) {
+
+			Timer timer;
+			synchronized ( timers ) {
+				timer = timers.peek();
+				if ( timer == null || timer.due > now ) break;
+				timers.poll();
+			}
+			run( timer.task );
+		}
+
+		// Einmal pro Spieler senden, ohne auf das bertragen zu warten
+		for (List<Command> queue : queues) {
+
+			IPlayerConnection connection = queue.get( 0 ).connection;
+			if ( connection instanceof AbstractConnection ) {
+				((AbstractConnection) connection).requestFlush();
+			} else if ( connection instanceof Flushable ) {
+				try {
+					((Flushable) connection).flush();
+				} catch ( IOException e ) {}
+			}
+		}
+	}
+
+	/**
+	 * Gibt die Nummer des aktuellen bzw. zuletzt ausgefhrten Ticks zurck.
+	 *
+	 * @return	Die Anzahl der bisher ausgefhrten Ticks.
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Gibt die Anzahl der Befehle zurck, die bisher in Ticks ausgefhrt wurden.
+	 *
+	 * @return	Die Anzahl der ausgefhrten Befehle.
+	 */
+	public long getCommandCount() {
+		return commands.get();
+	}
+
+	/**
+	 * Gibt zurck, wie viele Ticks lnger gedauert haben, als die Tick-Rate vorsieht.
+	 *
+	 * @return	Die Anzahl der zu langen Ticks.
+	 */
+	public long getOverruns() {
+		return overruns.get();
+	}
+
+	private static int getPlayerID( IPlayerConnection connection ) {
+
+		Player player = connection.getPlayer();
+		return player != null ? player.getID() : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Fhrt eine Aufgabe aus. Ein Fehler darf die folgenden Aufgaben und Ticks nicht
+	 * verhindern.
+	 */
+	private static void run( Runnable task ) {
+
+		try {
+			task.run();
+		} catch ( RuntimeException e ) {
+			Logger.getInstance().log( LogLevel.ERROR, LOG_NAME, "Task failed: " + e );
+		}
+	}
+}
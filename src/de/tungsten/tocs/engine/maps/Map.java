@@ -4,8 +4,10 @@ import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.Set;
 
+import de.tungsten.tocs.engine.RoomActors;
 import de.tungsten.tocs.engine.Team;
 import de.tungsten.tocs.engine.nodes.Node;
+import de.tungsten.tocs.engine.nodes.NodeTable;
 import de.tungsten.tocs.net.IPlayerConnection;
 
 /**
@@ -73,21 +75,73 @@ public class Map {
 	 * Nach dem spawnen wird dem Spieler der Name der <code>Map</code>,
 	 * sowie die <code>description</code> des Knotens, in dem er
 	 * gespawnt ist, angezeigt.
+	 * <p>
+	 * Der Spieler wird im Thread des Raums platziert, siehe {@link RoomActors}. Diese
+	 * Methode ist daher nicht <code>synchronized</code>, sonst knnte sie auf einen
+	 * Raum warten, dessen Thread gerade {@link #remove(IPlayerConnection)} aufruft.
 	 * 
 	 * @param connection	Die Verbindung zu dem zu spawnenden Spieler.
 	 */
-	public synchronized void spawn( IPlayerConnection connection ) {
+	public void spawn( final IPlayerConnection connection ) {
 		
-		// Spieler zum Spawnpoint bewegen
-		Node spawnPoint = spawnPoints.get( connection.getPlayer().getTeam() );
-		connection.getPlayer().move( spawnPoint );
+		// Spieler merken
+		synchronized ( this ) {
+			connections.add( connection );
+		}
 		
-		// Info printen
-		connection.write( "---------- " + this.name + " ----------\n\n" );
-		connection.write( connection.getPlayer().getParent().getDescription() );
+		// Spieler zum Spawnpoint bewegen und Info printen
+		final Node player = connection.getPlayer();
+		final Node spawnPoint = spawnPoints.get( connection.getPlayer().getTeam() );
+		RoomActors.getInstance().run( spawnPoint, new Runnable() {
+			@Override
+			public void run() {
+				
+				player.move( spawnPoint );
+				connection.write( "---------- " + name + " ----------\n\n" );
+				connection.write( spawnPoint.getDescription() );
+			}
+		} );
 		
-		// Spieler merken
-		connections.add( connection );
+		// Wurde die Verbindung whrenddessen geschlossen, den Spieler wieder entfernen
+		synchronized ( this ) {
+			if ( !connections.contains( connection ) )
+				removePlayer( player );
+		}
+	}
+	
+	/**
+	 * Entfernt den Spieler hinter der gegebenen Verbindung von dieser 
+	 * <code>Map</code>, z.B. weil er die Verbindung getrennt hat. Sein Knoten
+	 * wird dabei aus dem Knoten-Baum gelst und mit allem, was er trgt, aus der
+	 * {@link NodeTable} ausgetragen.
+	 * 
+	 * @param connection	Die Verbindung zu dem zu entfernenden Spieler.
+	 */
+	public synchronized void remove( IPlayerConnection connection ) {
+		
+		if ( !connections.remove( connection ) )
+			return;
+		
+		removePlayer( connection.getPlayer() );
+	}
+	
+	/**
+	 * Lst den Knoten eines Spielers im Thread seines Raums aus dem Knoten-Baum. Ist
+	 * der Spieler gerade auf dem Weg in einen Raum einer anderen Gruppe, geschieht das
+	 * erst nach seiner Ankunft, siehe {@link RoomActors#move(Node, Node, Runnable)}.
+	 */
+	private void removePlayer( final Node player ) {
+		
+		RoomActors.getInstance().execute( player, new Runnable() {
+			@Override
+			public void run() {
+				
+				Node parent = player.getParent();
+				if ( parent != null )
+					parent.removeChild( player );
+				NodeTable.getInstance().release( player );
+			}
+		} );
 	}
 	
 	/**
@@ -108,6 +162,18 @@ public class Map {
 		return root;
 	}
 	
+	/**
+	 * Gibt den Knoten mit der gegebenen {@link Node#getID() ID} zurck, ohne den
+	 * Knoten-Baum zu durchsuchen, siehe {@link NodeTable}.
+	 * 
+	 * @param id	Die ID eines Knotens.
+	 * @return		Der Knoten, oder <code>null</code>, wenn es keinen Knoten mit
+	 * 				dieser ID (mehr) gibt.
+	 */
+	public Node getNode( int id ) {
+		return NodeTable.getInstance().get( id );
+	}
+	
 	/**
 	 * Gibt den Ort zurck, an dem die Terroristen die Bombe platzieren
 	 * mssen.
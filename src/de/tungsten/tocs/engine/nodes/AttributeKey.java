@@ -0,0 +1,148 @@
+package de.tungsten.tocs.engine.nodes;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Der Schlssel eines Attributes von {@link Node}s. Jeder Schlssel hat einen Namen,
+ * einen Typ fr die Werte und eine feste Nummer (Slot), die bei der Registrierung
+ * fortlaufend vergeben wird, beginnend bei 0.
+ * <p>
+ * Die Knoten speichern ihre Attribute in einem Array, an der Stelle des Slots. Ein
+ * Attribut zu lesen ist also ein Zugriff auf ein Array, ohne Hashing und ohne
+ * Vergleich von Strings. Da die Standard-Attribute als erste registriert werden,
+ * haben sie die kleinsten Slots, und die Arrays bleiben fr die meisten Knoten sehr
+ * kurz.
+ * <p>
+ * Schlssel werden normalerweise einmal als Konstante registriert, z.B.
+ * {@link Node#DESCRIPTION_HANDLER}. Attribute, die ber
+ * {@link Node#getAttributes()} mit einem noch unbekannten Namen gesetzt werden,
+ * erhalten automatisch einen Schlssel vom Typ <code>Object</code>. Schlssel
+ * werden nie wieder entfernt.
+ *
+ * @author tungsten
+ *
+ * @param <T>	Der Typ der Werte dieses Attributes.
+ */
+public final class AttributeKey<T> {
+
+	private static final ConcurrentHashMap<String, AttributeKey<?>> byName =
+			new ConcurrentHashMap<String, AttributeKey<?>>();
+
+	/**
+	 * Die Schlssel, an der Stelle ihres Slots. Wird beim Registrieren durch eine
+	 * grere Kopie ersetzt.
+	 */
+	private static volatile AttributeKey<?>[] bySlot = new AttributeKey<?>[ 8 ];
+	private static volatile int count = 0;
+
+	private final String name;
+	private final Class<? super T> type;
+	private final int slot;
+
+	private AttributeKey( String name, Class<? super T> type, int slot ) {
+		this.name = name;
+		this.type = type;
+		this.slot = slot;
+	}
+
+	/**
+	 * Registriert einen neuen Schlssel. Ist unter diesem Namen bereits ein Schlssel
+	 * mit demselben Typ registriert, wird dieser zurckgegeben.
+	 *
+	 * @param name	Der Name des Attributes.
+	 * @param type	Der Typ der Werte. Werte, die keine Instanz dieser Klasse sind,
+	 * 				werden beim Setzen abgelehnt.
+	 * @return		Der Schlssel.
+	 * @throws IllegalArgumentException	Wenn der Name bereits fr einen anderen Typ
+	 * 									registriert ist.
+	 */
+	@SuppressWarnings("unchecked")
+	public static synchronized <T> AttributeKey<T> register( String name, Class<? super T> type ) {
+
+		AttributeKey<?> existing = byName.get( name );
+		if ( existing != null ) {
+			if ( existing.type != type )
+				throw new IllegalArgumentException( "The attribute \"" + name + "\" is already registered for "
+						+ existing.type.getName() + "." );
+			return (AttributeKey<T>) existing;
+		}
+
+		if ( count == bySlot.length )
+			bySlot = Arrays.copyOf( bySlot, count * 2 );
+
+		// Erst den Slot, dann den Namen verffentlichen
+		AttributeKey<T> key = new AttributeKey<T>( name, type, count );
+		bySlot[ count ] = key;
+		count++;
+		byName.put( name, key );
+		return key;
+	}
+
+	/**
+	 * Gibt den Schlssel mit dem gegebenen Namen zurck.
+	 *
+	 * @param name	Der Name des Attributes.
+	 * @return		Der Schlssel, oder <code>null</code>, wenn unter diesem Namen
+	 * 				keiner registriert ist.
+	 */
+	public static AttributeKey<?> forName( String name ) {
+		return byName.get( name );
+	}
+
+	/**
+	 * Gibt den Schlssel mit dem gegebenen Slot zurck.
+	 */
+	static AttributeKey<?> forSlot( int slot ) {
+		return bySlot[ slot ];
+	}
+
+	/**
+	 * Gibt den Namen dieses Attributes zurck.
+	 *
+	 * @return	Der Name, unter dem der Schlssel registriert wurde.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gibt den Typ der Werte dieses Attributes zurck.
+	 *
+	 * @return	Die Klasse, von der alle Werte eine Instanz sein mssen.
+	 */
+	public Class<? super T> getType() {
+		return type;
+	}
+
+	/**
+	 * Gibt den Slot dieses Attributes zurck, also die Stelle seines Wertes in den
+	 * Attributen eines Knotens.
+	 *
+	 * @return	Der Slot, eine fortlaufende Nummer ab 0.
+	 */
+	public int getSlot() {
+		return slot;
+	}
+
+	/**
+	 * Prft, ob der gegebene Wert den Typ dieses Attributes hat.
+	 *
+	 * @param value	Der zu prfende Wert, oder <code>null</code>.
+	 * @return		Der Wert.
+	 * @throws ClassCastException	Wenn der Wert nicht den Typ dieses Attributes
+	 * 								hat.
+	 */
+	Object check( Object value ) {
+
+		if ( value != null && !type.isInstance( value ) )
+			throw new ClassCastException( "The attribute \"" + name + "\" requires a " + type.getName()
+					+ ", not a " + value.getClass().getName() + "." );
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
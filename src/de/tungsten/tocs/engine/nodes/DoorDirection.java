@@ -1,5 +1,7 @@
 package de.tungsten.tocs.engine.nodes;
 
+import de.tungsten.tocs.engine.Lexicon;
+
 /**
  * <code>DoorDirection</code> contains all directions, a door in a <code>Room</code> might lead to.
  * <p>
@@ -62,20 +64,33 @@ public enum DoorDirection {
 		this.representation = representation;
 	}
 	
+	/**
+	 * All directions, indexed by the {@link Lexicon} ID of their {@link #representation}.
+	 */
+	private static final DoorDirection[] BY_ID;
+	
+	static {
+		int max = 0;
+		for (DoorDirection direction : values())
+			max = Math.max( max, Lexicon.getInstance().intern( direction.representation ) );
+		
+		BY_ID = new DoorDirection[ max + 1 ];
+		for (DoorDirection direction : values())
+			BY_ID[ Lexicon.getInstance().lookup( direction.representation ) ] = direction;
+	}
+	
 	/**
 	 * Returns the <code>DoorDirection</code> instance which's {@link #representation} equals the given
-	 * string, or <code>null</code>, if there is no such instance.
+	 * string, or <code>null</code>, if there is no such instance. The string is looked up in the
+	 * {@link Lexicon} once, no strings are compared.
 	 * @param s		The string which is used to identify the desired <code>DoorDirection</code> instance.
 	 * @return		The <code>DoorDirection</code> instance which's textual representation equals 
 	 * 				<code>s</code>, or <code>null</code>, if there is no such instance.
 	 */
 	public static DoorDirection fromString( String s ) {
-		for (DoorDirection direction : DoorDirection.values()) {
-			if ( direction.representation.equals( s ) )
-				return direction;
-		}
 		
-		return null;
+		int id = Lexicon.getInstance().lookup( s );
+		return id >= 0 && id < BY_ID.length ? BY_ID[ id ] : null;
 	}
 	
 	@Override
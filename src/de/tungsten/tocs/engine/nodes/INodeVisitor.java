@@ -0,0 +1,23 @@
+package de.tungsten.tocs.engine.nodes;
+
+/**
+ * Ein Besucher, der beim Durchlaufen eines Teilbaums mit
+ * {@link Node#traverse(INodeVisitor, int)} fr jeden Knoten aufgerufen wird.
+ * 
+ * @author tungsten
+ *
+ */
+public interface INodeVisitor {
+
+	/**
+	 * Wird fr jeden besuchten Knoten aufgerufen, in der Reihenfolge einer
+	 * Tiefensuche (Deep-First).
+	 * 
+	 * @param node		Der besuchte Knoten.
+	 * @param depth		Die Anzahl der Ebenen, die sich der Knoten unter dem Knoten
+	 * 					befindet, auf dem die Suche gestartet wurde.
+	 * @return			<code>true</code>, wenn weitere Knoten besucht werden sollen,
+	 * 					<code>false</code>, um die Suche sofort abzubrechen.
+	 */
+	public abstract boolean visit( Node node, int depth );
+}
@@ -0,0 +1,149 @@
+package de.tungsten.tocs.engine.nodes;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import de.tungsten.tocs.engine.Lexicon;
+
+/**
+ * Der Namens-Index eines Teilbaums. Jeder {@link Node} hat einen solchen Index, der
+ * allen Namen (nicht nur dem Identifier) die Knoten unterhalb dieses Knotens zuordnet,
+ * die diesen Namen haben. Die Namen werden ber ihre Nummer im {@link Lexicon}
+ * angesprochen.
+ * <p>
+ * Der Index wird von {@link Node#addChild(Node)} und {@link Node#removeChild(Node)}
+ * fr alle bergeordneten Knoten mitgefhrt, auch {@link Node#move(Node)} hlt ihn also
+ * aktuell. Die Suche nach einem Namen in einem Raum oder Behlter ist damit ein
+ * Nachschlagen in einer Hash-Tabelle, statt den Teilbaum zu durchlaufen.
+ * <p>
+ * Gelesen wird ohne Sperre, nur das ndern ist auf dem Index <code>synchronized</code>.
+ * Da Knoten auch whrend einer Suche bewegt werden knnen, wird fr jeden Treffer
+ * geprft, ob er sich noch unterhalb des durchsuchten Knotens befindet.
+ *
+ * @author tungsten
+ *
+ */
+final class NameIndex {
+
+	private final ConcurrentHashMap<Integer, CopyOnWriteArrayList<Node>> nodes =
+			new ConcurrentHashMap<Integer, CopyOnWriteArrayList<Node>>();
+
+	private final INodeVisitor adder = new INodeVisitor() {
+		@Override
+		public boolean visit( Node node, int depth ) {
+
+			synchronized ( NameIndex.this ) {
+				for (int nameID : node.nameIDs) {
+
+					CopyOnWriteArrayList<Node> list = nodes.get( nameID );
+					if ( list == null ) {
+						list = new CopyOnWriteArrayList<Node>();
+						nodes.put( nameID, list );
+					}
+					// Knoten, die denselben Namen mehrmals haben, nur einmal eintragen
+					list.addIfAbsent( node );
+				}
+			}
+			return true;
+		}
+	};
+
+	private final INodeVisitor remover = new INodeVisitor() {
+		@Override
+		public boolean visit( Node node, int depth ) {
+
+			synchronized ( NameIndex.this ) {
+				for (int nameID : node.nameIDs) {
+
+					CopyOnWriteArrayList<Node> list = nodes.get( nameID );
+					if ( list != null ) {
+						list.remove( node );
+						if ( list.isEmpty() )
+							nodes.remove( nameID );
+					}
+				}
+			}
+			return true;
+		}
+	};
+
+	/**
+	 * Trgt den gegebenen Knoten und alle Knoten unter ihm in den Index ein.
+	 *
+	 * @param node	Der neue Kind-Knoten, bzw. dessen Teilbaum.
+	 */
+	void add( Node node ) {
+
+		node.traverse( adder, -1 );
+	}
+
+	/**
+	 * Entfernt den gegebenen Knoten und alle Knoten unter ihm aus dem Index.
+	 *
+	 * @param node	Der entfernte Kind-Knoten, bzw. dessen Teilbaum.
+	 */
+	void remove( Node node ) {
+
+		node.traverse( remover, -1 );
+	}
+
+	/**
+	 * Sucht den Knoten mit dem gegebenen Namen, der sich maximal <code>depth</code>
+	 * Ebenen unter <code>owner</code> befindet. Knoten, deren Identifier passt, werden
+	 * bevorzugt, danach der Knoten, der <code>owner</code> am nchsten ist. Bei gleicher
+	 * Tiefe gewinnt der zuerst hinzugefgte Knoten.
+	 *
+	 * @param nameID	Die Nummer des gesuchten Namens.
+	 * @param owner		Der Knoten, dem dieser Index gehrt.
+	 * @param depth		Die Suchtiefe, negative Werte stehen fr eine unbegrenzte
+	 * 					Suchtiefe.
+	 * @return			Der gefundene Knoten, oder <code>null</code>.
+	 */
+	Node find( int nameID, Node owner, int depth ) {
+
+		List<Node> candidates = nodes.get( nameID );
+		if ( candidates == null ) return null;
+
+		Node result = null;
+		boolean resultIsIdentifier = false;
+		int resultDepth = Integer.MAX_VALUE;
+
+		for (Node candidate : candidates) {
+
+			int candidateDepth = depthBelow( candidate, owner, depth );
+			if ( candidateDepth < 0 ) continue;
+
+			boolean isIdentifier = candidate.nameIDs[ 0 ] == nameID;
+			if ( result == null
+					|| ( isIdentifier && !resultIsIdentifier )
+					|| ( isIdentifier == resultIsIdentifier && candidateDepth < resultDepth ) ) {
+				result = candidate;
+				resultIsIdentifier = isIdentifier;
+				resultDepth = candidateDepth;
+
+				// Nher kann kein Treffer mehr sein
+				if ( isIdentifier && candidateDepth == 1 ) break;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gibt zurck, wie viele Ebenen sich <code>node</code> unter <code>owner</code>
+	 * befindet, oder -1, wenn er sich nicht (mehr) darunter oder tiefer als
+	 * <code>depth</code> befindet.
+	 */
+	private static int depthBelow( Node node, Node owner, int depth ) {
+
+		int result = 0;
+		for (Node current = node; current != null; current = current.parent) {
+
+			if ( current == owner ) return result;
+			if ( depth >= 0 && result >= depth ) return -1;
+			result++;
+		}
+		return -1;
+	}
+}
@@ -1,9 +1,20 @@
 package de.tungsten.tocs.engine.nodes;
 
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import de.tungsten.tocs.engine.Lexicon;
 
 /**
  * Ein Knoten im Spiel.
@@ -20,8 +31,8 @@ import java.util.Map;
  * Jeder Knoten hat genau einen Parent-Knoten und beliebig viele Child-Knoten
  * (es gibt zwar semantische Begrenzungen, z.B. kann der Spieler nur 
  * ein bestimmtes Gewicht tragen, aber technisch ist die Zahl unbegrenzt) haben. 
- * Jeder Knoten hat zumindest eine ID von Typ long, die automatisch hochgezhlt 
- * wird, und zu Debugging-Zwecken verwendet werden kann. Auerdem hat jeder 
+ * Jeder Knoten hat zumindest eine ID vom Typ int, die automatisch hochgezhlt 
+ * wird und ber die er in der {@link NodeTable} gefunden werden kann. Auerdem hat jeder 
  * Knoten eine Menge von Namen, einen Identifier, eine Beschreibung und ein 
  * Gewicht.
  * <p>
@@ -47,16 +58,17 @@ public class Node {
 	public static final String ATTR_DESCRIPTION_HANDLER			= "DESCRIPTION_HANDLER";
 	public static final String ATTR_HIDDEN						= "HIDDEN";
 	
-	/**
-	 * Die zuletzt vergebene ID. Dieser Wert wird bei der Erstellung eines
-	 * neuen Knotens automatisch hochgezhlt.
-	 */
-	private static int CURRENT_ID = Integer.MIN_VALUE;
+	// Die Schlssel der standardisierten Attribute, sie haben die ersten Slots
+	public static final AttributeKey<IValueCalculator<?>> DESCRIPTION_HANDLER =
+			AttributeKey.<IValueCalculator<?>>register( ATTR_DESCRIPTION_HANDLER, IValueCalculator.class );
+	public static final AttributeKey<Boolean> HIDDEN = 
+			AttributeKey.<Boolean>register( ATTR_HIDDEN, Boolean.class );
 	
 	/**
-	 * Die eindeutige Identifikationsnummer dieses Knotens.
+	 * Die eindeutige Identifikationsnummer dieses Knotens, vergeben von der
+	 * {@link NodeTable}.
 	 */
-	private int id;
+	private final int id;
 	
 	/**
 	 * Die Namen, die dieser <code>Node</code> hat. Auf die meisten Objekte
@@ -66,7 +78,13 @@ public class Node {
 	 * <br>
 	 * <b>Beispiel: </b> { "Sofa", "Couch", "Liege", ... }
 	 */
-	private String[] names;
+	private final String[] names;
+	
+	/**
+	 * Die Nummern der {@link #names Namen} im {@link Lexicon}, in derselben
+	 * Reihenfolge. Beim Suchen werden nur diese Nummern verglichen.
+	 */
+	protected final int[] nameIDs;
 	
 	/**
 	 * Die Beschreibung dieses Knotens. Die Beschreibung wird angezeigt,
@@ -91,14 +109,53 @@ public class Node {
 	 * <p>
 	 * Dieser Knoten muss auch in den {@link #children} des <code>parent</code>-
 	 * Knotens vorhanden sein, um die Konsistenz zu erhalten.
+	 * <p>
+	 * <code>volatile</code>, da Knoten von den Threads verschiedener Spieler
+	 * bewegt und gelesen werden.
 	 */
-	protected Node parent;
+	protected volatile Node parent;
 	
 	/**
 	 * Die Kind-Knoten dieses Knotens. Alle Kind-Knoten haben als {@link #parent}
 	 * diesen Knoten.
+	 * <p>
+	 * Die Kind-Knoten sind als doppelt verkettete Liste direkt in den Knoten
+	 * gespeichert (siehe {@link #firstChild} und {@link #nextSibling}), sodass
+	 * Hinzufgen und Entfernen ohne Suche und ohne Allokation mglich ist. Diese
+	 * Liste ist nur eine Sicht darauf, die nicht verndert werden kann. Sie wird
+	 * in der Reihenfolge durchlaufen, in der die Knoten hinzugefgt wurden.
+	 * <p>
+	 * Das Durchlaufen ist ohne Sperre mglich. Wird whrenddessen ein Knoten
+	 * bewegt, kann ein Teil der Kind-Knoten fehlen, aber es werden nie Knoten
+	 * eines anderen Parent-Knotens durchlaufen. Die Liste ist auerdem die Sperre
+	 * fr alle nderungen an der Verkettung der Kind-Knoten.
 	 */
-	protected List<Node> children;
+	protected final List<Node> children = new ChildList();
+	
+	/**
+	 * Die Sperre fr alle Bewegungen von Knoten, die Kind-Knoten haben, siehe
+	 * {@link #move(Node)}. Sie wird immer vor den Sperren der einzelnen Knoten
+	 * angefordert.
+	 */
+	private static final Object CONTAINER_MOVES = new Object();
+	
+	// Die Verkettung der Kind-Knoten, siehe children
+	private volatile Node firstChild = null;
+	private volatile Node lastChild = null;
+	private volatile Node previousSibling = null;
+	private volatile Node nextSibling = null;
+	private volatile int childCount = 0;
+	
+	/**
+	 * Der Index aller Knoten unterhalb dieses Knotens, nach jedem ihrer
+	 * {@link #names Namen}. Wird von {@link #addChild(Node)} und
+	 * {@link #removeChild(Node)} fr diesen und alle bergeordneten Knoten
+	 * aktuell gehalten.
+	 * <p>
+	 * Wird erst mit dem ersten Kind-Knoten erstellt, die meisten Knoten einer
+	 * Map (Wnde, Kisten, Schlssel, ...) haben nie Kind-Knoten.
+	 */
+	private volatile NameIndex nameIndex = null;
 	
 	/**
 	 * Das Gewicht dieses Knotens. Der Spieler kann nur ein bestimmtes Gewicht
@@ -107,10 +164,40 @@ public class Node {
 	protected int weight;
 	
 	/**
-	 * Die dynamischen Eigenschaften dieses Knotens.
-	 * Siehe {@link Node}.
+	 * Die dynamischen Eigenschaften dieses Knotens, an der Stelle des
+	 * {@link AttributeKey#getSlot() Slots} ihres Schlssels. Siehe {@link Node}.
+	 * <p>
+	 * <code>null</code>, solange der Knoten keine Attribute hat, sonst nur so lang
+	 * wie der grte belegte Slot. Das Array wird nie verndert, sondern bei
+	 * jeder nderung durch eine Kopie ersetzt. Gelesen wird daher ohne Sperre.
+	 */
+	private volatile Object[] attributes = null;
+	
+	private static final AtomicReferenceFieldUpdater<Node, Object[]> ATTRIBUTES =
+			AtomicReferenceFieldUpdater.newUpdater( Node.class, Object[].class, "attributes" );
+	
+	/**
+	 * Die zuletzt generierte Beschreibung, siehe {@link #getDescription(int)}. Sie
+	 * ist nur gltig, solange ihre Version mit {@link #descriptionVersion}
+	 * bereinstimmt.
+	 */
+	private volatile RenderedDescription rendered = null;
+	
+	/**
+	 * Wird bei jeder nderung erhht, die die generierte Beschreibung verndern
+	 * kann, siehe {@link #invalidateDescription()}.
+	 */
+	private volatile int descriptionVersion = 0;
+	
+	private static final AtomicIntegerFieldUpdater<Node> DESCRIPTION_VERSION =
+			AtomicIntegerFieldUpdater.newUpdater( Node.class, "descriptionVersion" );
+	
+	/**
+	 * Wie oft eine generierte Beschreibung wiederverwendet bzw. neu generiert wurde,
+	 * fr alle Knoten zusammen.
 	 */
-	protected Map<String, Object> attributes;
+	private static final AtomicLong descriptionHits		= new AtomicLong();
+	private static final AtomicLong descriptionMisses	= new AtomicLong();
 	
 	/**
 	 * Erstellt einen neuen Root-<code>Node</code>, also einen Knoten ohne
@@ -158,8 +245,8 @@ public class Node {
 	 */
 	public Node( Node parent, String[] names, String description ) {
 		
-		// Dass CURRENT_ID berluft ist seeeeehr unwahrscheinlich
-		this.id = CURRENT_ID++;
+		// Atomar, auch wenn mehrere Threads gleichzeitig Knoten erstellen
+		this.id = NodeTable.getInstance().allocate();
 		
 		// Bei fehlerhaften Parametern eine Exception werfen
 		if ( names == null
@@ -167,26 +254,32 @@ public class Node {
 				|| description == null )
 			throw new NodeException( this.id, "Node initialization failed." );
 		
-		this.names = names;
-		
-		this.parent = null;
-		this.move( parent );
+		// Kopie, damit die Namen nicht an den Nummern vorbei verndert werden
+		this.names = names.clone();
+		this.nameIDs = Lexicon.getInstance().intern( this.names );
 		
 		this.description = description;
 		normalizeDescription(); // Beschreibung normieren
 		
-		this.children = new ArrayList<Node>();
-		this.attributes = new HashMap<String, Object>();
-		
 		// Default-mig knnen von diesem Knoten unendliche viele Exemplare
 		// getragen werden.
 		this.weight = -1;
+		
+		// Erst bewegen, wenn der Knoten vollstndig ist, damit er auch vollstndig
+		// in die Namens-Indizes des Parent-Knotens eingetragen wird.
+		this.parent = null;
+		this.move( parent );
+		
+		// Erst jetzt ber die ID auffindbar machen. Die Konstruktoren der Subklassen
+		// laufen noch, siehe NodeTable.get()
+		NodeTable.getInstance().put( this );
 	}
 	
 	/**
 	 * Gibt die im Knostruktor definierte, eindeutige Identifikationsnummer
-	 * dieses Knotens zurck. Diese Nummer kann zu Debugging-Zwecken verwendet
-	 * werden und wird in allen geworfenen Exceptions mit bergeben.
+	 * dieses Knotens zurck. Die Nummern werden fortlaufend ab 0 vergeben, der
+	 * Knoten kann mit {@link NodeTable#get(int)} ber sie gefunden werden. Sie
+	 * wird auerdem in allen geworfenen Exceptions mit bergeben.
 	 * 
 	 * @return Die Identifikationsnummer dieses Knotens.
 	 */
@@ -217,12 +310,38 @@ public class Node {
 	 * Gibt die {@link #names Namen} dieses Knotens zurck, also die Strings,
 	 * ber die sich ein Spieler auf diesen Knoten beziehen kann.
 	 * 
-	 * @return	Die Namen dieses Knotens. Bei konsistentem Zustand des Knotens
-	 * 			ist das Array nicht <code>null</code> und hat mindestens die
-	 * 			Lnge 1.
+	 * @return	Eine Kopie der Namen dieses Knotens. Bei konsistentem Zustand des
+	 * 			Knotens ist das Array nicht <code>null</code> und hat mindestens
+	 * 			die Lnge 1.
 	 */
 	public String[] getNames() {
-		return names;
+		return names.clone();
+	}
+	
+	/**
+	 * Gibt die Nummer des {@link #getIdentifier() Identifiers} dieses Knotens im
+	 * {@link Lexicon} zurck.
+	 * 
+	 * @return	Die Nummer des Identifiers.
+	 */
+	public int getIdentifierID() {
+		return nameIDs[ 0 ];
+	}
+	
+	/**
+	 * Prft, ob dieser Knoten den Namen mit der gegebenen Nummer hat. Dabei werden
+	 * keine Strings verglichen.
+	 * 
+	 * @param nameID	Die Nummer eines Namens im {@link Lexicon}.
+	 * @return			<code>true</code>, wenn einer der {@link #names Namen} dieses
+	 * 					Knotens diese Nummer hat.
+	 */
+	public boolean hasName( int nameID ) {
+		
+		for (int current : nameIDs) {
+			if ( current == nameID ) return true;
+		}
+		return false;
 	}
 	
 	/**
@@ -242,13 +361,19 @@ public class Node {
 	 * werden die Namen aller Knoten, die sich maximal <code>depth</code>
 	 * Ebenen unterhalb dieses Knotens befinden zur Rckgabe hinzugefgt.
 	 * <p>
-	 * Wenn dieser Knoten das {@link #attributes Attribut} 
+	 * Wenn dieser Knoten das Attribut {@link #DESCRIPTION_HANDLER}
 	 * <code>"{@value #ATTR_DESCRIPTION_HANDLER}"</code> besitzt, wird
 	 * der entsprechende <code>IValueCalculator</code> zur Generierung
 	 * der Beschreibung verwendet.
 	 * <p>
 	 * <b>Wichtig:</b> Diese Methode ist noch nicht vollstndig implementiert.
 	 * Als Suchtiefe wird bisher immer 1 verwendet.
+	 * <p>
+	 * Die generierte Beschreibung wird gespeichert und wiederverwendet, bis sich
+	 * die Kind-Knoten oder die Attribute dieses Knotens ndern (siehe
+	 * {@link #invalidateDescription()}). Nur der <code>IValueCalculator</code>
+	 * wird jedes Mal aufgerufen, da sein Ergebnis von beliebigen anderen Knoten
+	 * abhngen kann.
 	 * 
 	 * @param depth	Die Anzahl der Ebenen, die sich eine Knoten unterhalb dieses
 	 * 				Knotens befinden darf, um noch im Rckgabewert enthalten
@@ -257,33 +382,95 @@ public class Node {
 	 */
 	public String getDescription( int depth ) {
 		
-		// Wenn ATTR_DESCRIPTION_HANDLER Attribut vorhanden, dann dieses
-		// zum Generieren verwenden, sonst Default-BEschreibung.
-		String desc;
-		if (   attributes.containsKey( ATTR_DESCRIPTION_HANDLER ) 
-			&& attributes.get( ATTR_DESCRIPTION_HANDLER) instanceof IValueCalculator<?>) {
-			try {
-				desc = (String) ((IValueCalculator<?>) attributes.get( ATTR_DESCRIPTION_HANDLER )).calculate( this );
-			} catch ( Exception e ) {
-				desc = description;
-			}
+		// Die Version vor den Kind-Knoten lesen, eine nderung whrenddessen macht
+		// das Ergebnis also sofort wieder ungltig
+		int version = descriptionVersion;
+		RenderedDescription current = rendered;
+		
+		if ( current != null && current.version == version && current.depth == depth ) {
+			
+			descriptionHits.incrementAndGet();
+			if ( current.text != null ) return current.text;
 			
-		} else desc = description;
+			return calculateDescription( getAttribute( DESCRIPTION_HANDLER ) ) + current.children;
+		}
+		
+		IValueCalculator<?> handler = getAttribute( DESCRIPTION_HANDLER );
+		
+		descriptionMisses.incrementAndGet();
 		
 		// Kind-Knoten mit zurckgeben
 		// TODO Momentan noch nicht Rekursiv
+		StringBuilder listing = new StringBuilder();
 		if ( depth != 0 ) {
 			
-			for (Node child : children) {
-				String prefix = "\n\t";
-				for (int i = 0; i < depth; i++) {
-					prefix += "\t";
-				}
-				desc += prefix + child.getIdentifier();
-			}
+			StringBuilder prefix = new StringBuilder( "\n\t" );
+			for (int i = 0; i < depth; i++)
+				prefix.append( '\t' );
 			
+			for (Node child : children)
+				listing.append( prefix ).append( child.getIdentifier() );
+		}
+		
+		// Wenn ATTR_DESCRIPTION_HANDLER Attribut vorhanden, dann dieses
+		// zum Generieren verwenden, sonst Default-BEschreibung.
+		String text = null;
+		if ( handler == null )
+			text = description + listing;
+		
+		rendered = new RenderedDescription( version, depth, listing.toString(), text );
+		return text != null ? text : calculateDescription( handler ) + listing;
+	}
+	
+	/**
+	 * Berechnet die Beschreibung ohne Kind-Knoten mit dem gegebenen Attribut
+	 * <code>"{@value #ATTR_DESCRIPTION_HANDLER}"</code>.
+	 */
+	private String calculateDescription( IValueCalculator<?> handler ) {
+		
+		if ( handler != null ) {
+			try {
+				return (String) handler.calculate( this );
+			} catch ( Exception e ) {}
 		}
-		return desc;
+		return description;
+	}
+	
+	/**
+	 * Verwirft die gespeicherte Beschreibung dieses Knotens, sodass sie beim
+	 * nchsten Aufruf von {@link #getDescription(int)} neu generiert wird.
+	 * <p>
+	 * Geschieht automatisch, wenn Kind-Knoten hinzugefgt oder entfernt werden
+	 * (also auch bei {@link #move(Node)}) oder sich die Attribute ndern.
+	 * Subklassen, die {@link #description} verndern, mssen diese Methode
+	 * danach aufrufen.
+	 */
+	protected void invalidateDescription() {
+		
+		DESCRIPTION_VERSION.incrementAndGet( this );
+		rendered = null;
+	}
+	
+	/**
+	 * Gibt zurck, wie oft eine gespeicherte Beschreibung wiederverwendet wurde,
+	 * fr alle Knoten zusammen.
+	 * 
+	 * @return	Die Anzahl der Aufrufe von {@link #getDescription(int)}, die die
+	 * 			Beschreibung nicht neu generieren mussten.
+	 */
+	public static long getDescriptionCacheHits() {
+		return descriptionHits.get();
+	}
+	
+	/**
+	 * Gibt zurck, wie oft eine Beschreibung neu generiert wurde, fr alle Knoten
+	 * zusammen.
+	 * 
+	 * @return	Die Anzahl der Aufrufe von {@link #getDescription(int)}, die die
+	 * 			Beschreibung neu generieren mussten.
+	 */
+	public static long getDescriptionCacheMisses() {
+		return descriptionMisses.get();
 	}
 	
 	/**
@@ -301,6 +488,10 @@ public class Node {
 	/**
 	 * Gibt die Kind-Knoten dieses Knotens zurck. Alle Kind-Knoten haben
 	 * als {@link #parent Parent}-Knoten diesen Knoten.
+	 * <p>
+	 * Die Liste kann nicht verndert werden, Knoten werden mit
+	 * {@link #addChild(Node)}, {@link #removeChild(Node)} und {@link #move(Node)}
+	 * hinzugefgt und entfernt. Fr Details, siehe {@link #children}.
 	 * 
 	 * @return	Die Kind-Knoten dieses Knotens.
 	 */
@@ -320,13 +511,50 @@ public class Node {
 	 */
 	public Node addChild( Node child) {
 		if ( child != null ) {
-			child.parent = this;
-			children.add( child );
+			
+			synchronized ( children ) {
+				child.parent = this;
+				
+				// Am Ende anhngen
+				child.previousSibling = lastChild;
+				child.nextSibling = null;
+				if ( lastChild != null )
+					lastChild.nextSibling = child;
+				else
+					firstChild = child;
+				lastChild = child;
+				childCount++;
+				
+				if ( nameIndex == null )
+					nameIndex = new NameIndex();
+			}
+			invalidateDescription();
+			
+			// Den neuen Teilbaum in allen bergeordneten Indizes eintragen. Alle
+			// bergeordneten Knoten haben Kind-Knoten, also auch einen Index.
+			for (Node current = this; current != null; current = current.parent) {
+				NameIndex index = current.nameIndex;
+				if ( index != null ) index.add( child );
+			}
 		}
 		
 		return this;
 	}
 	
+	/**
+	 * Gibt zurck, ob dieser Knoten den gegebenen Knoten momentan als Kind-Knoten
+	 * aufnehmen wrde. {@link #move(Node)} prft das, bevor der Knoten von seinem
+	 * bisherigen Parent-Knoten entfernt wird. Standardmig nimmt jeder Knoten
+	 * jeden anderen Knoten auf.
+	 * 
+	 * @param child		Der hinzuzufgende Knoten.
+	 * @return			<code>true</code>, wenn {@link #addChild(Node)} den Knoten
+	 * 					aufnehmen wrde.
+	 */
+	public boolean canAddChild( Node child ) {
+		return true;
+	}
+	
 	/**
 	 * Entfernt den gegebenen Knoten von den Kind-Knoten dieses Knotens. Dabei
 	 * wird der zu entfernende Knoten zu einem Root-Knoten (d.h. 
@@ -335,8 +563,33 @@ public class Node {
 	 * @param child	Der zu entfernenden Knoten.
 	 */
 	public void removeChild( Node child ) {
-		child.parent = null;
-		children.remove( child );
+		
+		synchronized ( children ) {
+			
+			// Nur Kind-Knoten dieses Knotens knnen entfernt werden
+			if ( child.parent != this ) return;
+			
+			if ( child.previousSibling != null )
+				child.previousSibling.nextSibling = child.nextSibling;
+			else
+				firstChild = child.nextSibling;
+			
+			if ( child.nextSibling != null )
+				child.nextSibling.previousSibling = child.previousSibling;
+			else
+				lastChild = child.previousSibling;
+			
+			child.previousSibling = null;
+			child.nextSibling = null;
+			child.parent = null;
+			childCount--;
+		}
+		invalidateDescription();
+		
+		for (Node current = this; current != null; current = current.parent) {
+			NameIndex index = current.nameIndex;
+			if ( index != null ) index.remove( child );
+		}
 	}
 	
 	/**
@@ -374,6 +627,16 @@ public class Node {
 	 * Objekten beliebigen Types realisiert. So knnen einzelne Attribute
 	 * ber eine Schlssel-Zeichenkette angesprochen werden.
 	 * <p>
+	 * Gespeichert werden die Attribute nach ihrem {@link AttributeKey}, die
+	 * zurckgegebene <code>Map</code> ist nur eine Sicht darauf. nderungen
+	 * werden direkt in diesem Knoten gespeichert, unbekannte Namen werden dabei
+	 * als neuer Schlssel vom Typ <code>Object</code> registriert. Hat ein Name
+	 * bereits einen anderen Typ, wird bei einem falschen Wert eine
+	 * <code>ClassCastException</code> geworfen. <code>null</code> entfernt das
+	 * Attribut. Schneller und typsicher sind
+	 * {@link #getAttribute(AttributeKey)} und
+	 * {@link #setAttribute(AttributeKey, Object)}.
+	 * <p>
 	 * <b>Beispiel: </b><br>
 	 * Ein Blatt Papier im Spiel soll seinen Zustand von leer zu beschrieben
 	 * wechseln (vielleicht auch mit dynamischen Text?). Zu diesem Zweck wird
@@ -384,7 +647,7 @@ public class Node {
 	 * @return	Die Attribute dieses Knotens.
 	 */
 	public Map<String, Object> getAttributes() {
-		return attributes;
+		return new AttributeView();
 	}
 	
 	/**
@@ -401,8 +664,74 @@ public class Node {
 	 */
 	public Object getAttribute( String key ) {
 		
-		return attributes.get( key );
+		AttributeKey<?> attribute = AttributeKey.forName( key );
+		return attribute != null ? getAttribute( attribute ) : null;
+	}
+	
+	/**
+	 * Gibt den Wert des gegebenen Attributes zurck. Das ist ein einziger
+	 * Zugriff auf ein Array.
+	 * 
+	 * @param key	Der Schlssel des gewnschten Wertes.
+	 * @return		Der Wert, oder <code>null</code>, wenn dieser Knoten das
+	 * 				Attribut nicht hat.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getAttribute( AttributeKey<T> key ) {
+		
+		// Der Typ wurde beim Setzen geprft
+		Object[] current = attributes;
+		int slot = key.getSlot();
+		return current != null && slot < current.length ? (T) current[ slot ] : null;
+	}
+	
+	/**
+	 * Setzt den Wert des gegebenen Attributes.
+	 * 
+	 * @param key	Der Schlssel des Attributes.
+	 * @param value	Der neue Wert, oder <code>null</code>, um das Attribut zu
+	 * 				entfernen.
+	 * @return		Dieser Knoten, zwecks chaining.
+	 * @throws ClassCastException	Wenn der Wert nicht den Typ des Attributes hat.
+	 */
+	public <T> Node setAttribute( AttributeKey<T> key, T value ) {
 		
+		replaceAttribute( key.getSlot(), key.check( value ) );
+		return this;
+	}
+	
+	/**
+	 * Ersetzt den Wert im gegebenen Slot, ohne Sperre.
+	 * 
+	 * @return	Der bisherige Wert.
+	 */
+	private Object replaceAttribute( int slot, Object value ) {
+		
+		while ( true ) {
+			
+			Object[] current = attributes;
+			int length = current != null ? current.length : 0;
+			Object previous = slot < length ? current[ slot ] : null;
+			if ( previous == value ) return previous;
+			
+			Object[] next;
+			if ( value != null ) {
+				next = Arrays.copyOf( current != null ? current : new Object[0], Math.max( length, slot + 1 ) );
+				next[ slot ] = value;
+				
+			} else {
+				// Nur so lang wie der grte belegte Slot
+				while ( length > 0 && ( length - 1 == slot || current[ length - 1 ] == null ) )
+					length--;
+				next = length > 0 ? Arrays.copyOf( current, length ) : null;
+				if ( next != null && slot < length ) next[ slot ] = null;
+			}
+			
+			if ( ATTRIBUTES.compareAndSet( this, current, next ) ) {
+				invalidateDescription();
+				return previous;
+			}
+		}
 	}
 	
 	/**
@@ -432,25 +761,76 @@ public class Node {
 	 */
 	public Node findByIdentifier( String identifier, int depth ) {
 		
-		if ( names[ 0 ].equals( identifier ) ) return this;
-		else {
-
-			// Der == Operator wird absichtlich verwendet, um unbegrenzte
-			// Suchtiefe zu ermglichen
-			if ( depth == 0 ) return null;
-			else {
-				
-				for (Node child : children) {
-					
-					Node result = child.findByIdentifier( identifier, depth - 1 );
-					// Ersten Treffer sofort zurckgeben
-					if ( result != null ) return result;
-				}
+		// Kein Knoten hat einen Identifier, der nicht im Lexikon steht
+		int identifierID = Lexicon.getInstance().lookup( identifier );
+		if ( identifierID == Lexicon.UNKNOWN ) return null;
+		
+		return findByIdentifier( identifierID, depth );
+	}
+	
+	/**
+	 * Sucht wie {@link #findByIdentifier(String, int)} nach Knoten mit dem gegebenen
+	 * Identifier, vergleicht dabei aber nur die Nummern im {@link Lexicon}.
+	 * 
+	 * @param identifierID	Die Nummer des gesuchten Identifiers.
+	 * @param depth			Die Suchtiefe, negative Werte stehen fr eine
+	 * 						unbegrenzte Suchtiefe.
+	 * @return				Der erste gefundene Knoten mit dem gegebenen Identifier,
+	 * 						oder <code>null</code>.
+	 */
+	public Node findByIdentifier( final int identifierID, int depth ) {
+		
+		if ( nameIDs[ 0 ] == identifierID ) return this;
+		
+		final Node[] result = new Node[ 1 ];
+		traverse( new INodeVisitor() {
+			@Override
+			public boolean visit( Node node, int depth ) {
 				
+				// Ersten Treffer sofort zurckgeben
+				if ( node.nameIDs[ 0 ] != identifierID ) return true;
+				result[ 0 ] = node;
+				return false;
 			}
-			
-			return null;
-		}
+		}, depth );
+		
+		return result[ 0 ];
+	}
+	
+	/**
+	 * Sucht nach einem Knoten, der den Namen mit der gegebenen Nummer hat. Dabei
+	 * werden alle {@link #names Namen} bercksichtigt, nicht nur der Identifier.
+	 * Es wird maximal <code>depth</code> Ebenen unter diesem Knoten gesucht.
+	 * <p>
+	 * Knoten, deren Identifier passt, werden gegenber Knoten bevorzugt, bei denen
+	 * nur ein anderer Name passt. Danach wird dieser Knoten selbst bevorzugt, dann
+	 * der Knoten, der sich am nchsten unter diesem Knoten befindet. Bei gleicher
+	 * Tiefe gewinnt der Knoten, der zuerst hinzugefgt wurde.
+	 * <p>
+	 * Im Gegensatz zu {@link #find(IPredicate, int)} wird der Teilbaum dazu nicht
+	 * durchlaufen, die Knoten werden im Namens-Index dieses Knotens nachgeschlagen.
+	 * 
+	 * @param nameID	Die Nummer des gesuchten Namens im {@link Lexicon}.
+	 * @param depth		Die Suchtiefe. Negative Werte stehen fr eine unbegrenzte
+	 * 					Suchtiefe, 0 ist mit einem direkten Vergleich gleichzusetzen.
+	 * @return			Der gefundene Knoten, oder <code>null</code>, wenn kein Knoten
+	 * 					diesen Namen hat.
+	 */
+	public Node findByName( int nameID, int depth ) {
+		
+		if ( nameIDs[ 0 ] == nameID ) return this;
+		if ( depth == 0 ) return hasName( nameID ) ? this : null;
+		
+		NameIndex index = nameIndex;
+		Node result = index != null ? index.find( nameID, this, depth ) : null;
+		
+		// Ein passender Identifier darunter geht einem anderen Namen dieses
+		// Knotens vor
+		if ( hasName( nameID ) 
+				&& ( result == null || result.nameIDs[ 0 ] != nameID ) )
+			return this;
+		
+		return result;
 	}
 	
 	/**
@@ -475,24 +855,101 @@ public class Node {
 	 * 					Filter ist die Suchtiefe (siehe oben). Die Werte sind
 	 * 					wie in der Beschreibung der Methode vermerkt geordnet.
 	 */
-	public List<Node> find( IPredicate<Node> predicate, int depth ) {
+	public List<Node> find( final IPredicate<Node> predicate, int depth ) {
 		
-		List<Node> result = new ArrayList<Node>();
+		// Alle Treffer kommen direkt in eine einzige Liste
+		final List<Node> result = new ArrayList<Node>();
+		traverse( new INodeVisitor() {
+			@Override
+			public boolean visit( Node node, int depth ) {
+				if ( predicate.matches( node ) ) result.add( node );
+				return true;
+			}
+		}, depth );
 		
-		if ( predicate.matches( this ) ) result.add( this );
+		return result;
+	}
+	
+	/**
+	 * Sucht wie {@link #find(IPredicate, int)} nach einem Knoten, der dem gegebenen
+	 * Suchprdikat gengt, bricht die Suche aber beim ersten Treffer ab. Zurckgegeben
+	 * wird also das erste Element der Liste, die <code>find</code> zurckgeben wrde,
+	 * ohne dass diese Liste erstellt wird.
+	 * 
+	 * @param predicate	Das Suchprdikat, dem der gesuchte Knoten gengt.
+	 * @param depth		Die maximale Suchtiefe. Negative Werte stehen fr
+	 * 					eine unbegrenzte Suchtiefe.
+	 * @return			Der erste Knoten, der der Suchbedingung gengt, oder
+	 * 					<code>null</code>, wenn kein Knoten gefunden wurde.
+	 */
+	public Node findFirst( final IPredicate<Node> predicate, int depth ) {
 		
-		// Hier wird absichtlich == verwendet, um unbegrenzte Suchtiefen zu
-		// ermglichen.
-		if ( depth == 0 ) return result;
-		else {
-			
-			for (Node child : children) {
-				result.addAll( child.find( predicate, depth - 1 ) );
+		final Node[] result = new Node[ 1 ];
+		traverse( new INodeVisitor() {
+			@Override
+			public boolean visit( Node node, int depth ) {
+				
+				if ( !predicate.matches( node ) ) return true;
+				result[ 0 ] = node;
+				return false;
+			}
+		}, depth );
+		
+		return result[ 0 ];
+	}
+	
+	/**
+	 * Durchluft diesen Knoten und alle Knoten maximal <code>depth</code> Ebenen
+	 * unter ihm als Tiefensuche (Deep-First), in derselben Reihenfolge wie
+	 * {@link #find(IPredicate, int)}, und ruft fr jeden Knoten den gegebenen
+	 * Besucher auf. Gibt der Besucher <code>false</code> zurck, wird die Suche
+	 * sofort abgebrochen.
+	 * <p>
+	 * Die Suche ist nicht rekursiv, sondern verwendet einen Stack, den jeder
+	 * Thread fr alle Suchen wiederverwendet. Sie allokiert also keinen Speicher
+	 * und kann auch beliebig tiefe Bume durchlaufen. Die Besucher drfen selbst
+	 * wieder suchen, aber whrend der Suche keine Knoten bewegen.
+	 * 
+	 * @param visitor	Der Besucher, der fr jeden Knoten aufgerufen wird.
+	 * @param depth		Die maximale Suchtiefe. Negative Werte stehen fr
+	 * 					eine unbegrenzte Suchtiefe, bei 0 wird nur dieser Knoten
+	 * 					besucht.
+	 * @return			<code>false</code>, wenn der Besucher die Suche abgebrochen
+	 * 					hat, andernfalls <code>true</code>.
+	 */
+	public boolean traverse( INodeVisitor visitor, int depth ) {
+		
+		TraversalStack stack = TraversalStack.get();
+		int base = stack.size();
+		
+		try {
+			stack.push( this, 0 );
+			while ( stack.size() > base ) {
+				
+				int nodeDepth = stack.peekDepth();
+				Node node = stack.pop();
+				
+				if ( !visitor.visit( node, nodeDepth ) )
+					return false;
+				
+				// Negative Suchtiefe steht fr unbegrenzte Suchtiefe
+				if ( depth < 0 || nodeDepth < depth ) {
+					
+					// Kind-Knoten in umgekehrter Reihenfolge ablegen, damit der
+					// erste zuerst besucht wird. Die Sperre wird nur kurz gehalten,
+					// nicht whrend die Knoten besucht werden.
+					synchronized ( node.children ) {
+						for (Node child = node.lastChild; child != null; child = child.previousSibling)
+							stack.push( child, nodeDepth + 1 );
+					}
+				}
 			}
 			
-			return result;
+			return true;
+		} finally {
+			// Auch nach einem Abbruch den Stack fr die uere Suche aufrumen
+			stack.truncate( base );
 		}
-		
 	}
 	
 	/**
@@ -503,24 +960,127 @@ public class Node {
 	 * Wenn das <code>target</code> <code>null</code> ist, passiert nichts.
 	 * <p>
 	 * Hat dieser Knoten einen Parent-Knoten, so wird er aus den Kind-Knoten
-	 * des Parent-Knotens entfernt.
+	 * des Parent-Knotens entfernt. Nimmt <code>target</code> diesen Knoten nicht
+	 * auf (siehe {@link #canAddChild(Node)}), oder wrde der Knoten in seinen
+	 * eigenen Teilbaum bewegt, bleibt er, wo er ist.
+	 * <p>
+	 * Die Bewegung ist atomar: Whrend sie ausgefhrt wird, sind dieser Knoten,
+	 * sein bisheriger Parent-Knoten und <code>target</code> gesperrt, kein anderer
+	 * Thread kann einen dieser Knoten bewegen oder Knoten zu ihnen hinzufgen.
+	 * Die Sperren werden immer in der Reihenfolge der {@link #getID() IDs}
+	 * angefordert, sodass sich gleichzeitige Bewegungen zwischen denselben Rumen
+	 * nicht gegenseitig blockieren knnen. Bewegungen, die keinen dieser Knoten
+	 * betreffen, laufen parallel.
+	 * <p>
+	 * Ausgenommen sind Knoten mit Kind-Knoten (Kisten, Spieler, ...): Ob
+	 * <code>target</code> in ihrem Teilbaum liegt, hngt von allen Knoten ber
+	 * <code>target</code> ab, die dabei nicht gesperrt sind. Zwei solche
+	 * Bewegungen knnten sonst gleichzeitig prfen und zusammen einen Zyklus
+	 * bilden (A in eine Kiste in B, B in eine Kiste in A). Sie werden daher
+	 * zustzlich mit {@link #CONTAINER_MOVES} nacheinander ausgefhrt. Knoten
+	 * ohne Kind-Knoten knnen keinen Zyklus bilden und werden weiterhin parallel
+	 * bewegt.
 	 * 
 	 * @param target	Der Knoten, zu welchem dieser Knoten hinzugefgt werden
 	 * 					soll.
 	 */
-	public synchronized void move( Node target ) {
+	public void move( Node target ) {
+		
+		if ( target == null ) return;
 		
-		if ( target != null ) {
-			// If this node has no parent, it can be moved though.
-			if ( parent != null )
-				parent.removeChild( this );
+		// Zuerst ohne globale Sperre versuchen, hat der Knoten inzwischen
+		// Kind-Knoten, mit
+		if ( firstChild == null && lockAndMove( target, false ) )
+			return;
+		
+		synchronized ( CONTAINER_MOVES ) {
+			lockAndMove( target, true );
+		}
+	}
+	
+	/**
+	 * Sperrt diesen Knoten, seinen Parent-Knoten und <code>target</code> und
+	 * fhrt die Bewegung aus.
+	 * 
+	 * @param container	Ob {@link #CONTAINER_MOVES} gehalten wird. Falls nicht,
+	 * 					wird nur bewegt, wenn dieser Knoten keine Kind-Knoten hat.
+	 * @return			<code>false</code>, wenn der Knoten ohne
+	 * 					<code>CONTAINER_MOVES</code> Kind-Knoten hat und daher nicht
+	 * 					bewegt wurde, sonst <code>true</code>.
+	 */
+	private boolean lockAndMove( Node target, boolean container ) {
+		
+		while ( true ) {
+			
+			// Der Parent-Knoten kann sich ndern, bis er gesperrt ist
+			Node source = parent;
 			
-			target.addChild( this );
+			// Die (bis zu) drei Knoten nach ihrer ID sortieren. Ohne Parent-Knoten
+			// wird dieser Knoten doppelt gesperrt, was bei synchronized keine Rolle
+			// spielt.
+			Node first = this;
+			Node second = source != null ? source : this;
+			Node third = target;
+			if ( lockOrder( first, second ) > 0 ) { Node swap = first; first = second; second = swap; }
+			if ( lockOrder( second, third ) > 0 ) { Node swap = second; second = third; third = swap; }
+			if ( lockOrder( first, second ) > 0 ) { Node swap = first; first = second; second = swap; }
 			
-			parent = target;
+			synchronized ( first ) {
+				synchronized ( second ) {
+					synchronized ( third ) {
+						
+						if ( parent == source ) {
+							
+							// Solange dieser Knoten gesperrt ist, kann ihm kein
+							// Knoten hinzugefgt werden
+							if ( !container && firstChild != null )
+								return false;
+							
+							moveLocked( source, target );
+							return true;
+						}
+					}
+				}
+			}
+			// Ansonsten wurde der Knoten inzwischen von einem anderen Thread bewegt,
+			// mit dem neuen Parent-Knoten erneut versuchen.
 		}
 	}
 	
+	/**
+	 * Fhrt die eigentliche Bewegung aus, whrend dieser Knoten, <code>source</code>
+	 * und <code>target</code> gesperrt sind. Hat dieser Knoten Kind-Knoten, wird
+	 * auerdem {@link #CONTAINER_MOVES} gehalten, die Knoten ber
+	 * <code>target</code> knnen sich also nicht ndern: Jeder von ihnen hat
+	 * Kind-Knoten und kann nur mit dieser Sperre bewegt werden.
+	 */
+	private void moveLocked( Node source, Node target ) {
+		
+		if ( source == target || !target.canAddChild( this ) )
+			return;
+		
+		// Ein Knoten kann nicht in seinen eigenen Teilbaum bewegt werden
+		for (Node current = target; current != null; current = current.parent) {
+			if ( current == this ) return;
+		}
+		
+		// If this node has no parent, it can be moved though.
+		if ( source != null )
+			source.removeChild( this );
+		
+		target.addChild( this );
+	}
+	
+	/**
+	 * Die globale Reihenfolge, in der Knoten von {@link #move(Node)} gesperrt
+	 * werden.
+	 */
+	private static int lockOrder( Node a, Node b ) {
+		
+		// Die IDs sind eindeutig, siehe NodeTable
+		return a.id < b.id ? -1 : ( a.id == b.id ? 0 : 1 );
+	}
+	
 	/**
 	 * Gibt den Root-Knoten des Baumes zurck, in dem sich dieser Knoten
 	 * befindet. Ist der Knoten selbst der Root-Knoten, wird er auch selbst
@@ -529,8 +1089,181 @@ public class Node {
 	 * @return	Der Root-Knoten dieses Knotens.
 	 */
 	public Node getRoot() {
-		if ( parent == null ) return this;
-		else return parent.getRoot();
+		
+		Node result = this;
+		for (Node current = parent; current != null; current = current.parent)
+			result = current;
+		
+		return result;
+	}
+	
+	/**
+	 * Die Sicht auf die verketteten Kind-Knoten, siehe {@link Node#children}.
+	 */
+	private class ChildList extends AbstractList<Node> {
+		
+		@Override
+		public int size() {
+			return childCount;
+		}
+		
+		@Override
+		public Node get( int index ) {
+			
+			int i = 0;
+			for (Node child : this) {
+				if ( i++ == index ) return child;
+			}
+			throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + i );
+		}
+		
+		@Override
+		public Iterator<Node> iterator() {
+			
+			return new Iterator<Node>() {
+				
+				private Node next = firstChild;
+				
+				@Override
+				public boolean hasNext() {
+					return next != null;
+				}
+				
+				@Override
+				public Node next() {
+					
+					if ( next == null ) throw new NoSuchElementException();
+					
+					Node result = next;
+					next = result.nextSibling;
+					
+					// Wurde der Knoten inzwischen bewegt, zeigt er auf Knoten eines
+					// anderen Parent-Knotens
+					if ( next != null && next.parent != Node.this )
+						next = null;
+					
+					return result;
+				}
+				
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+	
+	/**
+	 * Eine generierte Beschreibung, siehe {@link Node#getDescription(int)}.
+	 */
+	private static final class RenderedDescription {
+		
+		final int version;
+		final int depth;
+		
+		// Die Liste der Kind-Knoten, und die gesamte Beschreibung, wenn sie nicht
+		// von einem IValueCalculator berechnet wird
+		final String children;
+		final String text;
+		
+		RenderedDescription( int version, int depth, String children, String text ) {
+			this.version = version;
+			this.depth = depth;
+			this.children = children;
+			this.text = text;
+		}
+	}
+	
+	/**
+	 * Die Attribute eines Knotens als <code>Map</code>, siehe
+	 * {@link Node#getAttributes()}.
+	 */
+	private final class AttributeView extends AbstractMap<String, Object> {
+		
+		@Override
+		public Object get( Object key ) {
+			return key instanceof String ? getAttribute( (String) key ) : null;
+		}
+		
+		@Override
+		public boolean containsKey( Object key ) {
+			return get( key ) != null;
+		}
+		
+		@Override
+		public Object put( String key, Object value ) {
+			
+			AttributeKey<?> attribute = AttributeKey.forName( key );
+			if ( attribute == null )
+				attribute = AttributeKey.<Object>register( key, Object.class );
+			
+			return replaceAttribute( attribute.getSlot(), attribute.check( value ) );
+		}
+		
+		@Override
+		public Object remove( Object key ) {
+			
+			AttributeKey<?> attribute = key instanceof String ? AttributeKey.forName( (String) key ) : null;
+			return attribute != null ? replaceAttribute( attribute.getSlot(), null ) : null;
+		}
+		
+		@Override
+		public Set<Map.Entry<String, Object>> entrySet() {
+			
+			return new AbstractSet<Map.Entry<String, Object>>() {
+				
+				@Override
+				public int size() {
+					
+					int size = 0;
+					Object[] current = attributes;
+					if ( current != null ) {
+						for (Object value : current)
+							if ( value != null ) size++;
+					}
+					return size;
+				}
+				
+				@Override
+				public Iterator<Map.Entry<String, Object>> iterator() {
+					
+					final Object[] current = attributes != null ? attributes : new Object[0];
+					return new Iterator<Map.Entry<String, Object>>() {
+						
+						private int next = advance( 0 );
+						private int last = -1;
+						
+						private int advance( int slot ) {
+							while ( slot < current.length && current[ slot ] == null ) slot++;
+							return slot;
+						}
+						
+						@Override
+						public boolean hasNext() {
+							return next < current.length;
+						}
+						
+						@Override
+						public Map.Entry<String, Object> next() {
+							
+							if ( !hasNext() ) throw new NoSuchElementException();
+							last = next;
+							next = advance( next + 1 );
+							return new AbstractMap.SimpleImmutableEntry<String, Object>(
+									AttributeKey.forSlot( last ).getName(), current[ last ] );
+						}
+						
+						@Override
+						public void remove() {
+							
+							if ( last < 0 ) throw new IllegalStateException();
+							replaceAttribute( last, null );
+							last = -1;
+						}
+					};
+				}
+			};
+		}
 	}
 	
 	/**
@@ -551,20 +1284,21 @@ public class Node {
 	
 	@Override
 	public String toString() {
-		return toString( 0 );
-	}
-	
-	private String toString( int depth ) {
-		String result = "";
-		for (int i = 0; i < depth; i++) {
-			result += "\t";
-		}
 		
-		result += getIdentifier();
-		for (Node child : getChildren()) {
-			result += "\n" + child.toString( depth + 1 );
-		}
+		final StringBuilder result = new StringBuilder();
+		traverse( new INodeVisitor() {
+			@Override
+			public boolean visit( Node node, int depth ) {
+				
+				if ( result.length() > 0 ) result.append( '\n' );
+				for (int i = 0; i < depth; i++)
+					result.append( '\t' );
+				
+				result.append( node.getIdentifier() );
+				return true;
+			}
+		}, -1 );
 		
-		return result;
+		return result.toString();
 	}
 }
@@ -0,0 +1,160 @@
+package de.tungsten.tocs.engine.nodes;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Die Tabelle aller {@link Node}s der Welt. Jeder Knoten erhlt beim Erstellen eine
+ * fortlaufende {@link Node#getID() ID}, beginnend bei 0, und wird unter dieser ID
+ * eingetragen. {@link #get(int)} findet einen Knoten ber seine ID also mit einem
+ * Zugriff auf ein Array, ohne Suche im Knoten-Baum.
+ * <p>
+ * Damit knnen Wiederholungen, Netzwerk-Protokolle und Indizes Knoten ber eine
+ * einfache Zahl ansprechen, statt Referenzen auf Knoten zu halten oder nach Namen
+ * zu suchen.
+ * <p>
+ * Die IDs werden atomar vergeben, auch wenn Knoten (z.B. Spieler und Waffen) von
+ * mehreren Threads gleichzeitig erstellt werden, und nie wieder vergeben. Die
+ * Tabelle besteht aus Blcken fester Gre, die erst bei Bedarf angelegt werden.
+ * Nachschlagen ist ohne Sperre mglich, nur das Anlegen eines neuen Blocks ist
+ * <code>synchronized</code>.
+ * <p>
+ * Ein Server spielt genau eine {@link de.tungsten.tocs.engine.maps.Map Map}, diese
+ * Klasse ist daher als Singleton implementiert, die einzige Instanz kann mit
+ * {@link #getInstance()} erreicht werden.
+ *
+ * @author tungsten
+ *
+ */
+public class NodeTable {
+
+	private static final int BLOCK_BITS	= 10;
+	private static final int BLOCK_SIZE	= 1 << BLOCK_BITS;
+	private static final int BLOCK_MASK	= BLOCK_SIZE - 1;
+
+	private static final NodeTable instance = new NodeTable();
+
+	/**
+	 * Gibt die einzige existierende Instanz der Klasse <code>NodeTable</code> zurck.
+	 *
+	 * @return	Die einzige existierende Instanz dieser Klasse.
+	 */
+	public static NodeTable getInstance() {
+		return instance;
+	}
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * Die Blcke der Tabelle, an der Stelle <code>ID >>> BLOCK_BITS</code>. Wird beim
+	 * Anlegen eines Blocks durch eine Kopie ersetzt.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private volatile AtomicReferenceArray<Node>[] blocks = new AtomicReferenceArray[ 16 ];
+
+	private NodeTable() {}
+
+	/**
+	 * Vergibt die nchste ID.
+	 */
+	int allocate() {
+
+		int id = next.getAndIncrement();
+		if ( id < 0 )
+			throw new IllegalStateException( "Node IDs exhausted." );
+		return id;
+	}
+
+	/**
+	 * Trgt den gegebenen Knoten unter seiner ID ein. Wird am Ende des Konstruktors von
+	 * {@link Node} aufgerufen.
+	 */
+	void put( Node node ) {
+
+		int id = node.getID();
+		AtomicReferenceArray<Node>[] current = blocks;
+		int index = id >>> BLOCK_BITS;
+		AtomicReferenceArray<Node> block = index < current.length ? current[ index ] : null;
+		if ( block == null )
+			block = createBlock( index );
+
+		block.set( id & BLOCK_MASK, node );
+	}
+
+	private synchronized AtomicReferenceArray<Node> createBlock( int index ) {
+
+		AtomicReferenceArray<Node>[] current = blocks;
+		if ( index < current.length && current[ index ] != null )
+			return current[ index ];
+
+		// Erst den Block anlegen, dann die Kopie verffentlichen
+		int length = current.length;
+		while ( length <= index )
+			length *= 2;
+
+		AtomicReferenceArray<Node>[] copy = Arrays.copyOf( current, length );
+		copy[ index ] = new AtomicReferenceArray<Node>( BLOCK_SIZE );
+		blocks = copy;
+		return copy[ index ];
+	}
+
+	/**
+	 * Gibt den Knoten mit der gegebenen ID zurck.
+	 * <p>
+	 * Knoten werden am Ende des Konstruktors von {@link Node} eingetragen, also bevor
+	 * der Konstruktor einer Subklasse fertig ist. Whrend ein {@link Player},
+	 * {@link OpenableNode} oder {@link WeaponNode} noch erstellt wird, kann diese
+	 * Methode ihn daher bereits zurckgeben, obwohl z.B. sein Team, sein Zustand oder
+	 * sein Waffen-Typ noch nicht gesetzt sind. Alle Felder von <code>Node</code> sind
+	 * dagegen immer gesetzt.
+	 *
+	 * @param id	Die ID eines Knotens.
+	 * @return		Der Knoten, oder <code>null</code>, wenn es keinen Knoten mit
+	 * 				dieser ID gibt oder er mit {@link #release(Node)} ausgetragen
+	 * 				wurde.
+	 */
+	public Node get( int id ) {
+
+		if ( id < 0 ) return null;
+
+		AtomicReferenceArray<Node>[] current = blocks;
+		int index = id >>> BLOCK_BITS;
+		if ( index >= current.length || current[ index ] == null )
+			return null;
+
+		return current[ index ].get( id & BLOCK_MASK );
+	}
+
+	/**
+	 * Trgt den gegebenen Knoten und alle Knoten unter ihm aus, z.B. wenn ein Spieler
+	 * die Verbindung trennt. Ihre IDs werden nicht wieder vergeben.
+	 *
+	 * @param node	Der Knoten, der nicht mehr zur Welt gehrt.
+	 */
+	public void release( Node node ) {
+
+		node.traverse( new INodeVisitor() {
+			@Override
+			public boolean visit( Node current, int depth ) {
+
+				int id = current.getID();
+				AtomicReferenceArray<Node>[] blocks = NodeTable.this.blocks;
+				int index = id >>> BLOCK_BITS;
+				if ( index < blocks.length && blocks[ index ] != null )
+					blocks[ index ].compareAndSet( id & BLOCK_MASK, current, null );
+				return true;
+			}
+		}, -1 );
+	}
+
+	/**
+	 * Gibt die Anzahl der bisher vergebenen IDs zurck. Alle IDs sind kleiner als
+	 * dieser Wert.
+	 *
+	 * @return	Die nchste zu vergebende ID.
+	 */
+	public int getAllocated() {
+		return next.get();
+	}
+}
@@ -74,7 +74,7 @@ public class OpenableNode extends Node {
 	 * 
 	 * @return	<code>true</code>.
 	 */
-	public boolean open() {
+	public synchronized boolean open() {
 		
 		closed = false;
 		return true;	// Rckgabewert nur fr Subklassen
@@ -87,7 +87,7 @@ public class OpenableNode extends Node {
 	 * 
 	 * @return <code>true</code>.
 	 */
-	public boolean close() {
+	public synchronized boolean close() {
 		closed = true;
 		return true;	// Rckgabewert nur fr Subklassen
 	}
@@ -111,8 +111,20 @@ public class OpenableNode extends Node {
 	public Node addChild( Node child ) {
 		
 		// Nur in offenen Kisten knnen Sachen gelegt werden.
-		if ( !closed )
+		if ( canAddChild( child ) )
 			return super.addChild( child );
 		else return null;
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Ein <code>OpenableNode</code> nimmt nur Knoten auf, wenn er offen ist.
+	 * ffnen und Schlieen ist auf diesem Knoten <code>synchronized</code>,
+	 * whrend {@link #move(Node)} ihn gesperrt hat, ndert sich das also nicht.
+	 */
+	@Override
+	public boolean canAddChild( Node child ) {
+		return !closed;
+	}
 }
@@ -60,15 +60,16 @@ public class Player extends Node {
 				IntegerType.getInstance(),
 				DEFAULT_PLAYER_CREDIT );
 		
-		// Ein Inventar und ein Paar Hnde erstellen.
-		this.children.add( new Node( 
+		// Ein Inventar und ein Paar Hnde erstellen. Der Konstruktor von Node fgt
+		// sie bereits als Kind-Knoten hinzu.
+		new Node( 
 				this, 
 				new String[] { Node.NODE_INVENTORY, "inventory" }, 
-				"A backpack containing equipment." ) );
-		this.children.add( new Node( 
+				"A backpack containing equipment." );
+		new Node( 
 				this, 
 				new String[] { Node.NODE_HANDS }, 
-				"A pair of unkempt hands." ) );
+				"A pair of unkempt hands." );
 	}
 	
 	/**
@@ -110,6 +111,7 @@ public class Player extends Node {
 	 */
 	public void setSkin( String skin ) {
 		description = skin;
+		invalidateDescription();
 	}
 	
 	/**
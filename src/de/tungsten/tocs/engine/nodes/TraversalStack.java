@@ -0,0 +1,77 @@
+package de.tungsten.tocs.engine.nodes;
+
+import java.util.Arrays;
+
+/**
+ * Der Stack, mit dem {@link Node#traverse(INodeVisitor, int)} einen Teilbaum ohne
+ * Rekursion durchluft. Jeder Thread hat einen eigenen Stack, der von allen Suchen
+ * wiederverwendet wird und nur wchst, wenn ein Baum breiter ist als alle bisherigen.
+ * Eine Suche allokiert also keinen Speicher.
+ * <p>
+ * Sucht ein Besucher selbst wieder, legt die innere Suche ihre Knoten einfach ber
+ * denen der ueren ab und entfernt sie wieder, bevor die uere Suche weiterluft.
+ * 
+ * @author tungsten
+ *
+ */
+final class TraversalStack {
+
+	private static final ThreadLocal<TraversalStack> stacks = new ThreadLocal<TraversalStack>() {
+		@Override
+		protected TraversalStack initialValue() {
+			return new TraversalStack();
+		}
+	};
+	
+	/**
+	 * Gibt den Stack des aktuellen Threads zurck.
+	 */
+	static TraversalStack get() {
+		return stacks.get();
+	}
+	
+	private Node[] nodes = new Node[ 64 ];
+	private int[] depths = new int[ 64 ];
+	private int size = 0;
+	
+	private TraversalStack() {}
+	
+	int size() {
+		return size;
+	}
+	
+	void push( Node node, int depth ) {
+		
+		if ( size == nodes.length ) {
+			nodes = Arrays.copyOf( nodes, size * 2 );
+			depths = Arrays.copyOf( depths, size * 2 );
+		}
+		nodes[size] = node;
+		depths[size] = depth;
+		size++;
+	}
+	
+	/**
+	 * Die Tiefe des obersten Knotens. Muss vor {@link #pop()} abgefragt werden.
+	 */
+	int peekDepth() {
+		return depths[ size - 1 ];
+	}
+	
+	Node pop() {
+		
+		Node result = nodes[ --size ];
+		nodes[size] = null;
+		return result;
+	}
+	
+	/**
+	 * Entfernt alle Knoten oberhalb von <code>size</code>, z.B. wenn eine Suche
+	 * abgebrochen wurde.
+	 */
+	void truncate( int size ) {
+		
+		while ( this.size > size )
+			pop();
+	}
+}
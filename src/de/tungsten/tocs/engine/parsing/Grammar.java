@@ -0,0 +1,392 @@
+package de.tungsten.tocs.engine.parsing;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+
+import de.tungsten.tocs.LogLevel;
+import de.tungsten.tocs.Logger;
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.config.StringType;
+
+/*
+ * Syntax der Grammatik-Datei:
+ *
+ * # Kommentar
+ * articles		= the, this, a, an
+ * delimiter	= and
+ * aliases		= as well as
+ * with			= with, using
+ * to			= to, into, at
+ * of			= of, in, from
+ * verb.take	= grab, get
+ *
+ * Die Eintrge sind durch Kommas getrennt, Leerzeichen am Rand werden entfernt.
+ * Bis auf die Aliase muss jeder Eintrag aus genau einem Wort bestehen.
+ */
+
+/**
+ * Die Grammatik, nach der {@link InstructionParser} die Eingaben der Spieler zerlegt.
+ * Sie legt fest,
+ * <ul>
+ * <li> welche Wrter Artikel sind und ignoriert werden,
+ * <li> welches Wort Identifier trennt, und welche Ausdrcke durch dieses Wort ersetzt
+ * 		werden,
+ * <li> welche Wrter zu welcher {@link Preposition} gehren, also das Argument
+ * 		einleiten, in das die folgenden Identifier kommen, und
+ * <li> welche zustzlichen Verben es gibt.
+ * </ul>
+ * Zustzliche Verben sind Synonyme fr die Schlsselwrter bestehender
+ * {@link IParser}: Mit <code>verb.take = grab</code> wird "grab the key" an den Parser
+ * von "take" weitergeleitet, und das Verb der {@link Instruction} ist "take". Fr ein
+ * neues Verb muss daher keine neue Klasse geschrieben werden.
+ * <p>
+ * Die Grammatik wird mit den <code>add</code>-Methoden oder mit
+ * {@link #loadFromFile(String)} definiert und dann von {@link #compile()} in eine
+ * Zustandstabelle bersetzt. Mit dieser Tabelle ordnet der {@link InstructionLexer}
+ * jedes Wort Zeichen fr Zeichen seiner Art zu, whrend er es liest, statt es danach mit
+ * allen Wrtern der Grammatik zu vergleichen. Danach kann die Grammatik nicht mehr
+ * verndert werden.
+ * <p>
+ * Die Grammatik des Servers ist als Singleton implementiert und kann mit
+ * {@link #getInstance()} erreicht werden. Sie wird aus der Datei
+ * {@link #CONFIG_GRAMMAR} geladen, ohne diesen Eintrag wird die eingebaute Grammatik
+ * aus {@link #createDefault()} verwendet.
+ *
+ * @author tungsten
+ *
+ */
+public class Grammar {
+
+	private static final String LOG_NAME = "(CORE) Grammar";
+
+	// Der Pfad der Grammatik-Datei, ohne Eintrag wird die eingebaute Grammatik verwendet
+	public	static final String	CONFIG_GRAMMAR	= "grammar";
+	private static final String	DEFAULT_GRAMMAR	= "";
+
+	/**
+	 * Dieser Ausdruck wird in der eingebauten Grammatik durch
+	 * {@link InstructionParser#DELIMITER} ersetzt.
+	 */
+	static final String DELIMITER_ALIAS = "as well as";
+
+	private static final String VERB_PREFIX = "verb.";
+
+	private static Grammar instance = null;
+
+	/**
+	 * Gibt die Grammatik des Servers zurck. Beim ersten Aufruf wird sie geladen und
+	 * kompiliert.
+	 *
+	 * @return	Die kompilierte Grammatik des Servers.
+	 */
+	public static synchronized Grammar getInstance() {
+
+		if ( instance == null ) {
+
+			String path = (String) Configuration.getInstance().getValue(
+					CONFIG_GRAMMAR,
+					StringType.getInstance(),
+					DEFAULT_GRAMMAR );
+
+			Grammar grammar = path.isEmpty() ? createDefault() : loadFromFile( path );
+			grammar.compile();
+			instance = grammar;
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Ersetzt die Grammatik des Servers. Die Instructions im {@link InstructionCache}
+	 * wurden mit der alten Grammatik geparst und werden daher entfernt.
+	 *
+	 * @param grammar	Die neue Grammatik, sie wird kompiliert, falls das noch nicht
+	 * 					geschehen ist.
+	 */
+	public static void setInstance( Grammar grammar ) {
+
+		grammar.compile();
+		synchronized ( Grammar.class ) {
+			instance = grammar;
+		}
+
+		InstructionCache.getInstance().clear();
+	}
+
+	private final Set<String> articles = new LinkedHashSet<String>();
+	private String delimiter = InstructionParser.DELIMITER;
+	private final Set<String> aliases = new LinkedHashSet<String>();
+	private final Map<String, Preposition> prepositions = new LinkedHashMap<String, Preposition>();
+
+	/**
+	 * Ordnet jedem zustzlichen Verb (in Kleinbuchstaben) das Schlsselwort zu, fr das
+	 * es steht.
+	 */
+	private final Map<String, String> verbs = new LinkedHashMap<String, String>();
+
+	/**
+	 * Die kompilierte Tabelle, oder <code>null</code>, solange die Grammatik noch
+	 * verndert werden kann.
+	 */
+	private volatile GrammarTable table = null;
+
+	/**
+	 * Erstellt eine neue, leere Grammatik. Das Wort, das Identifier trennt, ist
+	 * {@link InstructionParser#DELIMITER}.
+	 */
+	public Grammar() {}
+
+	/**
+	 * Erstellt die eingebaute Grammatik: Die Artikel aus
+	 * {@link InstructionParser#ARTICLES}, das Trennwort
+	 * {@link InstructionParser#DELIMITER} mit dem Alias "as well as", die Wrter der
+	 * {@link Preposition}s und keine zustzlichen Verben.
+	 *
+	 * @return	Eine neue, noch nicht kompilierte Grammatik.
+	 */
+	public static Grammar createDefault() {
+
+		Grammar grammar = new Grammar();
+		for (String article : InstructionParser.ARTICLES)
+			grammar.addArticle( article );
+
+		grammar.setDelimiter( InstructionParser.DELIMITER );
+		grammar.addAlias( DELIMITER_ALIAS );
+
+		for (Preposition preposition : Preposition.values()) {
+			for (String word : preposition.content)
+				grammar.addPreposition( word, preposition );
+		}
+
+		return grammar;
+	}
+
+	/**
+	 * Ldt eine Grammatik aus der Datei an dem gegebenen Pfad. Die Syntax ist am Anfang
+	 * dieser Datei beschrieben. Fehlerhafte Zeilen und Eintrge resultieren in einem
+	 * <code>WARNING</code> in den Logfiles und werden bersprungen. Existiert die Datei
+	 * nicht, wird die eingebaute Grammatik verwendet.
+	 *
+	 * @param path	Der Pfad der Grammatik-Datei.
+	 * @return		Eine neue, noch nicht kompilierte Grammatik.
+	 */
+	public static Grammar loadFromFile( String path ) {
+
+		Grammar grammar = new Grammar();
+		Logger logger = Logger.getInstance();
+
+		try {
+
+			logger.log( LogLevel.INFO, LOG_NAME, "Loading grammar file \"" + path + "\"." );
+			Scanner scanner = new Scanner( new File( path ) );
+
+			int line = 0;
+			while ( scanner.hasNextLine() ) {
+
+				line++;
+				String content = scanner.nextLine().trim();
+				if ( content.isEmpty() || content.startsWith( "#" ) ) continue;
+
+				String[] tokens = content.split( "=" );
+				if ( tokens.length != 2 ) {
+					logger.log( LogLevel.WARNING, LOG_NAME, "Syntax error in grammar file at line " + line + "." );
+					continue;
+				}
+
+				String key = tokens[0].trim().toLowerCase( Locale.ROOT );
+				for (String entry : tokens[1].split( "," )) {
+
+					entry = entry.trim();
+					if ( entry.isEmpty() ) continue;
+
+					if ( !grammar.define( key, entry ) )
+						logger.log( LogLevel.WARNING, LOG_NAME, "Invalid entry \"" + entry
+								+ "\" for \"" + key + "\" in grammar file at line " + line + "." );
+				}
+			}
+
+			scanner.close();
+
+		} catch ( FileNotFoundException e ) {
+
+			logger.log( LogLevel.WARNING, LOG_NAME, "No grammar file at " + path + ", using the built-in grammar." );
+			return createDefault();
+		}
+
+		return grammar;
+	}
+
+	/**
+	 * Trgt einen Eintrag aus der Grammatik-Datei ein.
+	 *
+	 * @return	<code>false</code>, wenn der Schlssel unbekannt oder der Eintrag
+	 * 			ungltig ist.
+	 */
+	private boolean define( String key, String entry ) {
+
+		if ( key.equals( "aliases" ) )
+			return addAlias( entry );
+
+		if ( !isWord( entry ) ) return false;
+
+		if ( key.equals( "articles" ) )
+			return addArticle( entry );
+
+		if ( key.equals( "delimiter" ) )
+			return setDelimiter( entry );
+
+		if ( key.startsWith( VERB_PREFIX ) && key.length() > VERB_PREFIX.length() )
+			return addVerb( entry, key.substring( VERB_PREFIX.length() ) );
+
+		for (Preposition preposition : Preposition.values()) {
+			if ( preposition.name().equalsIgnoreCase( key ) )
+				return addPreposition( entry, preposition );
+		}
+
+		return false;
+	}
+
+	/**
+	 * Fgt einen Artikel hinzu. Artikel werden beim Parsen ignoriert.
+	 *
+	 * @param word	Der Artikel, ein einzelnes Wort.
+	 * @return		<code>false</code>, wenn das Wort ungltig ist.
+	 */
+	public boolean addArticle( String word ) {
+
+		checkModifiable();
+		return isWord( word ) && articles.add( word.toLowerCase( Locale.ROOT ) );
+	}
+
+	/**
+	 * Setzt das Wort, das Identifier trennt. Aus "A B C and D E" werden die Identifier
+	 * "A B C" und "D E".
+	 *
+	 * @param word	Das Trennwort, ein einzelnes Wort.
+	 * @return		<code>false</code>, wenn das Wort ungltig ist.
+	 */
+	public boolean setDelimiter( String word ) {
+
+		checkModifiable();
+		if ( !isWord( word ) ) return false;
+
+		delimiter = word;
+		return true;
+	}
+
+	/**
+	 * Fgt einen Ausdruck hinzu, der in der Eingabe durch das Trennwort ersetzt wird.
+	 * Wie bei <code>String.replace()</code> wird dabei Gro- und Kleinschreibung
+	 * beachtet, und der Ausdruck wird auch innerhalb von Wrtern ersetzt.
+	 *
+	 * @param phrase	Der zu ersetzende Ausdruck, er darf Leerzeichen enthalten.
+	 * @return			<code>false</code>, wenn der Ausdruck leer ist.
+	 */
+	public boolean addAlias( String phrase ) {
+
+		checkModifiable();
+		return !phrase.isEmpty() && aliases.add( phrase );
+	}
+
+	/**
+	 * Ordnet ein Wort einer Prposition zu. Die Identifier nach einer Prposition vom
+	 * Typ {@link Preposition#OF} bilden die nchste Ebene des Suchpfads, nach den
+	 * anderen Prpositionen beginnt ein neues Argument.
+	 *
+	 * @param word			Die Prposition, ein einzelnes Wort.
+	 * @param preposition	Die Art der Prposition.
+	 * @return				<code>false</code>, wenn das Wort ungltig ist oder schon zu
+	 * 						einer Prposition gehrt.
+	 */
+	public boolean addPreposition( String word, Preposition preposition ) {
+
+		checkModifiable();
+		if ( !isWord( word ) || prepositions.containsKey( word.toLowerCase( Locale.ROOT ) ) ) return false;
+
+		prepositions.put( word.toLowerCase( Locale.ROOT ), preposition );
+		return true;
+	}
+
+	/**
+	 * Fgt ein zustzliches Verb hinzu, das fr das Schlsselwort eines bestehenden
+	 * {@link IParser} steht.
+	 *
+	 * @param verb		Das neue Verb, ein einzelnes Wort.
+	 * @param keyword	Das Schlsselwort, fr das es steht.
+	 * @return			<code>false</code>, wenn das Verb ungltig ist oder schon fr
+	 * 					ein anderes Schlsselwort steht.
+	 */
+	public boolean addVerb( String verb, String keyword ) {
+
+		checkModifiable();
+		if ( !isWord( verb ) || !isWord( keyword ) || verbs.containsKey( verb.toLowerCase( Locale.ROOT ) ) ) return false;
+
+		verbs.put( verb.toLowerCase( Locale.ROOT ), keyword.toLowerCase( Locale.ROOT ) );
+		return true;
+	}
+
+	/**
+	 * Gibt das Schlsselwort zurck, fr das das gegebene Verb steht. Gro- und
+	 * Kleinschreibung wird nicht beachtet.
+	 *
+	 * @param verb	Das erste Wort einer Eingabe.
+	 * @return		Das Schlsselwort, oder <code>null</code>, wenn das Verb kein
+	 * 				zustzliches Verb dieser Grammatik ist.
+	 */
+	public String getKeyword( String verb ) {
+		return verbs.get( verb.toLowerCase( Locale.ROOT ) );
+	}
+
+	/**
+	 * bersetzt die Grammatik in die Zustandstabelle fr den {@link InstructionLexer}.
+	 * Danach kann die Grammatik nicht mehr verndert werden. Weitere Aufrufe haben
+	 * keine Wirkung.
+	 */
+	public synchronized void compile() {
+
+		if ( table != null ) return;
+
+		table = new GrammarTable(
+				Collections.unmodifiableSet( articles ),
+				delimiter,
+				Collections.unmodifiableSet( aliases ),
+				Collections.unmodifiableMap( prepositions ),
+				Collections.unmodifiableMap( verbs ) );
+	}
+
+	/**
+	 * Gibt die kompilierte Zustandstabelle zurck.
+	 */
+	GrammarTable getTable() {
+
+		if ( table == null ) compile();
+		return table;
+	}
+
+	private void checkModifiable() {
+		if ( table != null )
+			throw new IllegalStateException( "Grammar: The grammar has already been compiled." );
+	}
+
+	/**
+	 * Prft, ob der gegebene String ein einzelnes Wort ohne Satzzeichen ist, die der
+	 * {@link InstructionLexer} entfernt.
+	 */
+	private static boolean isWord( String s ) {
+
+		if ( s.isEmpty() ) return false;
+
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt( i );
+			if ( c <= ' ' || c == ',' || c == ';' || c == '.' || c == '!' ) return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,248 @@
+package de.tungsten.tocs.engine.parsing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+import de.tungsten.tocs.engine.parsing.InstructionLexer.TokenType;
+
+/**
+ * Die kompilierte Form einer {@link Grammar}: Ein deterministischer endlicher Automat,
+ * der alle Wrter der Grammatik erkennt. Der {@link InstructionLexer} fhrt fr jedes
+ * gelesene Zeichen einen Schritt mit {@link #step(int, char)} aus und kennt am Ende des
+ * Wortes dessen Art, ohne es mit einem einzigen Wort der Grammatik zu vergleichen.
+ * <p>
+ * Gro- und Kleinschreibung wird dabei wie bei <code>String.equalsIgnoreCase()</code>
+ * nicht beachtet. Die Tabelle wird nach dem Erstellen nicht mehr verndert und kann
+ * von beliebig vielen Threads gleichzeitig verwendet werden.
+ *
+ * @author tungsten
+ *
+ */
+final class GrammarTable {
+
+	/**
+	 * Der Zustand, in dem jedes Wort beginnt.
+	 */
+	static final int START = 1;
+
+	/**
+	 * Der Zustand fr alle Wrter, die nicht Anfang eines Wortes der Grammatik sind.
+	 * Er wird nie wieder verlassen.
+	 */
+	static final int DEAD = 0;
+
+	// Jedes Zeichen, das in einem Wort vorkommt, hat eine eigene Spalte in der Tabelle.
+	// Spalte 0 steht fr alle anderen Zeichen.
+	private final int[] asciiColumns = new int[ 128 ];
+	private final Map<Character, Integer> otherColumns = new HashMap<Character, Integer>();
+	private final int columns;
+
+	/**
+	 * Der nchste Zustand fr jeden Zustand und jede Spalte, an der Stelle
+	 * <code>state * columns + column</code>.
+	 */
+	private final int[] transitions;
+
+	// Die Art des Wortes, das in einem Zustand endet, null fr Nomen
+	private final TokenType[] types;
+	private final Preposition[] prepositions;
+
+	// Das Schlsselwort, wenn das Wort als Verb verwendet wird
+	private final String[] keywords;
+
+	private final String delimiter;
+	private final String[] aliases;
+
+	/**
+	 * Erstellt die Tabelle fr die gegebenen Wrter. Gehrt ein Wort zu mehreren Arten,
+	 * haben Artikel Vorrang vor dem Trennwort, und das Trennwort vor Prpositionen.
+	 */
+	GrammarTable(
+			Set<String> articles,
+			String delimiter,
+			Set<String> aliases,
+			Map<String, Preposition> prepositions,
+			Map<String, String> verbs ) {
+
+		this.delimiter = delimiter;
+		this.aliases = aliases.toArray( new String[ aliases.size() ] );
+
+		// Erst den Baum aller Wrter aufbauen, in umgekehrter Reihenfolge des
+		// Vorrangs, damit sptere Eintrge frhere berschreiben
+		Trie trie = new Trie();
+		for (Entry<String, Preposition> entry : prepositions.entrySet()) {
+			Trie.Node node = trie.insert( entry.getKey() );
+			node.type = TokenType.PREPOSITION;
+			node.preposition = entry.getValue();
+		}
+
+		Trie.Node delimiterNode = trie.insert( delimiter );
+		delimiterNode.type = TokenType.DELIMITER;
+		delimiterNode.preposition = null;
+
+		for (String article : articles) {
+			Trie.Node node = trie.insert( article );
+			node.type = TokenType.ARTICLE;
+			node.preposition = null;
+		}
+
+		for (Entry<String, String> entry : verbs.entrySet())
+			trie.insert( entry.getKey() ).keyword = entry.getValue();
+
+		// Spalten fr alle vorkommenden Zeichen vergeben
+		int column = 1;
+		for (Character c : trie.alphabet) {
+			if ( c < asciiColumns.length )
+				asciiColumns[c] = column++;
+			else
+				otherColumns.put( c, column++ );
+		}
+		columns = column;
+
+		// Dann den Baum in die Tabelle bertragen, Zustand 0 ist DEAD
+		int states = trie.nodes.size() + 1;
+		transitions = new int[ states * columns ];
+		types = new TokenType[ states ];
+		this.prepositions = new Preposition[ states ];
+		keywords = new String[ states ];
+
+		for (int state = START; state < states; state++) {
+
+			Trie.Node node = trie.nodes.get( state - 1 );
+			types[state] = node.type;
+			this.prepositions[state] = node.preposition;
+			keywords[state] = node.keyword;
+
+			for (Entry<Character, Trie.Node> child : node.children.entrySet())
+				transitions[ state * columns + column( child.getKey() ) ] = child.getValue().id;
+		}
+	}
+
+	/**
+	 * Gibt den Zustand nach dem gegebenen Zeichen zurck.
+	 *
+	 * @param state	Der aktuelle Zustand.
+	 * @param c		Das nchste Zeichen des Wortes.
+	 * @return		Der nchste Zustand, {@link #DEAD}, wenn kein Wort der Grammatik so
+	 * 				beginnt.
+	 */
+	int step( int state, char c ) {
+
+		if ( state == DEAD ) return DEAD;
+		return transitions[ state * columns + column( fold( c ) ) ];
+	}
+
+	/**
+	 * Gibt die Art des Wortes zurck, das im gegebenen Zustand endet, oder
+	 * <code>null</code>, wenn es ein Nomen ist.
+	 */
+	TokenType getType( int state ) {
+		return types[state];
+	}
+
+	/**
+	 * Gibt die Prposition des Wortes zurck, das im gegebenen Zustand endet.
+	 */
+	Preposition getPreposition( int state ) {
+		return prepositions[state];
+	}
+
+	/**
+	 * Gibt das Schlsselwort zurck, fr das das Verb steht, das im gegebenen Zustand
+	 * endet, oder <code>null</code>, wenn es kein zustzliches Verb ist.
+	 */
+	String getKeyword( int state ) {
+		return keywords[state];
+	}
+
+	/**
+	 * Das Wort, das Identifier trennt.
+	 */
+	String getDelimiter() {
+		return delimiter;
+	}
+
+	/**
+	 * Gibt den Alias zurck, der an der gegebenen Stelle der Eingabe beginnt.
+	 *
+	 * @return	Der Alias, oder <code>null</code>, wenn dort keiner beginnt.
+	 */
+	String aliasAt( String input, int position ) {
+
+		char c = input.charAt( position );
+		for (String alias : aliases) {
+			if ( alias.charAt( 0 ) == c && input.startsWith( alias, position ) )
+				return alias;
+		}
+		return null;
+	}
+
+	private int column( char c ) {
+
+		if ( c < asciiColumns.length ) return asciiColumns[c];
+
+		Integer column = otherColumns.get( c );
+		return column != null ? column : 0;
+	}
+
+	/**
+	 * Bildet Zeichen, die <code>String.equalsIgnoreCase()</code> fr gleich hlt, auf
+	 * dasselbe Zeichen ab.
+	 */
+	private static char fold( char c ) {
+
+		if ( c < 128 ) return c >= 'A' && c <= 'Z' ? (char) ( c + ( 'a' - 'A' ) ) : c;
+		return Character.toLowerCase( Character.toUpperCase( c ) );
+	}
+
+	/**
+	 * Der Prfixbaum aller Wrter, aus dem die Tabelle erstellt wird.
+	 */
+	private static class Trie {
+
+		private static class Node {
+
+			final int id;
+			final Map<Character, Node> children = new HashMap<Character, Node>();
+
+			TokenType type = null;
+			Preposition preposition = null;
+			String keyword = null;
+
+			Node( int id ) {
+				this.id = id;
+			}
+		}
+
+		final List<Node> nodes = new ArrayList<Node>();
+		final Set<Character> alphabet = new TreeSet<Character>();
+
+		Trie() {
+			nodes.add( new Node( START ) );
+		}
+
+		Node insert( String word ) {
+
+			Node node = nodes.get( 0 );
+			for (int i = 0; i < word.length(); i++) {
+
+				char c = fold( word.charAt( i ) );
+				alphabet.add( c );
+
+				Node child = node.children.get( c );
+				if ( child == null ) {
+					child = new Node( nodes.size() + START );
+					nodes.add( child );
+					node.children.put( c, child );
+				}
+				node = child;
+			}
+			return node;
+		}
+	}
+}
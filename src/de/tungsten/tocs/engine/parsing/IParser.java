@@ -24,6 +24,10 @@ public interface IParser {
 	 * die Eingabe mit diesen Schlsselwrtern verglichen, sodass 
 	 * "wirf den Ball" an diesen Parser weitergereicht wird,
 	 * "iss ein Sandwich" allerdings nicht.
+	 * <p>
+	 * Jedes Schlsselwort muss ein einzelnes Wort sein, es wird mit dem ersten Wort der
+	 * Eingabe verglichen. Die Schlsselwrter werden nur einmal abgefragt, wenn der
+	 * Parser mit {@link Parsers#addParser(IParser)} hinzugefgt wird.
 	 * 
 	 * @return Die Schlsselwrter dieses Parsers.
 	 */
@@ -1,6 +1,8 @@
 package de.tungsten.tocs.engine.parsing;
 
+import java.util.Collections;
 import java.util.EnumMap;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
@@ -16,6 +18,10 @@ import java.util.Set;
  * Identifier direkt nach dem Verb, aber noch vor der ersten {@link Preposition}.
  * <code>ARGUMENTS</code> stellt eine Menge von zustzlichen Argumenten dar, die
  * jeweils aus einer <code>Preposition</code> und mehreren Identifiers besteht.
+ * <p>
+ * Eine <code>Instruction</code> ist unvernderlich, Prfix und Argumente knnen nur
+ * gelesen werden. Daher kann dieselbe Instanz im {@link InstructionCache} gespeichert
+ * und von mehreren Spielern gleichzeitig verwendet werden.
  * 
  * @author tungsten
  * @see #InstructionParser
@@ -29,7 +35,7 @@ public class Instruction {
 	 * <br>Hier ist "open" das Verb, da es das erste Wort in der Eingabe ist (Worter werden
 	 * nach Leerzeichen getrennt).
 	 */
-	private String verb;
+	private final String verb;
 
 	/**
 	 * Der Prfix dieser Instruktion.
@@ -39,7 +45,7 @@ public class Instruction {
 	 * Prosition ("with"). Der Artikel wird entfernt. Prinzipiell wren auch mehrere 
 	 * Identifier erlaubt, die mit "and" getrennt werden.
 	 */
-	private Set<NodeLocation> prefix;
+	private final Set<NodeLocation> prefix;
 	
 	/**
 	 * Die zustzlichen Argument dieses Knotens als Mapping von Prpositionen zu
@@ -52,10 +58,11 @@ public class Instruction {
 	 * 
 	 * @see {@link Preposition}.
 	 */
-	private EnumMap<Preposition, Set<NodeLocation>> arguments;
+	private final Map<Preposition, Set<NodeLocation>> arguments;
 	
 	/**
-	 * Erstellt eine neue Instanz von <code>Instruction</code>.
+	 * Erstellt eine neue Instanz von <code>Instruction</code>. Die gegebenen Mengen
+	 * drfen danach nicht mehr verndert werden.
 	 * 
 	 * @param verb		{@link #verb}
 	 * @param prefix	{@link #prefix}
@@ -67,8 +74,28 @@ public class Instruction {
 			EnumMap<Preposition, Set<NodeLocation>> arguments ) {
 		
 		this.verb = verb;
-		this.prefix = prefix;
-		this.arguments = arguments;
+		this.prefix = seal( prefix );
+
+		EnumMap<Preposition, Set<NodeLocation>> sealed = new EnumMap<Preposition, Set<NodeLocation>>( Preposition.class );
+		for (Entry<Preposition, Set<NodeLocation>> argument : arguments.entrySet())
+			sealed.put( argument.getKey(), seal( argument.getValue() ) );
+		this.arguments = Collections.unmodifiableMap( sealed );
+	}
+
+	/**
+	 * Gibt eine nicht vernderbare Sicht auf die gegebene Menge zurck.
+	 * {@link NodeLocationSet}s werden selbst versiegelt, damit
+	 * {@link NodeLocator#findNodesUsingLocators(Set, de.tungsten.tocs.engine.nodes.Player)}
+	 * sie weiterhin erkennt.
+	 */
+	private static Set<NodeLocation> seal( Set<NodeLocation> locations ) {
+
+		if ( locations instanceof NodeLocationSet ) {
+			( (NodeLocationSet) locations ).seal();
+			return locations;
+		}
+
+		return Collections.unmodifiableSet( locations );
 	}
 
 	/**
@@ -81,7 +108,7 @@ public class Instruction {
 
 	/**
 	 * Gibt den {@link #prefix Prfix} dieser <code>Instruction</code> zurck.
-	 * @return Den Prfix dieser Instruktion.
+	 * @return Den Prfix dieser Instruktion, nicht vernderbar.
 	 */
 	public Set<NodeLocation> getPrefix() {
 		return prefix;
@@ -89,11 +116,26 @@ public class Instruction {
 
 	/**
 	 * Gibt die {@link #arguments Argumente} dieser <code>Instruction</code> zurck.
-	 * @return Die Argumente dieser Instruktion.
+	 * @return Die Argumente dieser Instruktion, nicht vernderbar.
 	 */
-	public EnumMap<Preposition, Set<NodeLocation>> getArguments() {
+	public Map<Preposition, Set<NodeLocation>> getArguments() {
 		return arguments;
 	}
+
+	/**
+	 * Gibt das Argument dieser <code>Instruction</code> zur gegebenen Prposition
+	 * zurck.
+	 * @param preposition	Die Prposition, die das Argument einleitet.
+	 * @return Die Identifier des Arguments, oder eine leere Menge, wenn die Eingabe
+	 * 		   kein solches Argument enthielt. Nicht vernderbar.
+	 */
+	public Set<NodeLocation> getArgument( Preposition preposition ) {
+
+		Set<NodeLocation> argument = arguments.get( preposition );
+		if ( argument == null )
+			return Collections.emptySet();
+		return argument;
+	}
 	
 	@Override
 	public String toString() {
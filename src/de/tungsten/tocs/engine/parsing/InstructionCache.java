@@ -0,0 +1,173 @@
+package de.tungsten.tocs.engine.parsing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.config.IntegerType;
+
+/**
+ * Speichert die zuletzt geparsten {@link Instruction}s, damit hufige Eingaben wie
+ * "look", "go north" oder "take the key" nicht jedes Mal neu geparst werden mssen.
+ * Da <code>Instruction</code>s unvernderlich sind, kann dieselbe Instanz von allen
+ * Spielern gleichzeitig verwendet werden.
+ * <p>
+ * Der Cache enthlt hchstens {@link #CONFIG_INSTRUCTION_CACHE_SIZE} Eintrge. Ist er
+ * voll, wird der am lngsten nicht mehr verwendete Eintrag entfernt (LRU). Die Anzahl
+ * der Treffer und Fehlschlge kann mit {@link #getHits()} und {@link #getMisses()}
+ * abgefragt werden, um die Gre anzupassen.
+ * <p>
+ * Diese Klasse ist als Singleton implementiert, die einzige Instanz kann mit
+ * {@link #getInstance()} erreicht werden. Alle Zugriffe sind <code>synchronized</code>,
+ * gesperrt wird aber nur fr den Zugriff auf die Map, nie whrend des Parsens.
+ * 
+ * @author tungsten
+ *
+ */
+public class InstructionCache {
+
+	// Die maximale Anzahl von Eintrgen, 0 schaltet den Cache ab
+	public	static final String	CONFIG_INSTRUCTION_CACHE_SIZE	= "instructionCacheSize";
+	private static final int	DEFAULT_INSTRUCTION_CACHE_SIZE	= 256;
+	
+	/**
+	 * Lngere Eingaben werden nicht gespeichert. Sie wiederholen sich kaum, und wrden
+	 * nur die hufigen Eingaben verdrngen.
+	 */
+	public static final int MAX_INPUT_LENGTH = 128;
+	
+	private static InstructionCache instance = null;
+	
+	/**
+	 * Gibt die einzige existierende Instanz der Klasse <code>InstructionCache</code>
+	 * zurck. Die Gre wird beim ersten Aufruf aus der Konfiguration gelesen.
+	 * 
+	 * @return	Die einzige existierende Instanz dieser Klasse.
+	 */
+	public static synchronized InstructionCache getInstance() {
+		if ( instance == null )
+			instance = new InstructionCache( (int) Configuration.getInstance().getValue(
+					CONFIG_INSTRUCTION_CACHE_SIZE,
+					IntegerType.getInstance(),
+					DEFAULT_INSTRUCTION_CACHE_SIZE ) );
+		
+		return instance;
+	}
+	
+	private final int capacity;
+	
+	/**
+	 * Die Eintrge in der Reihenfolge des letzten Zugriffs.
+	 */
+	private final LinkedHashMap<String, Instruction> entries;
+	
+	private long hits = 0;
+	private long misses = 0;
+	
+	/**
+	 * Erstellt einen neuen <code>InstructionCache</code> mit der gegebenen Gre.
+	 * 
+	 * @param capacity	Die maximale Anzahl von Eintrgen, oder <code>0</code>, um
+	 * 					nichts zu speichern.
+	 */
+	@SuppressWarnings("serial")
+	InstructionCache( final int capacity ) {
+		
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<String, Instruction>( 16, 0.75f, true ) {
+			@Override
+			protected boolean removeEldestEntry( Map.Entry<String, Instruction> eldest ) {
+				return size() > capacity;
+			}
+		};
+	}
+	
+	/**
+	 * Gibt die Form der Eingabe zurck, unter der sie im Cache gespeichert wird.
+	 * Fhrende und folgende Leerzeichen werden entfernt, da sie das Ergebnis des
+	 * Parsens nicht verndern. Gro- und Kleinschreibung bleibt erhalten, da sie fr
+	 * die Identifier eine Rolle spielt.
+	 * 
+	 * @param input	Die Eingabe des Spielers.
+	 * @return		Der Schlssel fr diese Eingabe.
+	 */
+	public static String normalize( String input ) {
+		return input.trim();
+	}
+	
+	/**
+	 * Gibt die gespeicherte <code>Instruction</code> fr die gegebene Eingabe zurck.
+	 * 
+	 * @param key	Die mit {@link #normalize(String)} normalisierte Eingabe.
+	 * @return		Die gespeicherte <code>Instruction</code>, oder <code>null</code>,
+	 * 				wenn die Eingabe nicht im Cache ist.
+	 */
+	public synchronized Instruction get( String key ) {
+		
+		Instruction result = entries.get( key );
+		if ( result != null )
+			hits++;
+		else
+			misses++;
+		
+		return result;
+	}
+	
+	/**
+	 * Speichert die geparste <code>Instruction</code> fr die gegebene Eingabe. Ist der
+	 * Cache voll, wird der am lngsten nicht verwendete Eintrag entfernt.
+	 * 
+	 * @param key			Die mit {@link #normalize(String)} normalisierte Eingabe.
+	 * @param instruction	Die aus dieser Eingabe geparste <code>Instruction</code>.
+	 */
+	public synchronized void put( String key, Instruction instruction ) {
+		
+		if ( capacity <= 0 || key.length() > MAX_INPUT_LENGTH ) return;
+		
+		entries.put( key, instruction );
+	}
+	
+	/**
+	 * Entfernt alle Eintrge. Die Zhler fr Treffer und Fehlschlge bleiben erhalten.
+	 * Wird von {@link Parsers#addParser(IParser)} aufgerufen.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+	
+	/**
+	 * @return	Die Anzahl der Eintrge im Cache.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * @return	Die Anzahl der Zugriffe, bei denen die Eingabe im Cache war.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * @return	Die Anzahl der Zugriffe, bei denen die Eingabe nicht im Cache war.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * @return	Der Anteil der Zugriffe, bei denen die Eingabe im Cache war, zwischen
+	 * 			<code>0</code> und <code>1</code>.
+	 */
+	public synchronized double getHitRate() {
+		long total = hits + misses;
+		return total > 0 ? (double) hits / total : 0;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return String.format( "%d/%d entries, %d hits, %d misses (%.1f%%)",
+				entries.size(), capacity, hits, misses, getHitRate() * 100 );
+	}
+}
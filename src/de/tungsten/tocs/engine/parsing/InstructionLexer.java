@@ -0,0 +1,251 @@
+package de.tungsten.tocs.engine.parsing;
+
+import java.util.Arrays;
+
+/**
+ * Zerlegt die Eingabe eines Spielers fr {@link InstructionParser#createInstruction(String)}
+ * in Wrter und ordnet jedes Wort einem {@link TokenType} zu. Die Eingabe wird dabei nur
+ * ein einziges Mal durchlaufen, es entstehen keine Zwischen-Strings: Die Zeichen des
+ * aktuellen Wortes landen in einem Puffer, und mit jedem Zeichen macht der Automat der
+ * {@link GrammarTable} einen Schritt. Am Ende des Wortes steht seine Art damit schon
+ * fest.
+ * <p>
+ * Das Ergebnis entspricht genau den frheren Ersetzungen auf der Eingabe:
+ * <ul>
+ * <li> "," wird zu " and ".
+ * <li> "as well as" (und die anderen Aliase der {@link Grammar}) wird zu "and".
+ * <li> ";", "." und "!" werden entfernt.
+ * <li> Die Eingabe wird getrimmt und an Leerzeichen (wie <code>\s+</code>) getrennt.
+ * </ul>
+ * 
+ * @author tungsten
+ *
+ */
+final class InstructionLexer {
+
+	/**
+	 * Die Arten von Wrtern, die in einer Eingabe vorkommen.
+	 */
+	enum TokenType {
+		
+		/**
+		 * Das erste Wort der Eingabe, egal was es ist.
+		 */
+		VERB,
+		
+		/**
+		 * Einer der Artikel der {@link Grammar}, z.B. aus
+		 * {@link InstructionParser#ARTICLES}.
+		 */
+		ARTICLE,
+		
+		/**
+		 * Eine {@link Preposition}, siehe {@link InstructionLexer#getPreposition()}.
+		 */
+		PREPOSITION,
+		
+		/**
+		 * Das Wort, das Identifier trennt, z.B. {@link InstructionParser#DELIMITER}.
+		 */
+		DELIMITER,
+		
+		/**
+		 * Alle anderen Wrter, sie sind Teil eines Identifiers.
+		 */
+		NOUN
+	}
+	
+	private final GrammarTable table;
+	private final String input;
+	
+	// Der Teil der Eingabe, der nach dem Trimmen brig bleibt
+	private int position;
+	private final int end;
+	
+	// Das aktuelle Wort und der Zustand des Automaten nach seinem letzten Zeichen
+	private char[] token;
+	private int length = 0;
+	private int state = GrammarTable.START;
+	
+	private TokenType type = null;
+	private Preposition preposition = null;
+	private String keyword = null;
+	
+	// Ein "," beendet das aktuelle Wort, das "and" folgt erst beim nchsten Aufruf
+	private boolean pendingDelimiter = false;
+	
+	private boolean verbRecognized = false;
+	
+	/**
+	 * Erstellt einen neuen <code>InstructionLexer</code> fr die gegebene Eingabe.
+	 * 
+	 * @param input	Die Eingabe des Spielers.
+	 * @param table	Die kompilierte Grammatik, nach der die Wrter eingeordnet werden.
+	 */
+	InstructionLexer( String input, GrammarTable table ) {
+		
+		this.table = table;
+		this.input = input;
+		
+		// Zeichen am Rand, die nichts zur Ausgabe beitragen oder beim Trimmen
+		// wegfallen wrden, gar nicht erst betrachten
+		int start = 0;
+		int stop = input.length();
+		while ( start < stop && isTrimmed( input.charAt( start ) ) )
+			start++;
+		while ( stop > start && isTrimmed( input.charAt( stop - 1 ) ) )
+			stop--;
+		
+		this.position = start;
+		this.end = stop;
+		
+		// Ein Wort ist meist nicht lnger als die Eingabe, sonst wird der Puffer vergrert
+		this.token = new char[ Math.max( table.getDelimiter().length(), stop - start ) ];
+	}
+	
+	/**
+	 * Liest das nchste Wort der Eingabe.
+	 * 
+	 * @return	<code>true</code>, wenn ein weiteres Wort gelesen wurde,
+	 * 			<code>false</code>, wenn die Eingabe zu Ende ist.
+	 */
+	boolean next() {
+		
+		length = 0;
+		state = GrammarTable.START;
+		
+		if ( pendingDelimiter ) {
+			pendingDelimiter = false;
+			append( table.getDelimiter() );
+			return classify();
+		}
+		
+		while ( position < end ) {
+			
+			char c = input.charAt( position );
+			
+			String alias = table.aliasAt( input, position );
+			if ( alias != null ) {
+				// Wird wie bei String.replace() direkt an das aktuelle Wort gehngt
+				append( table.getDelimiter() );
+				position += alias.length();
+				continue;
+			}
+			
+			position++;
+			
+			if ( c == ',' ) {
+				
+				// Wie " and ", also erst das aktuelle Wort beenden
+				if ( length > 0 ) {
+					pendingDelimiter = true;
+					return classify();
+				}
+				append( table.getDelimiter() );
+				return classify();
+				
+			} else if ( c == ';' || c == '.' || c == '!' ) {
+				continue;
+				
+			} else if ( isSeparator( c ) ) {
+				if ( length > 0 )
+					return classify();
+				
+			} else {
+				append( c );
+			}
+		}
+		
+		return length > 0 && classify();
+	}
+	
+	/**
+	 * Gibt die Art des zuletzt gelesenen Wortes zurck.
+	 */
+	TokenType getType() {
+		return type;
+	}
+	
+	/**
+	 * Gibt die Prposition des zuletzt gelesenen Wortes zurck, wenn es vom Typ
+	 * {@link TokenType#PREPOSITION} ist, sonst <code>null</code>.
+	 */
+	Preposition getPreposition() {
+		return preposition;
+	}
+	
+	/**
+	 * Gibt das Schlsselwort zurck, fr das das zuletzt gelesene Wort steht, wenn es
+	 * vom Typ {@link TokenType#VERB} und ein zustzliches Verb der {@link Grammar} ist,
+	 * sonst <code>null</code>.
+	 */
+	String getKeyword() {
+		return keyword;
+	}
+	
+	/**
+	 * Gibt das zuletzt gelesene Wort als neuen String zurck.
+	 */
+	String getText() {
+		return new String( token, 0, length );
+	}
+	
+	/**
+	 * Hngt das zuletzt gelesene Wort an den gegebenen <code>StringBuilder</code>, ohne
+	 * einen String dafr zu erstellen.
+	 */
+	void appendTo( StringBuilder builder ) {
+		builder.append( token, 0, length );
+	}
+	
+	private boolean classify() {
+		
+		preposition = null;
+		keyword = null;
+		
+		if ( !verbRecognized ) {
+			verbRecognized = true;
+			type = TokenType.VERB;
+			keyword = table.getKeyword( state );
+			
+		} else {
+			
+			type = table.getType( state );
+			if ( type == null )
+				type = TokenType.NOUN;
+			else
+				preposition = table.getPreposition( state );
+		}
+		
+		return true;
+	}
+	
+	private void append( char c ) {
+		
+		if ( length == token.length )
+			token = Arrays.copyOf( token, length * 2 );
+		
+		token[length++] = c;
+		state = table.step( state, c );
+	}
+	
+	private void append( String s ) {
+		for (int i = 0; i < s.length(); i++)
+			append( s.charAt( i ) );
+	}
+	
+	/**
+	 * Die Zeichen, an denen <code>split( "\\s+" )</code> trennt.
+	 */
+	private static boolean isSeparator( char c ) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+	
+	/**
+	 * Die Zeichen, die am Rand der Eingabe keine Rolle spielen: Sie werden entweder
+	 * entfernt oder fallen beim Trimmen weg.
+	 */
+	private static boolean isTrimmed( char c ) {
+		return c <= ' ' || c == ';' || c == '.' || c == '!';
+	}
+}
@@ -1,11 +1,11 @@
 package de.tungsten.tocs.engine.parsing;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.Stack;
 
 /**
  * Erstellt ein {@link Instruction}-Objekt aus der Eingabe eines Spielers. Fr Details,
@@ -18,10 +18,16 @@ public abstract class InstructionParser {
 
 	/**
 	 * Die "kleinen Wrter", die beim parsen ignoriert werden, da sie zur Identifikation
-	 * von Knoten irrelevant sind.
+	 * von Knoten irrelevant sind. Das sind die Artikel der eingebauten {@link Grammar}.
 	 */
-	private static final String[] ARTICLES = new String[] 
+	static final String[] ARTICLES = new String[] 
 			{ "the", "this", "my", "these", "those", "a", "an", "some", "one" };
+
+	/**
+	 * Dieses Wort trennt Identifier. Aus "A B C and D E" werden die Identifier
+	 * "A B C" und "D E".
+	 */
+	static final String DELIMITER = "and";
 	
 	/**
 	 * Erstellt eine {@link Instruction}-Objekt aus der gegebenen Eingabe eines
@@ -33,41 +39,62 @@ public abstract class InstructionParser {
 	 * <p>
 	 * Generell ist der Parser relativ robust implementiert, in der englischen Sprache gern
 	 * verwendete Zeichen und Fllwrter werden entweder ersetzt oder ignoriert.
+	 * <p>
+	 * Die Eingabe wird dazu in einem Durchlauf vom {@link InstructionLexer} in Wrter
+	 * zerlegt, ohne dass dabei Zwischen-Strings entstehen. Nur das Verb und die
+	 * Identifier werden als Strings erstellt. Welche Wrter Artikel, Trennwrter und
+	 * Prpositionen sind, legt die {@link Grammar} des Servers fest.
+	 * <p>
+	 * Nach jeder Prposition, die nicht vom Typ {@link Preposition#OF} ist, beginnt ein
+	 * neues Argument. Aus "put the ball onto the table with the key" wird der Prfix
+	 * "ball", das Argument TO "table" und das Argument WITH "key".
+	 * <p>
+	 * Hufige Eingaben werden nicht jedes Mal neu geparst, sondern aus dem
+	 * {@link InstructionCache} geholt. Die zurckgegebene Instruction ist daher
+	 * unvernderlich, und kann auch von anderen Spielern verwendet werden.
 	 * 
 	 * @param input	Die zu interpretierende Eingabe.
 	 * @return		Die aus der Eingabe geparste Instruction.
 	 */
 	protected Instruction createInstruction( String input ) {
 
-		// Dieses Wort trennt Identifier. Aus "A B C and D E" werden die Identifier
-		// "A B C" und "D E".
-		final String DELIMITER = "and";
+		InstructionCache cache = InstructionCache.getInstance();
+		String key = InstructionCache.normalize( input );
+
+		Instruction result = cache.get( key );
+		if ( result == null ) {
+			result = parseInstruction( key );
+			cache.put( key, result );
+		}
+
+		return result;
+	}
+
+	/**
+	 * Parst die gegebene Eingabe wie {@link #createInstruction(String)}, ohne den
+	 * {@link InstructionCache} zu verwenden.
+	 * 
+	 * @param input	Die zu interpretierende Eingabe.
+	 * @return		Die aus der Eingabe geparste Instruction.
+	 */
+	protected Instruction parseInstruction( String input ) {
 
-		// Mit diesen Variablen wird letztlich die Instruction erstellt.
-		String verb = null;
+		// Mit diesen Variablen wird letztlich die Instruction erstellt. Eine leere
+		// Eingabe hat das leere Verb.
+		String verb = "";
 		Set<NodeLocation> prefix = new HashSet<NodeLocation>();
 		EnumMap<Preposition, Set<NodeLocation>> arguments = new EnumMap<Preposition, Set<NodeLocation>>(Preposition.class);
 		arguments.put( Preposition.TO, new HashSet<NodeLocation>() );
 		arguments.put( Preposition.WITH, new HashSet<NodeLocation>() );
 
-		// Einige Standard-Ersetzungen, um den Parser robuster zu machen
-		input = input.replace( ",", " " + DELIMITER + " " );
-		input = input.replace( "as well as", DELIMITER );
-		input = input.replace( ";", "" );
-		input = input.replace( ".", "" );
-		input = input.replace( "!", "" );
-		input = input.trim();
+		// Zerlegt die Eingabe nach der Grammatik des Servers in Wrter, inklusive einiger
+		// Standard-Ersetzungen, um den Parser robuster zu machen
+		InstructionLexer lexer = new InstructionLexer( input, Grammar.getInstance().getTable() );
 
-		// In Wrter aufsplitten
-		String[] words = input.split("\\s+");
-		
 		// Gibt an, ob das momentan betrachtete Wort teil eines Arguments der Instruction
 		// ist. Wenn nicht gehrt es nmlich zum Prfix-Part
 		boolean prepositionMode = false;
 
-		// Gibt an, ob das Verb bereits gespeichert wurde
-		boolean verbRecognized = true;
-
 		// Die zuletzt gefundenen Identifier in einer Menge, da ihre Reihenfolge irrelevant
 		// ist
 		Set<String> lastObjects = new HashSet<String>();
@@ -77,78 +104,72 @@ public abstract class InstructionParser {
 		// ball und knife sind zusammen eine Location, die nchste ist dann table
 		List<Set<String>> lastLocation = new ArrayList<Set<String>>();
 		
-		// Der zuletzt gefundenen Identifier
-		String lastIdentifier = "";
+		// Der zuletzt gefundenen Identifier. Die Wrter werden direkt aus dem Lexer
+		// angehngt, ein String entsteht erst, wenn der Identifier fertig ist.
+		StringBuilder lastIdentifier = new StringBuilder();
 		
 		// Die zuletzt gefundene Prposition
 		Preposition lastPreposition = null;
 		
-		for (String word : words) {
+		while ( lexer.next() ) {
 
-			// Das Verb ist das erste Wort der Eingabe
-			if ( verbRecognized ) {
-				verb = word;
-				verbRecognized = false;
+			// Das Verb ist das erste Wort der Eingabe. Zustzliche Verben der Grammatik
+			// werden durch das Schlsselwort ersetzt, fr das sie stehen.
+			if ( lexer.getType() == InstructionLexer.TokenType.VERB ) {
+				verb = lexer.getKeyword() != null ? lexer.getKeyword() : lexer.getText();
 				continue;
 			}
 
 			// "kleine Worter" werden ignoriert.
-			boolean isSmallWord = false;
-			for (String article : ARTICLES) {
-				if ( article.equalsIgnoreCase( word ) ) {
-					isSmallWord = true;
-					break;
-				}
-			}
-			
-			if ( !isSmallWord ) {
+			if ( lexer.getType() != InstructionLexer.TokenType.ARTICLE ) {
 
 				// Wenn das aktuelle Wort eine Prposition ist wird es gespeichert.
-				// Wenn nicht gibt fromString null zurck
-				Preposition currentPreposition = Preposition.fromString( word );
-			
-				if ( word.equalsIgnoreCase( DELIMITER ) ) {
+				// Wenn nicht ist sie null
+				Preposition currentPreposition = lexer.getPreposition();
+
+				if ( lexer.getType() == InstructionLexer.TokenType.DELIMITER ) {
 
 					// Wenn das aktuelle Wort der DELIMITER ist, dann waren die
 					// bisherigen Wrter Teil eines neue Identifier.
 					// Dieser wird geaddet.
-					lastObjects.add( lastIdentifier );
-					lastIdentifier = "";
-					
+					lastObjects.add( trim( lastIdentifier ) );
+					lastIdentifier.setLength( 0 );
+
 				} else if ( currentPreposition == null ) {
 
 					// Wenn das aktuelle Wort keine Prposition ist, dann wird es 
 					// zum aktuellen Identifier hinzugefgt.
-					lastIdentifier += " " + word;
-					
+					lastIdentifier.append( ' ' );
+					lexer.appendTo( lastIdentifier );
+
 				} else if ( currentPreposition == Preposition.OF ) {
 
 					// Das aktuelle Wort ist eine Prposition des Types OF. Daher wird
 					// der aktuelle Identifier zur aktuellen Location hinzugefgt, und
 					// diese Location zur Liste der Locations geaddet.
-					lastObjects.add( lastIdentifier );
+					lastObjects.add( trim( lastIdentifier ) );
 					lastLocation.add( lastObjects );
 					lastObjects = new HashSet<String>();
-					lastIdentifier = "";
-					
+					lastIdentifier.setLength( 0 );
+
 				} else {
 
 					// Das aktuelle Wort ist eine Prosition, die nicht von Typ OF ist.
 					// Erstmal den letzten Identifier und die letzte Location speichern.
-					lastObjects.add( lastIdentifier );
+					lastObjects.add( trim( lastIdentifier ) );
 					lastLocation.add( lastObjects );
 					
 					if ( prepositionMode ) {
 
 						// Wenn das nicht die erste Prposition ist, dann mssen die
-						// aktuellen Locations zu einem InstructionArgument geaddet
-						// werden.
+						// aktuellen Locations zum Argument der vorherigen Prposition
+						// geaddet werden.
 						Set<NodeLocation> nodeLocations = createNodeLocations( lastLocation );
-						if ( arguments.get( currentPreposition) != null )
-							arguments.get( currentPreposition ).addAll( nodeLocations );
+						if ( arguments.get( lastPreposition ) != null )
+							arguments.get( lastPreposition ).addAll( nodeLocations );
 						else
-							arguments.put( currentPreposition, nodeLocations );
-						
+							arguments.put( lastPreposition, nodeLocations );
+
 						lastPreposition = currentPreposition;
 
 						
@@ -163,7 +184,7 @@ public abstract class InstructionParser {
 					}
 
 					// Alle Variablen clearen
-					lastIdentifier = "";
+					lastIdentifier.setLength( 0 );
 					lastObjects = new HashSet<String>();
 					lastLocation = new ArrayList<Set<String>>();
 					
@@ -173,7 +194,7 @@ public abstract class InstructionParser {
 
 		// Wenn die Schleife verlassen wird, wurden die letzten Wrter noch nicht zur
 		// aktuellen Location geaddet.
-		lastObjects.add( lastIdentifier );
+		lastObjects.add( trim( lastIdentifier ) );
 		lastLocation.add( lastObjects );
 		
 		// Aus den einzelnen Identifiers muss nun noch eine NodeLocation gemacht werden.
@@ -191,6 +212,22 @@ public abstract class InstructionParser {
 		return result;
 	}
 	
+	/**
+	 * Erstellt den Identifier aus den gesammelten Wrtern. Das Ergebnis entspricht
+	 * <code>builder.toString().trim()</code>, nur ohne den Zwischen-String.
+	 */
+	private static String trim( StringBuilder builder ) {
+
+		int start = 0;
+		int end = builder.length();
+		while ( start < end && builder.charAt( start ) <= ' ' )
+			start++;
+		while ( end > start && builder.charAt( end - 1 ) <= ' ' )
+			end--;
+
+		return builder.substring( start, end );
+	}
+
 	/**
 	 * Erstellt eine Menge von <code>NodeLocation</code>s aus dem bergabeparameter.
 	 * Dieser ist eine Liste von Mengen von Identifiers. Beispiel:
@@ -202,79 +239,20 @@ public abstract class InstructionParser {
 	 * <code>NodeLocation</code>s <code>{ a1->b1->c1, a1->b1->c2, a1->b2->c1, 
 	 * a1->b2->c2, ..., a2->b2->c2 }
 	 * </code><br>
+	 * Das Produkt wird nicht hier berechnet, sondern erst beim Durchlaufen der
+	 * zurckgegebenen {@link NodeLocationSet}, und auf
+	 * {@link NodeLocationSet#MAX_LOCATIONS} Pfade begrenzt.
 	 * 
 	 * @param locations	siehe oben.
 	 * @return			siehe oben.
 	 */
 	private Set<NodeLocation> createNodeLocations( List<Set<String>> locations ) {
 
-		// Die Reihenfolge der Sets muss erst getauscht werden. Dafr wird ein Stack
-		// verwendet.
-		Stack<Set<String>> reverseStack = new Stack<Set<String>>();
-		for (Set<String> set : locations) 
-			reverseStack.push( set );
-		
-		locations.clear();
-		while ( !reverseStack.isEmpty() )
-			locations.add( reverseStack.pop() );
+		// Die Reihenfolge der Sets muss erst getauscht werden, die Wurzel ist zuletzt
+		// eingegeben worden.
+		Collections.reverse( locations );
 
-		// Der Rckgabewert
-		Set<NodeLocation> nodeLocations = new HashSet<NodeLocation>();
-		
-		// Fr diesen Algorithmus wird ein Stack bentigt, der Sets von Listen enthlt,
-		// die Eingabe ist aber eine Liste von Sets, daher muss erst transformiert werden.
-		Stack<Set<List<String>>> stack = new Stack<Set<List<String>>>();
-		for (Set<String> set : locations) {
-
-			// Erst ein Set von Listen von Strings aus dem Set von Strings erstellen.
-			// Dazu wird fr jeden String ein eigenes Set erstellt, dass nur diesen
-			// String enthlt
-			Set<List<String>> element = new HashSet<List<String>>();
-			for (String current : set) {
-				List<String> list = new ArrayList<String>();
-				list.add( current.trim() );
-				
-				element.add( list );
-			}
-
-			// Das transformierte Ergebnis kann nun auf den Stack
-			stack.push( element );
-		}
-
-		while ( stack.size() > 1 ) {
-
-			// Zwei Elemente vom Stack poppen. Aus diesen beiden Mengen wird
-			// das kartesische Produkt berechnet werden.
-			Set<List<String>> set01 = stack.pop(),
-							  set02 = stack.pop();
-
-			// Das Ergebnis des kartesischen Produkts wird in diese Menge geschrieben
-			// werden.
-			Set<List<String>> result = new HashSet<List<String>>();
-
-			// Kartesisches Produkt (also die Kombination von jedem Element der ersten
-			// Menge mit jedem Element der zweiten Menge) berechnen.
-			for (List<String> element02 : set02) {
-				for (List<String> element01 : set01) {
-
-					List<String> list = new ArrayList<String>();
-					list.addAll( element02 );
-					list.addAll( element01 );
-					
-					result.add( list );
-				}
-			}
-			
-			// Das Ergebnis wieder auf den Stack pushen
-			stack.push( result );	
-		} 
-
-		// Das letzte auf dem Stack befindliche Element ist das Ergebnis.
-		for (List<String> list : stack.pop()) {
-			nodeLocations.add( new NodeLocation( list ) );
-		}
-		
-		return nodeLocations;
+		return new NodeLocationSet( locations );
 	}
 }
 
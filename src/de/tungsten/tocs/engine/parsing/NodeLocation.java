@@ -1,5 +1,6 @@
 package de.tungsten.tocs.engine.parsing;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -15,9 +16,9 @@ import java.util.List;
 public class NodeLocation implements Iterable<String> {
 
 	/**
-	 * Die Strings die zusammen den Suchpfad bilden.
+	 * Die Strings die zusammen den Suchpfad bilden. Die Liste ist nicht vernderbar.
 	 */
-	private List<String> identifiers;
+	private final List<String> identifiers;
 	
 	/**
 	 * Erstellt eine neue Instanz von <code>NodeLocation</code>. Dabei werden
@@ -29,7 +30,7 @@ public class NodeLocation implements Iterable<String> {
 		if ( identifiers == null )
 			throw new IllegalArgumentException( "NodeLocation: Identifiers must not be null." );
 		
-		this.identifiers = identifiers;
+		this.identifiers = Collections.unmodifiableList( identifiers );
 	}
 	
 	/**
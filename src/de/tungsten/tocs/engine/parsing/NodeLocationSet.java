@@ -0,0 +1,247 @@
+package de.tungsten.tocs.engine.parsing;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Eine Menge von {@link NodeLocation}s, die erst beim Durchlaufen erzeugt werden. Die
+ * Menge besteht aus dem kartesischen Produkt mehrerer Ebenen von Identifiern. Aus
+ * <code>{ {p,q} {x,y} {a,b} }</code> werden die Pfade <code>p->x->a, p->x->b, p->y->a,
+ * ..., q->y->b</code>.
+ * <p>
+ * Da das Produkt mit jeder Ebene multipliziert wird, knnte eine einzige Eingabe wie
+ * "take a and b and c of x and y and z of p and q ..." beliebig viele Pfade erzeugen.
+ * Daher werden hchstens {@link #MAX_LOCATIONS} Pfade erzeugt, jeder erst dann, wenn er
+ * beim Durchlaufen angefordert wird. Der {@link NodeLocator} kann beim Durchlaufen
+ * auerdem alle Pfade berspringen, deren Anfang sich nicht auflsen lsst, siehe
+ * {@link LocationIterator#prune(int)}.
+ * <p>
+ * Mit {@link #add(NodeLocation)} hinzugefgte <code>NodeLocation</code>s werden nach
+ * dem Produkt durchlaufen. Sobald die Menge Teil einer {@link Instruction} ist, kann
+ * sie nicht mehr verndert werden, siehe {@link #seal()}.
+ * 
+ * @author tungsten
+ *
+ */
+public class NodeLocationSet extends AbstractSet<NodeLocation> {
+
+	/**
+	 * Die maximale Anzahl von Pfaden, die aus dem Produkt erzeugt werden.
+	 */
+	public static final int MAX_LOCATIONS = 64;
+	
+	/**
+	 * Die Identifier jeder Ebene, die erste Ebene ist die Wurzel der Pfade.
+	 */
+	private final String[][] levels;
+	
+	private final int limit;
+	
+	private final List<NodeLocation> added = new ArrayList<NodeLocation>();
+	
+	private volatile boolean sealed = false;
+	
+	/**
+	 * Erstellt eine neue <code>NodeLocationSet</code> aus den gegebenen Ebenen, mit
+	 * hchstens {@link #MAX_LOCATIONS} Pfaden.
+	 * 
+	 * @param levels	Die Identifier jeder Ebene, beginnend mit der Wurzel. Keine
+	 * 					Ebene darf leer sein.
+	 */
+	public NodeLocationSet( List<Set<String>> levels ) {
+		this( levels, MAX_LOCATIONS );
+	}
+	
+	/**
+	 * Erstellt eine neue <code>NodeLocationSet</code> aus den gegebenen Ebenen.
+	 * 
+	 * @param levels	Die Identifier jeder Ebene, beginnend mit der Wurzel. Keine
+	 * 					Ebene darf leer sein.
+	 * @param limit		Die maximale Anzahl von Pfaden, die aus dem Produkt erzeugt
+	 * 					werden.
+	 */
+	public NodeLocationSet( List<Set<String>> levels, int limit ) {
+		
+		this.levels = new String[ levels.size() ][];
+		for (int i = 0; i < this.levels.length; i++) {
+			
+			Set<String> level = levels.get( i );
+			if ( level.isEmpty() )
+				throw new IllegalArgumentException( "NodeLocationSet: Levels must not be empty." );
+			
+			this.levels[i] = level.toArray( new String[ level.size() ] );
+		}
+		
+		this.limit = limit;
+	}
+	
+	/**
+	 * Gibt die Anzahl der Pfade zurck, die beim Durchlaufen erzeugt werden, ohne sie
+	 * zu erzeugen.
+	 */
+	@Override
+	public int size() {
+		
+		// Multiplizieren, bis die Grenze erreicht ist, so kann es keinen berlauf geben
+		long product = levels.length > 0 ? 1 : 0;
+		for (int i = 0; i < levels.length && product < limit; i++)
+			product *= levels[i].length;
+		
+		return (int) Math.min( product, limit ) + added.size();
+	}
+	
+	/**
+	 * Fgt eine weitere <code>NodeLocation</code> hinzu, sie wird nach den Pfaden des
+	 * Produkts durchlaufen. Ist sie bereits enthalten, bleibt die Menge unverndert.
+	 * <p>
+	 * Die Pfade des Produkts werden beim Durchlaufen neu erzeugt, keiner von ihnen
+	 * ist also gleich einer hinzugefgten <code>NodeLocation</code>. Es gengt daher,
+	 * die hinzugefgten zu prfen.
+	 * 
+	 * @return	<code>true</code>, wenn die <code>NodeLocation</code> noch nicht
+	 * 			enthalten war.
+	 */
+	@Override
+	public boolean add( NodeLocation location ) {
+		
+		if ( sealed )
+			throw new UnsupportedOperationException( "NodeLocationSet: The set has been sealed." );
+		
+		if ( added.contains( location ) )
+			return false;
+		
+		return added.add( location );
+	}
+	
+	/**
+	 * Verhindert weitere nderungen, danach wirft {@link #add(NodeLocation)} eine
+	 * <code>UnsupportedOperationException</code>. Die Menge kann dann von mehreren
+	 * Threads gleichzeitig durchlaufen werden.
+	 */
+	void seal() {
+		sealed = true;
+	}
+	
+	@Override
+	public LocationIterator iterator() {
+		return new LocationIterator();
+	}
+	
+	/**
+	 * Durchluft die Pfade wie ein Kilometerzhler: Die letzte Ebene ndert sich am
+	 * hufigsten, die Wurzel am seltensten. Aufeinanderfolgende Pfade haben daher einen
+	 * mglichst langen gemeinsamen Anfang, siehe {@link #getChangedDepth()}.
+	 */
+	public class LocationIterator implements Iterator<NodeLocation> {
+		
+		// Der Index des aktuellen Identifiers jeder Ebene
+		private final int[] indices = new int[ levels.length ];
+		
+		// Ob indices auf einen Pfad zeigt, der noch nicht zurckgegeben wurde
+		private boolean ready = levels.length > 0;
+		private boolean exhausted = levels.length == 0;
+		private int produced = 0;
+		
+		// Die erste Ebene, die sich beim letzten Schritt gendert hat
+		private int changed = 0;
+		private int lastChanged = -1;
+		
+		// Die Ebene, ab der beim nchsten Schritt bersprungen wird
+		private int pruneDepth = -1;
+		
+		private Iterator<NodeLocation> addedIterator = null;
+		
+		@Override
+		public boolean hasNext() {
+			
+			if ( !exhausted && !ready )
+				advance();
+			
+			if ( !exhausted && produced < limit )
+				return true;
+			
+			if ( addedIterator == null )
+				addedIterator = added.iterator();
+			return addedIterator.hasNext();
+		}
+		
+		@Override
+		public NodeLocation next() {
+			
+			if ( !hasNext() )
+				throw new NoSuchElementException();
+			
+			if ( !exhausted && produced < limit ) {
+				
+				String[] path = new String[ levels.length ];
+				for (int i = 0; i < path.length; i++)
+					path[i] = levels[i][ indices[i] ];
+				
+				ready = false;
+				produced++;
+				lastChanged = changed;
+				return new NodeLocation( Arrays.asList( path ) );
+			}
+			
+			lastChanged = -1;
+			return addedIterator.next();
+		}
+		
+		/**
+		 * Gibt die erste Ebene zurck, in der sich der zuletzt zurckgegebene Pfad vom
+		 * vorherigen unterscheidet. Alle Ebenen davor sind gleich geblieben, ihre Knoten
+		 * mssen also nicht noch einmal gesucht werden.
+		 * 
+		 * @return	Die erste genderte Ebene, <code>0</code> beim ersten Pfad, oder
+		 * 			<code>-1</code>, wenn der Pfad mit {@link NodeLocationSet#add(NodeLocation)}
+		 * 			hinzugefgt wurde und nicht zum Produkt gehrt.
+		 */
+		public int getChangedDepth() {
+			return lastChanged;
+		}
+		
+		/**
+		 * berspringt alle weiteren Pfade, die bis einschlielich der gegebenen Ebene mit
+		 * dem zuletzt zurckgegebenen Pfad bereinstimmen. Das wird verwendet, wenn der
+		 * Identifier auf dieser Ebene nicht gefunden wurde: Alle diese Pfade wrden dann
+		 * ebenfalls nicht gefunden.
+		 * 
+		 * @param depth	Die Ebene, auf der die Suche gescheitert ist.
+		 */
+		public void prune( int depth ) {
+			if ( lastChanged >= 0 )
+				pruneDepth = depth;
+		}
+		
+		private void advance() {
+			
+			int i = pruneDepth >= 0 ? pruneDepth : levels.length - 1;
+			pruneDepth = -1;
+			
+			for (int j = i + 1; j < levels.length; j++)
+				indices[j] = 0;
+			
+			while ( i >= 0 && ++indices[i] == levels[i].length ) {
+				indices[i] = 0;
+				i--;
+			}
+			
+			if ( i < 0 ) {
+				exhausted = true;
+			} else {
+				changed = i;
+				ready = true;
+			}
+		}
+		
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -1,7 +1,12 @@
 package de.tungsten.tocs.engine.parsing;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import de.tungsten.tocs.engine.Lexicon;
 import de.tungsten.tocs.engine.nodes.IPredicate;
 import de.tungsten.tocs.engine.nodes.Node;
 import de.tungsten.tocs.engine.nodes.Player;
@@ -46,15 +51,12 @@ public abstract class NodeLocator {
 		IPredicate<Node> classComparison = new IPredicate<Node>() {
 			@Override
 			public boolean matches( Node node ) {
-				return node.getClass().isAssignableFrom( type );
+				return type.isInstance( node );
 			}
 		};
 		
-		List<Node> result = parent.find( classComparison, depth );
-		if ( result != null && result.size() > 0 )
-			return result.get( 0 );
-		else
-			return null;
+		// Die Suche endet beim ersten Treffer
+		return parent.findFirst( classComparison, depth );
 	}
 	
 	/**
@@ -65,10 +67,10 @@ public abstract class NodeLocator {
 	 * deren Namen mit dem gegebenen Namen bereinstimmen bevorzugt. Wenn keine
 	 * Knoten der Suchbedingung entsprechen, wird <code>null</code> zurckgegeben.
 	 * <p>
-	 * Da die Suche die Methoden von <code>Node</code> verwendet, ist auch diese
-	 * Methode eine Tiefen-Suche (Deep-First). Es wird also nicht der Knoten 
-	 * zurckgegeben, der am nchsten zum gegebenen Parent-Knoten ist, sondern der,
-	 * der sich in seinen Teilbumen am weitesten links befindet.
+	 * Die Knoten werden mit {@link Node#findByName(int, int)} im Namens-Index des
+	 * Parent-Knotens nachgeschlagen, der Teilbaum wird nicht durchlaufen. Passen
+	 * mehrere Knoten gleich gut, wird der zurckgegeben, der sich am nchsten zum
+	 * gegebenen Parent-Knoten befindet.
 	 * 
 	 * @param name			Der Identifier/Name des gesuchten Knotens.
 	 * @param parent		Der Parent-Knoten, dessen Kind der gesuchte Knoten ist.
@@ -77,38 +79,16 @@ public abstract class NodeLocator {
 	 * @return				Ein Knoten mit dem gegebenen Namen oder Identifier, der ein
 	 * 						Kind-Knoten des gegebenen Parent-Knotens ist.
 	 */
-	public static Node findSubNode( final String name, Node parent, int depth ) {
+	public static Node findSubNode( String name, Node parent, int depth ) {
 
-		// Anonyme Klasse fr find(...) in Node
-		IPredicate<Node> nameComparison = new IPredicate<Node>() {
-			
-			@Override
-			public boolean matches( Node node ) {
-				
-				for (String nodeName : node.getNames()) {
-					if ( nodeName.equals( name ) )
-						return true;
-				}
-				return false;
-			}
-			
-		};
-		
-		Node result = null;
-		// Zuerst nach passenden Identifiers suchen
-		result = parent.findByIdentifier( name, depth );
-		
-		if ( result == null ) {
-			// Wenn keine passenden Identifier, dann nach passenden Namen suchen.
-			List<Node> candidates = parent.find( nameComparison, depth );
-
-			// candidates kann eigentlich nicht null sein, aber sicher ist sicher.
-			if ( candidates != null && candidates.size() > 0 )
-				result = candidates.get( 0 ); // Ersten Treffer zurckgeben
-			
-		}
+		// Der Name wird nur einmal nachgeschlagen, danach werden nur Nummern verglichen.
+		// Ein Name, der nicht im Lexikon steht, gehrt zu keinem Knoten.
+		int nameID = Lexicon.getInstance().lookup( name );
+		if ( nameID == Lexicon.UNKNOWN )
+			return null;
 		
-		return result;
+		// Identifier werden dabei gegenber anderen Namen bevorzugt
+		return parent.findByName( nameID, depth );
 	}
 	
 	/**
@@ -199,4 +179,82 @@ public abstract class NodeLocator {
 		return currentNode;
 		
 	}
+	
+	/**
+	 * Sucht nach <code>Node</code>s in der Umgebung eines Spielers anhand mehrerer
+	 * {@link NodeLocation}s, wie {@link #findNodeUsingLocators(NodeLocation, Player)}.
+	 * <p>
+	 * Stammen die <code>NodeLocation</code>s aus einer {@link NodeLocationSet}, wird der
+	 * gemeinsame Anfang aufeinanderfolgender Pfade nur einmal gesucht. Kann ein Knoten
+	 * nicht gefunden werden, werden auerdem alle weiteren Pfade mit demselben Anfang
+	 * bersprungen, da sie ebenfalls nicht gefunden wrden. Nur der erste dieser Pfade
+	 * ist mit <code>null</code> in der Rckgabe enthalten.
+	 * 
+	 * @param locations		Die <code>NodeLocation</code>s, die zur Suche verwendet werden
+	 * 						sollen.
+	 * @param player		Der Spieler, bei dem der erste Knoten jedes Pfads lokalisiert
+	 * 						werden soll.
+	 * @return				Eine Map, die den durchsuchten <code>NodeLocation</code>s in
+	 * 						der Reihenfolge der Suche den gefundenen Knoten zuordnet,
+	 * 						oder <code>null</code>, wenn kein solcher Knoten gefunden
+	 * 						wurde.
+	 */
+	public static Map<NodeLocation, Node> findNodesUsingLocators( Set<NodeLocation> locations, Player player ) {
+		
+		Map<NodeLocation, Node> result = new LinkedHashMap<NodeLocation, Node>();
+		
+		if ( !( locations instanceof NodeLocationSet ) ) {
+			for (NodeLocation location : locations)
+				result.put( location, findNodeUsingLocators( location, player ) );
+			return result;
+		}
+		
+		NodeLocationSet.LocationIterator iterator = ( (NodeLocationSet) locations ).iterator();
+		
+		// Die zuletzt gefundenen Knoten jeder Ebene
+		List<Node> path = new ArrayList<Node>();
+		
+		while ( iterator.hasNext() ) {
+			
+			NodeLocation location = iterator.next();
+			int changed = iterator.getChangedDepth();
+			
+			// Hinzugefgte NodeLocations gehren nicht zum Produkt
+			if ( changed < 0 ) {
+				result.put( location, findNodeUsingLocators( location, player ) );
+				continue;
+			}
+			
+			// Die Knoten vor der ersten genderten Ebene wurden schon gefunden
+			while ( path.size() > changed )
+				path.remove( path.size() - 1 );
+			
+			Node currentNode = changed > 0 ? path.get( changed - 1 ) : null;
+			int depth = 0;
+			
+			for (String locator : location) {
+				
+				if ( depth >= changed ) {
+					
+					if ( depth == 0 )
+						currentNode = findNodeAtPlayer( locator, player );
+					else
+						currentNode = findSubNode( locator, currentNode, 1 );
+					
+					// Alle Pfade mit diesem Anfang berspringen
+					if ( currentNode == null ) {
+						iterator.prune( depth );
+						break;
+					}
+					
+					path.add( currentNode );
+				}
+				depth++;
+			}
+			
+			result.put( location, currentNode );
+		}
+		
+		return result;
+	}
 }
@@ -1,8 +1,14 @@
 package de.tungsten.tocs.engine.parsing;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 
+import de.tungsten.tocs.LogLevel;
+import de.tungsten.tocs.Logger;
+import de.tungsten.tocs.engine.Lexicon;
+import de.tungsten.tocs.engine.RoomActors;
 import de.tungsten.tocs.net.IPlayerConnection;
 
 /**
@@ -11,15 +17,30 @@ import de.tungsten.tocs.net.IPlayerConnection;
  * Spielers bergeben, whlt sie die geeignete Implementation aus, und leitet die 
  * Anfrage an diese weiter.
  * <p>
+ * Welcher Parser zustndig ist, entscheidet allein das erste Wort der Eingabe. Die
+ * Schlsselwrter aller Parser werden beim Hinzufgen in eine Tabelle eingetragen, die
+ * Suche nach dem Parser kostet daher unabhngig von der Anzahl der Parser nur einen
+ * Zugriff auf eine <code>HashMap</code>. Verwenden zwei Parser dasselbe Schlsselwort,
+ * bleibt es bei dem Parser, der zuerst hinzugefgt wurde.
+ * <p>
  * Diese Klasse ist als Singleton implementiert, das heit alle Objekte teilen sich
  * dieselben Parser. Die einzige existente Instanz kann mit {@link #getInstance()}
  * erreicht werden.
+ * <p>
+ * {@link #parse(String, IPlayerConnection)} ist nicht <code>synchronized</code>, die
+ * Eingaben verschiedener Spieler werden also parallel bearbeitet. Die Parser selbst
+ * sind zustandslos, die Konsistenz der Welt wird von den einzelnen Knoten sichergestellt
+ * (siehe {@link de.tungsten.tocs.engine.nodes.Node#move(de.tungsten.tocs.engine.nodes.Node)}).
+ * Im Modus {@link RoomActors#EXECUTION_MODE_ROOMS} wird jede Eingabe stattdessen im
+ * Thread des Raums ausgefhrt, in dem sich der Spieler befindet.
  * 
  * @author tungsten
  *
  */
 public class Parsers {
 
+	private static final String LOG_NAME = "(CORE) Parsers";
+	
 	private static Parsers instance = null;
 	private Parsers() {}
 	
@@ -30,7 +51,7 @@ public class Parsers {
 	 * 
 	 * @return	Die einzige existierende Instanz dieser Klasse.
 	 */
-	public static Parsers getInstance() {
+	public static synchronized Parsers getInstance() {
 		if ( instance == null )
 			instance = new Parsers();
 		
@@ -38,20 +59,83 @@ public class Parsers {
 	}
 	
 	/**
-	 * Die Implementationen von <code>IParser</code>, die zur Verfgung stehen, um die
-	 * Eingaben der Spieler zu parsen.
+	 * Ordnet jedem Schlsselwort (in Kleinbuchstaben) den zustndigen <code>IParser</code>
+	 * zu. Die Tabelle wird nie verndert, sondern beim Hinzufgen eines Parsers durch eine
+	 * neue ersetzt. Beim Parsen wird daher nie gesperrt.
 	 */
-	private Set<IParser> parsers = new HashSet<IParser>();
+	private volatile Map<String, IParser> verbs = Collections.emptyMap();
 	
 	/**
 	 * Fgt eine Implementation von <code>IParser</code> hinzu, sodass sie zur Verfgung
-	 * steht um die Eingaben der Spieler zu parsen.
+	 * steht um die Eingaben der Spieler zu parsen. Die Schlsselwrter des Parsers werden
+	 * nur hier abgefragt.
 	 * 
 	 * @param parser
 	 */
 	public synchronized void addParser( IParser parser ) {
-		if ( parser != null )
-			parsers.add( parser );
+		
+		// Ein Parser ohne Schlsselwrter kann nie gewhlt werden
+		if ( parser == null || parser.getKeywords() == null ) return;
+		
+		Map<String, IParser> table = new HashMap<String, IParser>( verbs );
+		for (String keyword : parser.getKeywords()) {
+			
+			String key = keyword.toLowerCase( Locale.ROOT );
+			Lexicon.getInstance().intern( key );
+			IParser existing = table.get( key );
+			
+			if ( existing == null ) {
+				table.put( key, parser );
+				
+			} else if ( existing != parser ) {
+				// Der zuerst hinzugefgte Parser behlt das Schlsselwort
+				Logger.getInstance().log( LogLevel.WARNING, LOG_NAME, "The keyword \"" + key + "\" of " 
+						+ parser.getClass().getSimpleName() + " is already used by " 
+						+ existing.getClass().getSimpleName() + " and has been ignored." );
+			}
+		}
+		
+		verbs = Collections.unmodifiableMap( table );
+		
+		// Die gespeicherten Instructions stammen noch aus der Zeit vor diesem Parser
+		InstructionCache.getInstance().clear();
+	}
+	
+	/**
+	 * Gibt den <code>IParser</code> zurck, der fr die gegebene Eingabe zustndig ist,
+	 * also den Parser, zu dessen Schlsselwrtern das erste Wort der Eingabe gehrt,
+	 * oder das Schlsselwort, fr das es laut {@link Grammar} steht. Gro- und
+	 * Kleinschreibung wird dabei nicht beachtet.
+	 * 
+	 * @param input	Die Eingabe des Spielers.
+	 * @return		Der zustndige Parser, oder <code>null</code>, wenn kein Parser das
+	 * 				erste Wort als Schlsselwort hat.
+	 */
+	public IParser findParser( String input ) {
+		
+		// Das erste Wort ohne fhrende Leerzeichen
+		int length = input.length();
+		int start = 0;
+		while ( start < length && Character.isWhitespace( input.charAt( start ) ) )
+			start++;
+		
+		int end = start;
+		while ( end < length && !Character.isWhitespace( input.charAt( end ) ) )
+			end++;
+		
+		if ( start == end ) return null;
+		
+		String verb = input.substring( start, end ).toLowerCase( Locale.ROOT );
+		IParser parser = verbs.get( verb );
+		
+		// Zustzliche Verben der Grammatik stehen fr das Schlsselwort eines Parsers
+		if ( parser == null ) {
+			String keyword = Grammar.getInstance().getKeyword( verb );
+			if ( keyword != null )
+				parser = verbs.get( keyword );
+		}
+		
+		return parser;
 	}
 	
 	/**
@@ -62,30 +146,32 @@ public class Parsers {
 	 * @param connection	Die <code>IPlayerConnection</code>, die verwendet wird, um die
 	 * 						geparste Instruktion auszufhren.
 	 */
-	public synchronized void parse( String input, IPlayerConnection connection ) {
+	public void parse( final String input, final IPlayerConnection connection ) {
 		
-		try {
-			// Passenden Parser auswhlen
-			boolean found = false;
-			for (IParser parser : parsers) {
+		RoomActors actors = RoomActors.getInstance();
+		if ( actors.isEnabled() && connection.getPlayer() != null ) {
 			
-				// Passt der aktuelle Parser?
-				boolean suitable = false;
-				for ( String keyword : parser.getKeywords() ) {
-					
-					if ( input.toLowerCase().startsWith( keyword.toLowerCase() ) )
-						suitable = true;
+			// Im Thread des Raums ausfhren und warten, bis der Spieler angekommen ist
+			actors.run( connection.getPlayer(), new Runnable() {
+				@Override
+				public void run() {
+					dispatch( input, connection );
 				}
-				
-				if ( suitable ) {
-					// Wenn der Parser passt, dann Anfrage weiterleiten.
-					parser.parse( input, connection );
-					found = true;
-					break;
-				}
-			}
+			} );
+		} else
+			dispatch( input, connection );
+	}
+	
+	private void dispatch( String input, IPlayerConnection connection ) {
+		
+		try {
+			// Passenden Parser auswhlen
+			IParser parser = findParser( input );
 			
-			if ( !found )
+			// Wenn ein Parser passt, dann Anfrage weiterleiten.
+			if ( parser != null )
+				parser.parse( input, connection );
+			else
 				connection.write( "This was not understandable." );
 		} 
 		catch ( Exception e ) {
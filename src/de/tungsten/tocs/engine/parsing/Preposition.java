@@ -1,5 +1,9 @@
 package de.tungsten.tocs.engine.parsing;
 
+import java.util.Locale;
+
+import de.tungsten.tocs.engine.Lexicon;
+
 /**
  * Eine <code>Preposition</code> ist ein spezielles Wort in der Eingabe des Spielers, 
  * das verwendet wird, um ihr Struktur zu verleihen. Der Instruktion des Spielers werden
@@ -71,11 +75,31 @@ public enum Preposition {
 		this.content = s;
 	}
 	
+	/**
+	 * Alle Prpositionen, an der Stelle der Nummern ihrer Wrter im {@link Lexicon}.
+	 */
+	private static final Preposition[] BY_ID;
+	
+	static {
+		int max = 0;
+		for (Preposition preposition : values()) {
+			for (String word : preposition.content)
+				max = Math.max( max, Lexicon.getInstance().intern( word ) );
+		}
+		
+		BY_ID = new Preposition[ max + 1 ];
+		for (Preposition preposition : values()) {
+			for (String word : preposition.content)
+				BY_ID[ Lexicon.getInstance().lookup( word ) ] = preposition;
+		}
+	}
+	
 	/**
 	 * Gibt die Prposition zurck, die den gegebenen String enthlt. Wenn keine passende
 	 * Prposition gefunden wird, wird <code>null</code> zurckgegeben. Diese Methode
-	 * ignoriert, ob der gegebene String gro oder klein geschrieben wurde.
-	 * 
+	 * ignoriert, ob der gegebene String gro oder klein geschrieben wurde, unabhngig von
+	 * der Sprache der JVM (siehe {@link Locale#ROOT}). Der String wird
+	 * dazu einmal im {@link Lexicon} nachgeschlagen, es werden keine Strings verglichen.
 	 * 
 	 * @param s		Der String der mit den einzelnen Prpositionen verglichen wird.
 	 * @return		Die zum gegebenen String passende Prposition oder <code>null</code>,
@@ -83,13 +107,8 @@ public enum Preposition {
 	 */
 	public static Preposition fromString( String s ) {
 		
-		for (Preposition current : Preposition.values()) {
-			for (String content : current.content) {
-				if ( content.equalsIgnoreCase( s ) ) return current;
-			}
-		}
-		
-		return null;
+		int id = Lexicon.getInstance().lookup( s.toLowerCase( Locale.ROOT ) );
+		return id >= 0 && id < BY_ID.length ? BY_ID[ id ] : null;
 	}
 	
 	@Override
@@ -1,6 +1,6 @@
 package de.tungsten.tocs.engine.parsing.instances;
 
-import java.util.Set;
+import java.util.Map;
 
 import de.tungsten.tocs.engine.nodes.Node;
 import de.tungsten.tocs.engine.nodes.Player;
@@ -42,14 +42,15 @@ public class DescribeParser extends InstructionParser implements IParser {
 			
 			// in "describe the bear", the prefix contains the target objects,
 			// in "look at the bear", the TO-argument contains the targets.
-			// Therefore both are used.
-			Set<NodeLocation> locations = instruction.getPrefix();
-			if ( instruction.getArguments().get( Preposition.TO ) != null )
-				locations.addAll( instruction.getArguments().get( Preposition.TO ) );
+			// Therefore both are used. The instruction itself is shared and
+			// must not be modified.
+			Map<NodeLocation, Node> targets = NodeLocator.findNodesUsingLocators( instruction.getPrefix(), player );
+			targets.putAll( NodeLocator.findNodesUsingLocators( instruction.getArgument( Preposition.TO ), player ) );
 			
-			for (NodeLocation location : locations) {
+			for (Map.Entry<NodeLocation, Node> entry : targets.entrySet()) {
 				
-				Node target = NodeLocator.findNodeUsingLocators( location, player );
+				NodeLocation location = entry.getKey();
+				Node target = entry.getValue();
 				if ( target != null ) {
 					
 					String description = target.getDescription();
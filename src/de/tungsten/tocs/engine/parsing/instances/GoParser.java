@@ -1,5 +1,7 @@
 package de.tungsten.tocs.engine.parsing.instances;
 
+import de.tungsten.tocs.engine.Lexicon;
+import de.tungsten.tocs.engine.RoomActors;
 import de.tungsten.tocs.engine.nodes.DoorDirection;
 import de.tungsten.tocs.engine.nodes.Player;
 import de.tungsten.tocs.engine.nodes.Room;
@@ -23,7 +25,7 @@ public class GoParser extends InstructionParser implements IParser {
 	}
 
 	@Override
-	public void parse( String input, IPlayerConnection connection ) {
+	public void parse( String input, final IPlayerConnection connection ) {
 
 		Player player = connection.getPlayer();
 		Room room = (Room) player.getParent();
@@ -56,27 +58,31 @@ public class GoParser extends InstructionParser implements IParser {
 		// "go north to the castle", only the "go north" is taken into account.
 		if ( instruction.getPrefix().isEmpty() ) {
 			
-			for (NodeLocation location : instruction.getArguments().get( Preposition.TO )) {
+			for (NodeLocation location : instruction.getArgument( Preposition.TO )) {
+				
+				// Unknown words can't be the name of any room.
+				int nameID = Lexicon.getInstance().lookup( location.getTarget() );
+				if ( nameID == Lexicon.UNKNOWN )
+					continue;
 				
 				// Look for the node in the current room's adjacent rooms.
 				for (Room adjacentRoom : room.getAdjacentRooms()) {
 
-					if ( adjacentRoom.getIdentifier().equals( location.getTarget() ) ) {
-						
+					if ( adjacentRoom.hasName( nameID ) )
 						room = adjacentRoom;
-					} else {
-						
-						for (String name : adjacentRoom.getNames()) {
-							if ( name.equals( location.getTarget() ) )
-								room = adjacentRoom;
-						}
-					}
 				}
 			}
 		}
 		
-		player.move( room );
-		connection.write( room.getDescription() );
+		// With room actors enabled, the player may be handed over to the thread
+		// of another room. The description is written once he has arrived.
+		final Room target = room;
+		RoomActors.getInstance().move( player, target, new Runnable() {
+			@Override
+			public void run() {
+				connection.write( target.getDescription() );
+			}
+		} );
 	}
 
 }
@@ -1,5 +1,7 @@
 package de.tungsten.tocs.engine.parsing.instances;
 
+import java.util.Map;
+
 import de.tungsten.tocs.engine.nodes.Node;
 import de.tungsten.tocs.engine.nodes.Player;
 import de.tungsten.tocs.engine.parsing.IParser;
@@ -29,7 +31,7 @@ public class PutParser extends InstructionParser implements IParser {
 		Instruction instruction = super.createInstruction( input );
 
 		Node to = null;
-		for (NodeLocation location : instruction.getArguments().get( Preposition.TO )) {
+		for (NodeLocation location : instruction.getArgument( Preposition.TO )) {
 			
 			if ( to == null ) {
 				
@@ -42,9 +44,11 @@ public class PutParser extends InstructionParser implements IParser {
 		
 		if ( to != null ) {
 		
-			for (NodeLocation location : instruction.getPrefix()) {
+			Map<NodeLocation, Node> objects = NodeLocator.findNodesUsingLocators( instruction.getPrefix(), player );
+			for (Map.Entry<NodeLocation, Node> entry : objects.entrySet()) {
 				
-				Node object = NodeLocator.findNodeUsingLocators( location, player );
+				NodeLocation location = entry.getKey();
+				Node object = entry.getValue();
 				if ( object != null ) {
 					
 					object.move( to );
@@ -1,5 +1,7 @@
 package de.tungsten.tocs.engine.parsing.instances;
 
+import java.util.Map;
+
 import de.tungsten.tocs.engine.nodes.Node;
 import de.tungsten.tocs.engine.nodes.Player;
 import de.tungsten.tocs.engine.parsing.IParser;
@@ -25,10 +27,12 @@ public class TakeParser extends InstructionParser implements IParser {
 		Player player  = connection.getPlayer();
 		Instruction instruction = super.createInstruction( input );
 		
-		for (NodeLocation location : instruction.getPrefix()) {
-			
-			Node object = NodeLocator.findNodeUsingLocators( location, player );
-			
+		Map<NodeLocation, Node> objects = NodeLocator.findNodesUsingLocators( instruction.getPrefix(), player );
+		for (Map.Entry<NodeLocation, Node> entry : objects.entrySet()) {
+
+			NodeLocation location = entry.getKey();
+			Node object = entry.getValue();
+
 			if ( object != null ) {
 				
 				object.move( player.getInventory() );
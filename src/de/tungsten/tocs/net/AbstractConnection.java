@@ -0,0 +1,761 @@
+package de.tungsten.tocs.net;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.tungsten.tocs.LogLevel;
+import de.tungsten.tocs.Logger;
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.config.IntegerType;
+import de.tungsten.tocs.config.StringType;
+import de.tungsten.tocs.engine.Lobby;
+import de.tungsten.tocs.engine.LobbySubSystem;
+import de.tungsten.tocs.engine.Team;
+import de.tungsten.tocs.engine.TickEngine;
+import de.tungsten.tocs.engine.maps.Map;
+import de.tungsten.tocs.engine.nodes.Player;
+import de.tungsten.tocs.engine.parsing.Parsers;
+import de.tungsten.tocs.menus.MenuSequence;
+import de.tungsten.tocs.menus.Prompt;
+import de.tungsten.tocs.menus.ShortcutSelector;
+
+/**
+ * Die gemeinsame Basisklasse aller Netzwerkverbindungen zu Spielern. Diese
+ * Klasse enthlt den Lebenszyklus einer Verbindung, also die Abfrage von
+ * Nickname und Team, den Aufenthalt in der {@link Lobby} und schlielich das
+ * Weiterleiten der Eingaben an die {@link Parsers}.
+ * <p>
+ * Geschriebene Nachrichten werden nicht sofort gesendet, sondern gesammelt
+ * und gemeinsam mit {@link #flush()} bertragen. Das geschieht automatisch,
+ * bevor in {@link #read()} auf die nchste Eingabe gewartet wird, sodass alle
+ * Ausgaben eines Befehls oder Menschritts mit einem einzigen Schreibvorgang
+ * gesendet werden. Nachrichten, auf die kein <code>read()</code> folgt (z.B.
+ * der Countdown der Lobby), werden sptestens nach
+ * {@link #CONFIG_WRITE_LATENCY_CAP} Millisekunden gesendet.
+ * <p>
+ * Die Nachrichten, die noch nicht gesendet wurden, drfen zusammen hchstens
+ * {@link #CONFIG_OUTBOUND_BUDGET} Bytes belegen. Darber hinaus werden neue
+ * Nachrichten verworfen und {@link #write(String)} gibt <code>false</code>
+ * zurck. Bleibt ein Spieler lnger als {@link #CONFIG_SLOW_CLIENT_TIMEOUT}
+ * Millisekunden ber dem Budget, wird seine Verbindung je nach
+ * {@link #CONFIG_SLOW_CLIENT_POLICY} geschlossen.
+ * <p>
+ * Ist die {@link TickEngine} eingeschaltet, werden die Befehle gespawnter
+ * Spieler mit {@link #submit(String)} an sie bergeben, statt sie sofort
+ * auszufhren. Die Ausgaben eines Ticks werden dann von der Engine mit
+ * {@link #requestFlush()} gemeinsam gesendet, ohne dass der Thread der Engine
+ * dabei blockiert.
+ * <p>
+ * Wie die Nachrichten tatschlich empfangen und bertragen werden, bleibt den
+ * Subklassen berlassen. {@link Connection} verwendet blockierende Sockets
+ * und einen eigenen Thread pro Spieler, {@link NIOConnection} wird von den
+ * {@link EventLoop}s des Servers bedient.
+ * <p>
+ * Der Lebenszyklus wird in {@link #run()} abgearbeitet. In welchem Thread das
+ * geschieht, entscheidet der {@link TOCSServer}. Wird die Verbindung
+ * geschlossen, z.B. weil der Spieler sie getrennt hat, wirft {@link #read()}
+ * eine {@link ConnectionClosedException}, die den Lebenszyklus beendet. Der
+ * Spieler wird dann in {@link #close()} aus der Lobby und von der Map
+ * entfernt.
+ *
+ * @author tungsten
+ *
+ */
+public abstract class AbstractConnection implements IPlayerConnection, Closeable, Flushable, Runnable {
+
+	private static final String LOG_NAME	= "(CORE) AbstractConnection";
+
+	// Maximale Zeit in ms, die eine geschriebene Nachricht auf ihr flush() wartet
+	public	static final String	CONFIG_WRITE_LATENCY_CAP	= "writeLatencyCap";
+	private static final int	DEFAULT_WRITE_LATENCY_CAP	= 10;
+
+	// Maximale Anzahl Bytes, die pro Verbindung auf das Senden warten drfen
+	public	static final String	CONFIG_OUTBOUND_BUDGET		= "outboundBudget";
+	private static final int	DEFAULT_OUTBOUND_BUDGET		= 65536;
+
+	// "drop": Nachrichten ber dem Budget nur verwerfen, "disconnect": zustzlich
+	// die Verbindung schlieen, wenn sie zu lange ber dem Budget bleibt
+	public	static final String	CONFIG_SLOW_CLIENT_POLICY	= "slowClientPolicy";
+	public	static final String	SLOW_CLIENT_DROP			= "drop";
+	public	static final String	SLOW_CLIENT_DISCONNECT		= "disconnect";
+	private static final String	DEFAULT_SLOW_CLIENT_POLICY	= SLOW_CLIENT_DISCONNECT;
+
+	public	static final String	CONFIG_SLOW_CLIENT_TIMEOUT	= "slowClientTimeout";
+	private static final int	DEFAULT_SLOW_CLIENT_TIMEOUT	= 5000;
+
+	/**
+	 * Der Thread, der gesammelte Nachrichten nach Ablauf der
+	 * {@link #CONFIG_WRITE_LATENCY_CAP} zum Senden an die {@link #flushWorkers}
+	 * bergibt. Er wird von allen Verbindungen geteilt und erst bei Bedarf
+	 * erstellt.
+	 */
+	private static ScheduledExecutorService flusher = null;
+
+	/**
+	 * Die Threads, in denen die eingeplanten {@link #flush()}es ausgefhrt
+	 * werden. Da das bertragen blockieren kann, geschieht das nicht im
+	 * {@link #flusher} selbst, sonst knnte ein einziger langsamer Spieler das
+	 * Senden fr alle anderen aufhalten.
+	 */
+	private static ExecutorService flushWorkers = null;
+
+	/**
+	 * Die Anzahl aller Schreibvorgnge, und die Anzahl der Schreibvorgnge, die
+	 * durch das Sammeln der Nachrichten eingespart wurden.
+	 */
+	private static final AtomicLong flushes			= new AtomicLong();
+	private static final AtomicLong savedFlushes	= new AtomicLong();
+
+	/**
+	 * Die Eingabeaufforderung, die dem Spieler vor jedem Befehl angezeigt
+	 * wird.
+	 */
+	protected static final String PROMPT = "\n\n> ";
+
+	/**
+	 * Der Spieler hinter dieser Verbindung. Er wird erst in
+	 * {@link #initialize()} erstellt.
+	 */
+	private Player player;
+
+	/**
+	 * Die kodierten Nachrichten, die beim nchsten {@link #flush()}
+	 * bertragen werden.
+	 */
+	private final Queue<ByteBuffer> pending = new ConcurrentLinkedQueue<ByteBuffer>();
+
+	/**
+	 * Gibt an, ob fr die {@link #pending} Nachrichten bereits ein
+	 * {@link #flush()} beim {@link #flusher} eingeplant ist.
+	 */
+	private final AtomicBoolean flushScheduled = new AtomicBoolean( false );
+
+	/**
+	 * Stellt sicher, dass die Nachrichten in der richtigen Reihenfolge
+	 * bertragen werden, auch wenn mehrere Threads gleichzeitig
+	 * {@link #flush()} aufrufen. Ein <code>ReentrantLock</code> statt
+	 * <code>synchronized</code>, da whrend des bertragens blockiert wird.
+	 */
+	private final ReentrantLock flushLock = new ReentrantLock();
+
+	private final Runnable scheduledFlush = new Runnable() {
+		@Override
+		public void run() {
+			getFlushWorkers().execute( backgroundFlush );
+		}
+	};
+
+	private final Runnable slowClientCheck = new Runnable() {
+		@Override
+		public void run() {
+			checkSlowClient( System.currentTimeMillis() );
+		}
+	};
+
+	private final Runnable backgroundFlush = new Runnable() {
+		@Override
+		public void run() {
+
+			// Ein anderer Thread bertrgt gerade, es spter nochmal versuchen
+			if ( !flushLock.tryLock() ) {
+				getFlusher().schedule( scheduledFlush, latencyCap, TimeUnit.MILLISECONDS );
+				return;
+			}
+
+			try {
+				flush();
+			} finally {
+				flushLock.unlock();
+			}
+		}
+	};
+
+	/**
+	 * Die Anzahl der Nachrichten und Bytes, die geschrieben, aber noch nicht
+	 * gesendet wurden. Dazu zhlen auch die Nachrichten, die schon an
+	 * {@link #transmit(ByteBuffer[])} bergeben wurden.
+	 */
+	private final AtomicInteger	queuedMessages	= new AtomicInteger();
+	private final AtomicLong	queuedBytes		= new AtomicLong();
+
+	/**
+	 * Die Anzahl der Nachrichten, die verworfen wurden, weil das Budget
+	 * berschritten war.
+	 */
+	private final AtomicLong droppedMessages = new AtomicLong();
+
+	/**
+	 * Der Zeitpunkt in ms, seit dem das Budget berschritten ist, oder
+	 * <code>0</code>, wenn es eingehalten wird.
+	 */
+	private volatile long overBudgetSince = 0;
+
+	/**
+	 * Wird in {@link #close()} gesetzt, damit die Verbindung nur einmal
+	 * aufgerumt wird.
+	 */
+	private final AtomicBoolean closed = new AtomicBoolean( false );
+
+	/**
+	 * Der aktuelle Abschnitt des Lebenszyklus dieser Verbindung.
+	 */
+	private volatile ConnectionState state = ConnectionState.HANDSHAKE;
+
+	/**
+	 * Der Zeitpunkt in ms, zu dem zuletzt eine Nachricht empfangen wurde.
+	 * Zu Beginn der Zeitpunkt, zu dem die Verbindung erstellt wurde.
+	 */
+	private volatile long lastActivity = System.currentTimeMillis();
+
+	/**
+	 * Werden beim Schlieen der Verbindung ausgefhrt.
+	 */
+	private final List<Runnable> closeHandlers = new CopyOnWriteArrayList<Runnable>();
+
+	/**
+	 * Die maximale Zeit in ms, bis eine geschriebene Nachricht gesendet wird.
+	 */
+	private final int latencyCap = (int) Configuration.getInstance().getValue(
+			CONFIG_WRITE_LATENCY_CAP,
+			IntegerType.getInstance(),
+			DEFAULT_WRITE_LATENCY_CAP );
+
+	private final int budget = (int) Configuration.getInstance().getValue(
+			CONFIG_OUTBOUND_BUDGET,
+			IntegerType.getInstance(),
+			DEFAULT_OUTBOUND_BUDGET );
+
+	private final boolean disconnectSlowClients = SLOW_CLIENT_DISCONNECT.equals( Configuration.getInstance().getValue(
+			CONFIG_SLOW_CLIENT_POLICY,
+			StringType.getInstance(),
+			DEFAULT_SLOW_CLIENT_POLICY ) );
+
+	private final int slowClientTimeout = (int) Configuration.getInstance().getValue(
+			CONFIG_SLOW_CLIENT_TIMEOUT,
+			IntegerType.getInstance(),
+			DEFAULT_SLOW_CLIENT_TIMEOUT );
+
+	/**
+	 * Arbeitet den Lebenszyklus dieser Verbindung ab: Zuerst werden Nickname
+	 * und Team erfragt, dann wird der Spieler in die Lobby geschickt und
+	 * schlielich gespawnt. Danach werden seine Eingaben in {@link #play()}
+	 * verarbeitet.
+	 */
+	@Override
+	public void run() {
+
+		try {
+			// Den Spieler nach Namen und Team fragen
+			initialize();
+
+			// Den Spieler in der Lobby beschftigen
+			sendToLobby();
+
+			// Spieler wurde gespawnt, seine Eingaben mssen geparst werden
+			play();
+
+		} catch ( ConnectionClosedException e ) {
+			// Der Spieler hat die Verbindung getrennt
+			close();
+		}
+	}
+
+	/**
+	 * Verarbeitet die Eingaben des gespawnten Spielers. Die Standard-
+	 * Implementation liest solange blockierend Nachrichten und leitet sie an
+	 * die {@link Parsers} weiter, bis die Verbindung geschlossen wird.
+	 * <p>
+	 * Subklassen, die ihre Nachrichten nicht blockierend empfangen, knnen
+	 * diese Methode berschreiben und sofort zurckkehren, sodass der Thread
+	 * fr andere Verbindungen frei wird.
+	 */
+	protected void play() {
+
+		Parsers parsers = Parsers.getInstance();
+
+		if ( TickEngine.getInstance().isEnabled() ) {
+
+			// Die Engine fhrt die Befehle aus und schreibt danach den Prompt
+			this.write( PROMPT );
+			while ( true )
+				submit( this.read() );
+		}
+
+		while ( true ) {
+
+			this.write( PROMPT );
+
+			// Blockiert, bis eine Eingabe da ist oder die Verbindung geschlossen
+			// wurde
+			String input = this.read();
+
+			// Weiterleiten der Eingabe an das Instruction Parsing System
+			parsers.parse( input, this );
+		}
+	}
+
+	/**
+	 * bergibt die gegebene Eingabe an die {@link TickEngine}. Sie wird im
+	 * nchsten Tick an die {@link Parsers} weitergeleitet, danach wird der
+	 * Prompt geschrieben. Ist die Engine ausgeschaltet, geschieht das sofort.
+	 *
+	 * @param input	Die Eingabe des gespawnten Spielers.
+	 */
+	protected final void submit( final String input ) {
+
+		TickEngine.getInstance().submit( this, new Runnable() {
+			@Override
+			public void run() {
+				Parsers.getInstance().parse( input, AbstractConnection.this );
+				write( PROMPT );
+			}
+		} );
+	}
+
+	/**
+	 * Kodiert die gegebene Nachricht und merkt sie zum Senden vor. Gesendet
+	 * wird beim nchsten {@link #flush()}, sptestens aber nach
+	 * {@link #CONFIG_WRITE_LATENCY_CAP} Millisekunden.
+	 *
+	 * @return	<code>false</code>, wenn die Verbindung bereits geschlossen ist
+	 * 			oder die Nachricht verworfen wurde, weil der Spieler mit dem
+	 * 			Empfangen nicht hinterherkommt, sonst <code>true</code>.
+	 */
+	@Override
+	public final boolean write( String message ) {
+
+		// Escapen und Separator anhngen, siehe IConnection
+		return enqueue( FrameCodec.encode( message ) );
+	}
+
+	/**
+	 * Merkt eine bereits kodierte Nachricht zum Senden vor, wie in
+	 * {@link #write(String)}. Der Puffer darf nicht mehr verndert werden,
+	 * er kann aber schreibgeschtzt sein und denselben Inhalt wie die Puffer
+	 * anderer Verbindungen haben (siehe {@link BroadcastService}).
+	 *
+	 * @param frame	Die kodierte Nachricht, bereit zum Lesen.
+	 * @return		<code>false</code>, wenn die Verbindung bereits geschlossen
+	 * 				ist oder die Nachricht verworfen wurde, sonst
+	 * 				<code>true</code>.
+	 */
+	boolean enqueue( ByteBuffer frame ) {
+
+		if ( !isOpen() )
+			return false;
+
+		// Budget prfen und die Bytes reservieren, in einem Schritt, sonst knnten
+		// mehrere gleichzeitig schreibende Threads das Budget gemeinsam berschreiten
+		int size = frame.limit();
+		while ( true ) {
+
+			long queued = queuedBytes.get();
+			if ( queued + size > budget ) {
+				overBudget();
+				return false;
+			}
+			if ( queuedBytes.compareAndSet( queued, queued + size ) )
+				break;
+		}
+
+		queuedMessages.incrementAndGet();
+		pending.offer( frame );
+
+		// Sptestens nach latencyCap ms senden
+		if ( flushScheduled.compareAndSet( false, true ) )
+			getFlusher().schedule( scheduledFlush, latencyCap, TimeUnit.MILLISECONDS );
+
+		return true;
+	}
+
+	/**
+	 * Sendet alle gesammelten Nachrichten und wartet dann auf die nchste
+	 * Nachricht des Spielers.
+	 *
+	 * @return	Die nchste Nachricht, niemals <code>null</code>.
+	 * @throws ConnectionClosedException	Wenn die Verbindung geschlossen
+	 * 										wurde, bevor eine Nachricht
+	 * 										empfangen wurde.
+	 * @see #receive()
+	 */
+	@Override
+	public final String read() {
+
+		flush();
+
+		String message = receive();
+		if ( message == null || !isOpen() )
+			throw new ConnectionClosedException();
+
+		touch();
+		return message;
+	}
+
+	/**
+	 * bertrgt alle Nachrichten, die seit dem letzten <code>flush()</code>
+	 * geschrieben wurden, mit einem einzigen Aufruf von
+	 * {@link #transmit(ByteBuffer[])}.
+	 */
+	public void flush() {
+
+		flushLock.lock();
+		try {
+			// Nachrichten, die ab jetzt geschrieben werden, brauchen einen neuen
+			// eingeplanten flush()
+			flushScheduled.set( false );
+
+			List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+			ByteBuffer frame;
+			while ( (frame = pending.poll()) != null )
+				frames.add( frame );
+
+			if ( frames.isEmpty() ) return;
+
+			transmit( frames.toArray( new ByteBuffer[ frames.size() ] ) );
+
+			flushes.incrementAndGet();
+			savedFlushes.addAndGet( frames.size() - 1 );
+
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Sendet die gesammelten Nachrichten wie {@link #flush()}, aber in einem der
+	 * {@link #flushWorkers} statt im aufrufenden Thread. Die Methode blockiert nie,
+	 * auch nicht, wenn der Spieler mit dem Empfangen nicht hinterherkommt oder ein
+	 * anderer Thread gerade bertrgt; dann wird spter erneut versucht. Threads, die
+	 * alle Spieler bedienen (z.B. der Thread der {@link TickEngine}), mssen diese Methode
+	 * statt <code>flush()</code> verwenden.
+	 */
+	public void requestFlush() {
+
+		if ( !pending.isEmpty() )
+			getFlushWorkers().execute( backgroundFlush );
+	}
+
+	/**
+	 * Verwirft die aktuelle Nachricht, weil das Budget berschritten ist.
+	 * Wenn das schon lnger als {@link #slowClientTimeout} der Fall ist, wird
+	 * die Verbindung je nach Konfiguration geschlossen.
+	 * <p>
+	 * Beim ersten berschreiten wird auerdem eine Prfung beim {@link #flusher}
+	 * eingeplant, damit auch ein Spieler, an den danach nichts mehr geschrieben
+	 * wird, nicht endlos ber dem Budget bleibt.
+	 */
+	private void overBudget() {
+
+		droppedMessages.incrementAndGet();
+
+		long now = System.currentTimeMillis();
+		if ( overBudgetSince == 0 ) {
+			overBudgetSince = now;
+			if ( disconnectSlowClients )
+				getFlusher().schedule( slowClientCheck, slowClientTimeout + 1, TimeUnit.MILLISECONDS );
+			return;
+		}
+
+		checkSlowClient( now );
+	}
+
+	/**
+	 * Schliet die Verbindung, wenn sie lnger als {@link #slowClientTimeout} ber
+	 * dem Budget ist und die Konfiguration das verlangt.
+	 *
+	 * @param now	Der aktuelle Zeitpunkt in ms.
+	 */
+	private void checkSlowClient( long now ) {
+
+		long since = overBudgetSince;
+		if ( disconnectSlowClients && since != 0 && now - since > slowClientTimeout && isOpen() ) {
+			Logger.getInstance().log( LogLevel.WARNING, LOG_NAME, "Closing slow connection, " 
+					+ queuedBytes.get() + " bytes in " + queuedMessages.get() + " messages are still queued." );
+			close();
+		}
+	}
+
+	/**
+	 * Muss von den Subklassen aufgerufen werden, sobald Nachrichten, die an
+	 * {@link #transmit(ByteBuffer[])} bergeben wurden, vollstndig gesendet
+	 * oder wegen eines Fehlers verworfen wurden.
+	 *
+	 * @param messages	Die Anzahl der Nachrichten.
+	 * @param bytes		Die Summe der <code>limit()</code>s dieser Nachrichten.
+	 */
+	protected final void sent( int messages, long bytes ) {
+
+		queuedMessages.addAndGet( -messages );
+		if ( queuedBytes.addAndGet( -bytes ) <= budget )
+			overBudgetSince = 0;
+	}
+
+	/**
+	 * bertrgt die gegebenen, bereits kodierten Nachrichten in dieser
+	 * Reihenfolge an den Spieler, nach Mglichkeit mit einem einzigen
+	 * Schreibvorgang. Wird nie von mehreren Threads gleichzeitig aufgerufen.
+	 * Die bertragung darf auch asynchron erfolgen, danach muss aber
+	 * {@link #sent(int, long)} aufgerufen werden.
+	 *
+	 * @param frames	Die zu bertragenden Nachrichten, bereit zum Lesen.
+	 */
+	protected abstract void transmit( ByteBuffer[] frames );
+
+	/**
+	 * Empfngt die nchste Nachricht des Spielers. Es gelten die Vorgaben fr
+	 * {@link IConnection#read()}. Ist das Ende des Streams erreicht oder
+	 * tritt ein Fehler auf, muss die Verbindung mit {@link #close()}
+	 * geschlossen werden.
+	 *
+	 * @return	Die empfangene Nachricht, oder <code>null</code>, wenn die
+	 * 			Verbindung geschlossen wurde.
+	 */
+	protected abstract String receive();
+
+	/**
+	 * Merkt sich, dass gerade eine Nachricht des Spielers empfangen wurde.
+	 * Subklassen, die Nachrichten nicht ber {@link #read()} weitergeben,
+	 * mssen diese Methode selbst aufrufen.
+	 */
+	protected final void touch() {
+		lastActivity = System.currentTimeMillis();
+	}
+
+	/**
+	 * Gibt den Zeitpunkt zurck, zu dem zuletzt eine Nachricht des Spielers
+	 * empfangen wurde.
+	 *
+	 * @return	Der Zeitpunkt in ms, wie von
+	 * 			<code>System.currentTimeMillis()</code>.
+	 */
+	public long getLastActivity() {
+		return lastActivity;
+	}
+
+	/**
+	 * Gibt den aktuellen Abschnitt des Lebenszyklus dieser Verbindung zurck.
+	 *
+	 * @return	Der aktuelle {@link ConnectionState}.
+	 */
+	public ConnectionState getState() {
+		return state;
+	}
+
+	/**
+	 * Schliet den Socket dieser Verbindung. Blockierende Aufrufe von
+	 * {@link #receive()} mssen danach zurckkehren. Wird nur einmal
+	 * aufgerufen.
+	 */
+	protected abstract void closeTransport();
+
+	/**
+	 * Gibt an, ob ber diese Verbindung noch Nachrichten gesendet werden
+	 * knnen.
+	 *
+	 * @return	<code>true</code>, wenn die Verbindung offen ist.
+	 */
+	public abstract boolean isOpen();
+
+	/**
+	 * Gibt die Anzahl der Nachrichten zurck, die geschrieben, aber noch
+	 * nicht gesendet wurden.
+	 *
+	 * @return	Die Lnge der Warteschlange dieser Verbindung.
+	 */
+	public int getQueuedMessages() {
+		return queuedMessages.get();
+	}
+
+	/**
+	 * Gibt die Gre der Nachrichten zurck, die geschrieben, aber noch nicht
+	 * gesendet wurden. Ein dauerhaft hoher Wert bedeutet, dass der Spieler
+	 * mit dem Empfangen nicht hinterherkommt.
+	 *
+	 * @return	Die Anzahl der Bytes in der Warteschlange dieser Verbindung.
+	 */
+	public long getQueuedBytes() {
+		return queuedBytes.get();
+	}
+
+	/**
+	 * Gibt die Anzahl der Nachrichten zurck, die wegen des berschrittenen
+	 * Budgets verworfen wurden.
+	 *
+	 * @return	Die Anzahl der verworfenen Nachrichten dieser Verbindung.
+	 */
+	public long getDroppedMessages() {
+		return droppedMessages.get();
+	}
+
+	/**
+	 * Gibt die Anzahl der Schreibvorgnge aller Verbindungen zurck.
+	 *
+	 * @return	Die Anzahl der Aufrufe von {@link #flush()}, die Nachrichten
+	 * 			bertragen haben.
+	 */
+	public static long getFlushCount() {
+		return flushes.get();
+	}
+
+	/**
+	 * Gibt zurck, wie viele Schreibvorgnge durch das Sammeln der Nachrichten
+	 * eingespart wurden, d.h. die Anzahl der Nachrichten, die gemeinsam mit
+	 * einer vorherigen Nachricht bertragen wurden.
+	 *
+	 * @return	Die Anzahl der eingesparten Schreibvorgnge aller Verbindungen.
+	 */
+	public static long getSavedFlushes() {
+		return savedFlushes.get();
+	}
+
+	private static synchronized ScheduledExecutorService getFlusher() {
+
+		if ( flusher == null ) {
+			flusher = new ScheduledThreadPoolExecutor( 1, new ThreadFactory() {
+				@Override
+				public Thread newThread( Runnable r ) {
+					Thread thread = new Thread( r, "TOCS Flusher" );
+					thread.setDaemon( true );
+					return thread;
+				}
+			} );
+		}
+
+		return flusher;
+	}
+
+	private static synchronized ExecutorService getFlushWorkers() {
+
+		if ( flushWorkers == null ) {
+			flushWorkers = Executors.newCachedThreadPool( new ThreadFactory() {
+				@Override
+				public Thread newThread( Runnable r ) {
+					Thread thread = new Thread( r, "TOCS Flush-Worker" );
+					thread.setDaemon( true );
+					return thread;
+				}
+			} );
+		}
+
+		return flushWorkers;
+	}
+
+	private void initialize() {
+
+		// Erst nach Namen, dann nach Team fragen
+		MenuSequence sequence = new MenuSequence()
+					.addMenu( new Prompt( "Choose your nickname!" ) )
+					.addMenu( new ShortcutSelector( "Which team do you want to join?" )
+							.addOption( 't', "terrorists", Team.TERRORISTS )
+							.addOption( 'c', "counter-terrorists", Team.COUNTER_TERRORISTS )
+							.addOption( 'a', "auto-assign", null ) );
+
+		List<?> results = (List<?>) sequence.display( this );
+
+		// Ergebnisse der MenuSequence auslesen. Die casts sind sicher,
+		// TODO eventuell ein paar assertions hinzufgen
+		String 	nickname 	= (String) results.get( 0 );
+		Team 	team 		= 	(Team) results.get( 1 );
+
+		// TODO Das gefllt mir noch nicht.
+		if ( team == null )
+			team = Team.assignAutomaticly();
+		Team.incrementTeam( team );
+
+		// Mit diesen Daten kann das Spieler-Objekt erstellt werden.
+		this.player = new Player( nickname, team );
+	}
+
+	private void sendToLobby() {
+
+		// Ab in die Lobby
+		state = ConnectionState.LOBBY;
+		LobbySubSystem subSystem = Lobby.getInstance().assignLobbySubSystem( this );
+		subSystem.operate( this );
+
+		// Die Lobby gibt den Spieler auch frei, wenn seine Verbindung
+		// geschlossen wurde
+		if ( !isOpen() )
+			throw new ConnectionClosedException();
+
+		// Wenn die operate methode zurckkehrt, darf der Spieler spawnen
+		TOCSServer.getMap().spawn( this );
+		state = ConnectionState.IN_GAME;
+	}
+
+	@Override
+	public Player getPlayer() {
+		return player;
+	}
+
+	/**
+	 * Fgt eine Aktion hinzu, die beim Schlieen dieser Verbindung
+	 * ausgefhrt wird, z.B. um sie aus einer Liste aller Verbindungen zu
+	 * entfernen. Ist die Verbindung bereits geschlossen, wird die Aktion
+	 * sofort ausgefhrt.
+	 *
+	 * @param handler	Die auszufhrende Aktion.
+	 */
+	public void addCloseHandler( Runnable handler ) {
+
+		closeHandlers.add( handler );
+		if ( closed.get() && closeHandlers.remove( handler ) )
+			handler.run();
+	}
+
+	/**
+	 * Schliet diese Verbindung und entfernt den Spieler aus dem Spiel: Er
+	 * wird aus der {@link Lobby} und von der {@link Map} entfernt, sein
+	 * Knoten wird aus dem Knoten-Baum gelst. Ein wartender Aufruf von
+	 * {@link #read()} wirft danach eine {@link ConnectionClosedException}.
+	 * <p>
+	 * Diese Methode kann beliebig oft und aus jedem Thread aufgerufen werden.
+	 */
+	@Override
+	public final void close() {
+
+		if ( !closed.compareAndSet( false, true ) )
+			return;
+
+		state = ConnectionState.CLOSING;
+		closeTransport();
+
+		// Nichts mehr senden
+		pending.clear();
+
+		Lobby.getInstance().remove( this );
+
+		if ( player != null ) {
+
+			Map map = TOCSServer.getMap();
+			if ( map != null )
+				map.remove( this );
+
+			Team.decrementTeam( player.getTeam() );
+		}
+
+		for (Runnable handler : closeHandlers) {
+			if ( closeHandlers.remove( handler ) )
+				handler.run();
+		}
+
+		Logger.getInstance().log( LogLevel.INFO, LOG_NAME, "Connection to "
+				+ (player != null ? player.getNickname() : "unknown player") + " closed." );
+	}
+}
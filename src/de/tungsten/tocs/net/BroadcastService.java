@@ -0,0 +1,88 @@
+package de.tungsten.tocs.net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Sendet eine Nachricht an mehrere Verbindungen gleichzeitig, z.B. den
+ * Countdown der {@link de.tungsten.tocs.engine.Lobby} oder Meldungen an alle
+ * Spieler auf der {@link de.tungsten.tocs.engine.maps.Map}.
+ * <p>
+ * Die Nachricht wird dabei nur ein einziges Mal kodiert. Jede
+ * {@link AbstractConnection} erhlt eine eigene, schreibgeschtzte Sicht auf
+ * denselben Puffer, die nur in ihre Warteschlange gelegt wird. Der Aufrufer
+ * blockiert also nie, auch nicht wenn einer der Empfnger langsam ist.
+ * Andere Implementierungen von {@link IConnection} erhalten die Nachricht
+ * ber {@link IConnection#write(String)} in einem eigenen Thread.
+ * <p>
+ * Diese Klasse ist als Singleton implementiert. Auf die Instanz kann mit
+ * {@link #getInstance()} zugegriffen werden.
+ *
+ * @author tungsten
+ *
+ */
+public class BroadcastService {
+
+	private static BroadcastService instance = null;
+
+	/**
+	 * Gibt die einzige existierende Instanz dieser Klasse zurck. Die Instanz
+	 * wird erst erstellt, wenn sie zum ersten Mal angefordert wird.
+	 *
+	 * @return	Die einzige existierende Instanz von
+	 * 			<code>BroadcastService</code>.
+	 */
+	public static synchronized BroadcastService getInstance() {
+		if ( instance == null )
+			instance = new BroadcastService();
+
+		return instance;
+	}
+
+	/**
+	 * Schreibt die Nachrichten an Verbindungen, die keine
+	 * <code>AbstractConnection</code> sind. Ein einzelner Thread, damit die
+	 * Reihenfolge der Nachrichten erhalten bleibt.
+	 */
+	private final ExecutorService fallback = Executors.newSingleThreadExecutor( new ThreadFactory() {
+		@Override
+		public Thread newThread( Runnable r ) {
+			Thread thread = new Thread( r, "TOCS Broadcast" );
+			thread.setDaemon( true );
+			return thread;
+		}
+	} );
+
+	private BroadcastService() {}
+
+	/**
+	 * Sendet die gegebene Nachricht an alle gegebenen Verbindungen. Diese
+	 * Methode kehrt sofort zurck, die Nachricht wird mit dem nchsten
+	 * <code>flush()</code> der einzelnen Verbindungen gesendet.
+	 *
+	 * @param message		Die zu sendende Nachricht.
+	 * @param recipients	Die Empfnger der Nachricht.
+	 */
+	public void broadcast( final String message, Iterable<? extends IConnection> recipients ) {
+
+		// Nur einmal kodieren, alle Empfnger teilen sich den Puffer
+		ByteBuffer frame = FrameCodec.encode( message ).asReadOnlyBuffer();
+
+		for (final IConnection recipient : recipients) {
+
+			if ( recipient instanceof AbstractConnection ) {
+				((AbstractConnection) recipient).enqueue( frame.duplicate() );
+
+			} else {
+				fallback.execute( new Runnable() {
+					@Override
+					public void run() {
+						recipient.write( message );
+					}
+				} );
+			}
+		}
+	}
+}
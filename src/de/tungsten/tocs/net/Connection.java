@@ -1,193 +1,137 @@
 package de.tungsten.tocs.net;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
-import java.util.List;
+import java.nio.ByteBuffer;
 
-import de.tungsten.tocs.config.Configuration;
-import de.tungsten.tocs.config.IntegerType;
-import de.tungsten.tocs.engine.Lobby;
-import de.tungsten.tocs.engine.LobbySubSystem;
-import de.tungsten.tocs.engine.Team;
-import de.tungsten.tocs.engine.nodes.Player;
-import de.tungsten.tocs.engine.parsing.Parsers;
-import de.tungsten.tocs.menus.MenuSequence;
-import de.tungsten.tocs.menus.Prompt;
-import de.tungsten.tocs.menus.ShortcutSelector;
+import de.tungsten.tocs.LogLevel;
+import de.tungsten.tocs.Logger;
 
 // Noch keine Dokumentation an einigen Stellen, hier wird sich 
 // wahrscheinlich noch einiges ndern.
 
-public class Connection extends Thread implements IPlayerConnection, Closeable {
+/**
+ * Eine blockierende Verbindung zu einem Spieler. Jede <code>Connection</code>
+ * wird von einem eigenen Thread bedient, der beim Lesen im Socket blockiert.
+ * Der Lebenszyklus der Verbindung ist in {@link AbstractConnection} definiert.
+ * 
+ * @author tungsten
+ *
+ */
+public class Connection extends AbstractConnection {
 
-	public	static final String	CONFIG_RETRIES	= "connectionRetries";
-	private static final int 	DEFAULT_RETRIES	= 5;
+	private static final String LOG_NAME	= "(CORE) Connection";
 	
-	public	static final String	CONFIG_TIMEOUT	= "connectionTimeout";
-	private static final int 	DEFAULT_TIMEOUT	= 500;
+	private static final int	READ_BUFFER_SIZE	= 4096;
 	
-	private Player player;
-	private BufferedReader in;
-	private BufferedWriter out;
+	private final Socket socket;
+	private InputStream in;
+	private OutputStream out;
 	
-	private final int retries;
-	private final int timeout;
+	/**
+	 * Die empfangenen Bytes, die noch nicht vom {@link #codec} verarbeitet
+	 * wurden. Der Puffer ist immer bereit zum Lesen.
+	 */
+	private final ByteBuffer readBuffer = ByteBuffer.allocate( READ_BUFFER_SIZE );
+	private final FrameCodec codec = new FrameCodec();
 	
 	public Connection( Socket socket ) {
 		
-		// Configuration Objekt referenzieren
-		Configuration config = Configuration.getInstance();
+		this.socket = socket;
 		
-		// retries und timeout aus den Konfigurationen auslesen
-		retries = (int) config.getValue(
-				CONFIG_RETRIES, 
-				IntegerType.getInstance(), 
-				DEFAULT_RETRIES );
-		
-		timeout = (int) config.getValue( 
-				CONFIG_TIMEOUT, 
-				IntegerType.getInstance(), 
-				DEFAULT_TIMEOUT );
+		// Noch keine Bytes empfangen
+		readBuffer.limit( 0 );
 		
 		try {
-			// Zum lesen und Schreiben werden BufferedReader/-Writer verwendet
-			in = new BufferedReader( new InputStreamReader( socket.getInputStream() ) );
-			out = new BufferedWriter( new OutputStreamWriter( socket.getOutputStream() ) );
-			
-			// Thread gleich starten
-			start();
+			// Gepuffert wird im readBuffer bzw. im FrameCodec
+			in = socket.getInputStream();
+			out = socket.getOutputStream();
 			
 		} catch (IOException e) {}
 	}
 	
 	@Override
-	public void run() {
-		
-		// Den Spieler nach Namen und Team fragen
-		initialize();
+	protected void transmit( ByteBuffer[] frames ) {
 		
-		// Den Spieler in der Lobby beschftigen
-		sendToLobby();
-		
-		// Spieler wurde gespawnt, seine Eingaben mssen geparst werden
-		Parsers parsers = Parsers.getInstance();
-		
-		while ( true ) {
-			
-			this.write( "\n\n> " );
+		// Alle Nachrichten zu einem Block zusammenfassen, damit sie mit einem
+		// einzigen Schreibvorgang gesendet werden
+		ByteBuffer block = frames[0];
+		if ( frames.length > 1 || !block.hasArray() ) {
 			
-			String input;
-			do {
-				input = this.read();
-				
-			} while ( input == null );
+			int size = 0;
+			for (ByteBuffer frame : frames)
+				size += frame.remaining();
 			
-			// Weiterleiten der Eingabe an das Instruction Parsing System
-			parsers.parse( input, this );
+			block = ByteBuffer.allocate( size );
+			for (ByteBuffer frame : frames)
+				block.put( frame );
+			block.flip();
 		}
-	}
-	
-	private void initialize() {
-
-		// Erst nach Namen, dann nach Team fragen
-		MenuSequence sequence = new MenuSequence()
-					.addMenu( new Prompt( "Choose your nickname!" ) )
-					.addMenu( new ShortcutSelector( "Which team do you want to join?" )
-							.addOption( 't', "terrorists", Team.TERRORISTS )
-							.addOption( 'c', "counter-terrorists", Team.COUNTER_TERRORISTS )
-							.addOption( 'a', "auto-assign", null ) );
-					
-		List<?> results = (List<?>) sequence.display( this );
-		
-		// Ergebnisse der MenuSequence auslesen. Die casts sind sicher,
-		// TODO eventuell ein paar assertions hinzufgen
-		String 	nickname 	= (String) results.get( 0 );
-		Team 	team 		= 	(Team) results.get( 1 );
 		
-		// TODO Das gefllt mir noch nicht.
-		if ( team == null )
-			team = Team.assignAutomaticly();
-		Team.incrementTeam( team );
-		
-		// Mit diesen Daten kann das Spieler-Objekt erstellt werden.
-		this.player = new Player( nickname, team );
-	}
-	
-	private void sendToLobby() {
-		
-		// Ab in die Lobby
-		LobbySubSystem subSystem = Lobby.getInstance().assignLobbySubSystem( this );
-		subSystem.operate( this );
-		
-		// Wenn die operate methode zurckkehrt, darf der Spieler spawnen
-		TOCSServer.getMap().spawn( this );
-	}
-	
-	public Player getPlayer() {
-		return player;
+		int size = block.remaining();
+		try {
+			// Kein erneuter Versuch, ein Socket, an dem das Schreiben fehlschlgt,
+			// erholt sich davon nicht mehr
+			out.write( block.array(), block.arrayOffset() + block.position(), size );
+			out.flush();
+			
+		} catch (IOException ioExcp) {
+			close();
+			
+		} finally {
+			sent( frames.length, size );
+		}
 	}
 	
 	@Override
-	public boolean write( String message ) {
+	protected String receive() {
 		
-		// Diese Zeilen existieren wegen den Anforderungen in IConnection
-		message.replace( String.valueOf(IConnection.MESSAGE_SEPARATOR), IConnection.MESSAGE_SEPARATOR_ESCAPE );
-		message += IConnection.MESSAGE_SEPARATOR;
-		
-		// retries mal probieren
-		for (int i = 0; i < retries; i++) {
-			try {
+		try {
+			while ( true ) {
 				
-				out.write( message );
-				out.flush();
+				// Die nchste Nachricht aus den bereits empfangenen Bytes
+				try {
+					String message = codec.decode( readBuffer );
+					if ( message != null )
+						return message;
+					
+				} catch ( FrameTooLongException e ) {
+					Logger.getInstance().log( LogLevel.WARNING, LOG_NAME, e.getMessage() );
+					continue;
+				}
 				
-				return true;
+				// readBuffer ist leer, neue Bytes empfangen
+				int count = in.read( readBuffer.array(), 0, readBuffer.capacity() );
 				
-			} catch (IOException ioExcp) {
-
-				try {
-					// timeout lang schlafen
-					Thread.sleep( timeout );
-				} catch (InterruptedException interExcp) {}
+				// Ende des Streams, der Spieler hat die Verbindung getrennt
+				if ( count < 0 ) break;
+				
+				readBuffer.position( 0 );
+				readBuffer.limit( count );
 			}
+			
+		} catch ( IOException ioExc ) {
+			// Verbindung zurckgesetzt oder bereits geschlossen
 		}
 		
-		return false;
+		close();
+		return null;
 	}
 	
 	@Override
-	public String read() {
-			
-		for (int i = 0; i < retries; i++) {
-			try {
-				
-				String result = "";
-				
-				// message zeichenweise einlesen
-				char c;
-				while ( (c = (char) in.read()) != IConnection.MESSAGE_SEPARATOR ) 
-					result += c;
-				
-				// Das ist teil des Spezifikation in IConnection
-				return result.replace( IConnection.MESSAGE_SEPARATOR_ESCAPE, String.valueOf(IConnection.MESSAGE_SEPARATOR) );
-				
-			} catch ( IOException ioExc ) {
-				
-				try {
-					Thread.sleep( timeout );
-				} catch (InterruptedException e) {}
-			}
-		}
-		return null;
+	public boolean isOpen() {
+		return !socket.isClosed();
 	}
 	
 	@Override
-	public void close() {
-		// ?
+	protected void closeTransport() {
+		
+		try {
+			// Blockierende Aufrufe von read() und write() werfen danach eine
+			// IOException
+			socket.close();
+		} catch (IOException e) {}
 	}
 }
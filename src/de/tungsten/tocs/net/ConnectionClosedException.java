@@ -0,0 +1,22 @@
+package de.tungsten.tocs.net;
+
+/**
+ * Diese <code>RuntimeException</code> wird von
+ * {@link AbstractConnection#read()} geworfen, wenn die Verbindung geschlossen
+ * wurde, z.B. weil der Spieler die Verbindung getrennt hat. Sie beendet den
+ * Lebenszyklus der Verbindung, egal ob sich der Spieler gerade in einem Men,
+ * in der Lobby oder im Spiel befindet.
+ *
+ * @author tungsten
+ *
+ */
+@SuppressWarnings("serial")
+public class ConnectionClosedException extends RuntimeException {
+
+	/**
+	 * Erstellt eine neue Instanz von <code>ConnectionClosedException</code>.
+	 */
+	public ConnectionClosedException() {
+		super( "The connection has been closed." );
+	}
+}
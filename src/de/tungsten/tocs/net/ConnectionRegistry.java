@@ -0,0 +1,200 @@
+package de.tungsten.tocs.net;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import de.tungsten.tocs.LogLevel;
+import de.tungsten.tocs.Logger;
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.config.IntegerType;
+
+/**
+ * Verwaltet alle offenen Verbindungen des {@link TOCSServer}s. Verbindungen
+ * werden mit {@link #register(AbstractConnection)} aufgenommen und entfernen
+ * sich beim Schlieen selbst wieder, sodass die Registry auch bei vielen
+ * kommenden und gehenden Spielern nicht wchst.
+ * <p>
+ * Nach {@link #start()} werden regelmig alle Verbindungen geschlossen, von
+ * denen lnger als {@link #CONFIG_IDLE_TIMEOUT} Sekunden keine Nachricht mehr
+ * empfangen wurde. Die Anzahl der Verbindungen pro {@link ConnectionState}
+ * kann mit {@link #getCounts()} abgefragt werden.
+ *
+ * @author tungsten
+ *
+ */
+public class ConnectionRegistry {
+
+	private static final String LOG_NAME = "(CORE) ConnectionRegistry";
+
+	// Sekunden ohne empfangene Nachricht, bis eine Verbindung geschlossen wird,
+	// 0 schaltet das Schlieen ab
+	public	static final String	CONFIG_IDLE_TIMEOUT		= "idleTimeout";
+	private static final int	DEFAULT_IDLE_TIMEOUT	= 900;
+
+	/**
+	 * Die offenen Verbindungen.
+	 */
+	private final Set<AbstractConnection> connections =
+			Collections.newSetFromMap( new ConcurrentHashMap<AbstractConnection, Boolean>() );
+
+	/**
+	 * Die maximale Zeit in ms ohne empfangene Nachricht.
+	 */
+	private final long idleTimeout;
+
+	private ScheduledExecutorService reaper = null;
+
+	/**
+	 * Erstellt eine neue <code>ConnectionRegistry</code>, der Timeout wird aus
+	 * der Konfiguration gelesen.
+	 */
+	public ConnectionRegistry() {
+		this( (int) Configuration.getInstance().getValue(
+				CONFIG_IDLE_TIMEOUT,
+				IntegerType.getInstance(),
+				DEFAULT_IDLE_TIMEOUT ) );
+	}
+
+	/**
+	 * Erstellt eine neue <code>ConnectionRegistry</code> mit dem gegebenen
+	 * Timeout.
+	 *
+	 * @param idleTimeout	Die Zeit in Sekunden, nach der eine Verbindung ohne
+	 * 						empfangene Nachricht geschlossen wird, oder
+	 * 						<code>0</code>, um Verbindungen nie deswegen zu
+	 * 						schlieen.
+	 */
+	public ConnectionRegistry( int idleTimeout ) {
+		this.idleTimeout = idleTimeout * 1000L;
+	}
+
+	/**
+	 * Nimmt die gegebene Verbindung auf. Sobald sie geschlossen wird,
+	 * entfernt sie sich selbst wieder.
+	 *
+	 * @param connection	Die neue Verbindung.
+	 */
+	public void register( final AbstractConnection connection ) {
+
+		connections.add( connection );
+		connection.addCloseHandler( new Runnable() {
+			@Override
+			public void run() {
+				connections.remove( connection );
+			}
+		} );
+	}
+
+	/**
+	 * Startet das regelmige Schlieen unttiger Verbindungen. Es wird so oft
+	 * geprft, dass eine Verbindung hchstens ein Zehntel des Timeouts zu lang
+	 * offen bleibt.
+	 */
+	public synchronized void start() {
+
+		if ( reaper != null || idleTimeout <= 0 ) return;
+
+		reaper = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+			@Override
+			public Thread newThread( Runnable r ) {
+				Thread thread = new Thread( r, "TOCS Reaper" );
+				thread.setDaemon( true );
+				return thread;
+			}
+		} );
+
+		long period = Math.max( 1000, idleTimeout / 10 );
+		reaper.scheduleAtFixedRate( new Runnable() {
+			@Override
+			public void run() {
+				reapIdle( System.currentTimeMillis() );
+			}
+		}, period, period, TimeUnit.MILLISECONDS );
+	}
+
+	/**
+	 * Schliet alle Verbindungen, von denen seit mehr als dem Timeout keine
+	 * Nachricht empfangen wurde.
+	 *
+	 * @param now	Die aktuelle Zeit in ms.
+	 * @return		Die Anzahl der geschlossenen Verbindungen.
+	 */
+	public int reapIdle( long now ) {
+
+		if ( idleTimeout <= 0 ) return 0;
+
+		int count = 0;
+		for (AbstractConnection connection : connections) {
+
+			if ( now - connection.getLastActivity() > idleTimeout ) {
+				connection.close();
+				count++;
+			}
+		}
+
+		if ( count > 0 )
+			Logger.getInstance().log( LogLevel.INFO, LOG_NAME, "Closed " + count + " idle connections, "
+					+ connections.size() + " left " + getCounts() + "." );
+
+		return count;
+	}
+
+	/**
+	 * Gibt die Anzahl der offenen Verbindungen pro Zustand zurck.
+	 *
+	 * @return	Eine <code>EnumMap</code>, die jedem Zustand die Anzahl der
+	 * 			Verbindungen in diesem Zustand zuordnet.
+	 */
+	public EnumMap<ConnectionState, Integer> getCounts() {
+
+		EnumMap<ConnectionState, Integer> counts = new EnumMap<ConnectionState, Integer>( ConnectionState.class );
+		for (ConnectionState state : ConnectionState.values())
+			counts.put( state, 0 );
+
+		for (AbstractConnection connection : connections) {
+			ConnectionState state = connection.getState();
+			counts.put( state, counts.get( state ) + 1 );
+		}
+
+		return counts;
+	}
+
+	/**
+	 * Gibt die Anzahl der offenen Verbindungen zurck.
+	 *
+	 * @return	Die Anzahl der Verbindungen in dieser Registry.
+	 */
+	public int size() {
+		return connections.size();
+	}
+
+	/**
+	 * Schliet alle Verbindungen und beendet das Schlieen unttiger
+	 * Verbindungen. Wenn diese Methode zurckkehrt, sind alle Sockets
+	 * geschlossen.
+	 */
+	public void closeAll() {
+
+		synchronized ( this ) {
+			if ( reaper != null ) {
+				reaper.shutdownNow();
+				reaper = null;
+			}
+		}
+
+		// Kopie, da sich die Verbindungen beim Schlieen selbst entfernen
+		List<AbstractConnection> open = new ArrayList<AbstractConnection>( connections );
+		for (AbstractConnection connection : open)
+			connection.close();
+
+		connections.clear();
+	}
+}
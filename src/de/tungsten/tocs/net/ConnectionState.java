@@ -0,0 +1,35 @@
+package de.tungsten.tocs.net;
+
+/**
+ * Der Abschnitt des Lebenszyklus, in dem sich eine
+ * {@link AbstractConnection} gerade befindet. Die Zustnde werden in dieser
+ * Reihenfolge durchlaufen, eine Verbindung kann aber aus jedem Zustand
+ * direkt in {@link #CLOSING} wechseln.
+ *
+ * @author tungsten
+ *
+ */
+public enum ConnectionState {
+
+	/**
+	 * Die Verbindung wurde angenommen, der Spieler whlt gerade Nickname und
+	 * Team.
+	 */
+	HANDSHAKE,
+
+	/**
+	 * Der Spieler befindet sich in der {@link de.tungsten.tocs.engine.Lobby}.
+	 */
+	LOBBY,
+
+	/**
+	 * Der Spieler wurde gespawnt und befindet sich im Spiel.
+	 */
+	IN_GAME,
+
+	/**
+	 * Die Verbindung wird gerade geschlossen. Danach wird sie aus der
+	 * {@link ConnectionRegistry} entfernt.
+	 */
+	CLOSING;
+}
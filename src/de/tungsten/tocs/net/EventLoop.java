@@ -0,0 +1,165 @@
+package de.tungsten.tocs.net;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import de.tungsten.tocs.LogLevel;
+import de.tungsten.tocs.Logger;
+
+/**
+ * Ein <code>EventLoop</code> bedient die Sockets mehrerer
+ * {@link NIOConnection}s mit einem einzigen Thread. Dazu wird ein
+ * {@link Selector} verwendet, der meldet, sobald an einer der Verbindungen
+ * gelesen oder geschrieben werden kann.
+ * <p>
+ * Der {@link TOCSServer} erstellt im nicht-blockierenden Modus eine kleine
+ * Anzahl von <code>EventLoop</code>s und verteilt die neuen Verbindungen
+ * reihum auf sie. Alle Zugriffe auf die <code>SelectionKey</code>s finden
+ * ausschlielich im Thread des <code>EventLoop</code>s statt, andere Threads
+ * stellen ihre Anfragen ber {@link #register(NIOConnection)} und
+ * {@link #requestWrite(NIOConnection)}.
+ * <p>
+ * Verbindungen knnen jederzeit von anderen Threads geschlossen werden, wobei
+ * ihr <code>SelectionKey</code> ungltig wird. Fehler beim Bedienen einer
+ * Verbindung schlieen daher nur diese Verbindung, der
+ * <code>EventLoop</code> selbst luft fr alle anderen weiter.
+ *
+ * @author tungsten
+ *
+ */
+public class EventLoop extends Thread {
+
+	private static final String LOG_NAME = "(CORE) EventLoop";
+
+	/**
+	 * Der <code>Selector</code>, an dem alle Verbindungen dieses
+	 * <code>EventLoop</code>s registriert sind.
+	 */
+	private final Selector selector;
+
+	/**
+	 * Die Verbindungen, die noch am {@link #selector} registriert werden
+	 * mssen.
+	 */
+	private final Queue<NIOConnection> registrations = new ConcurrentLinkedQueue<NIOConnection>();
+
+	/**
+	 * Die Verbindungen, die Daten zum Senden bereit haben.
+	 */
+	private final Queue<NIOConnection> writeRequests = new ConcurrentLinkedQueue<NIOConnection>();
+
+	/**
+	 * Erstellt einen neuen <code>EventLoop</code>. Der Thread wird noch nicht
+	 * gestartet.
+	 *
+	 * @param index			Die Nummer dieses <code>EventLoop</code>s, sie
+	 * 						wird nur fr den Namen des Threads verwendet.
+	 * @throws IOException	Wenn der <code>Selector</code> nicht geffnet
+	 * 						werden konnte.
+	 */
+	public EventLoop( int index ) throws IOException {
+		super( "TOCS EventLoop-" + index );
+		setDaemon( true );
+
+		selector = Selector.open();
+	}
+
+	/**
+	 * bergibt die gegebene Verbindung an diesen <code>EventLoop</code>. Die
+	 * Registrierung am <code>Selector</code> erfolgt im Thread des
+	 * <code>EventLoop</code>s.
+	 *
+	 * @param connection	Die zu bedienende Verbindung.
+	 */
+	public void register( NIOConnection connection ) {
+		registrations.offer( connection );
+		selector.wakeup();
+	}
+
+	/**
+	 * Teilt diesem <code>EventLoop</code> mit, dass die gegebene Verbindung
+	 * Daten zum Senden bereit hat.
+	 *
+	 * @param connection	Die Verbindung mit den zu sendenden Daten.
+	 */
+	public void requestWrite( NIOConnection connection ) {
+		writeRequests.offer( connection );
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+
+		while ( !isInterrupted() ) {
+
+			try {
+				selector.select();
+
+			} catch ( IOException e ) {
+				Logger.getInstance().log( LogLevel.ERROR, LOG_NAME, "Select failed: \"" + e.getMessage() + "\"." );
+				break;
+			}
+
+			// Anfragen anderer Threads abarbeiten
+			NIOConnection connection;
+			while ( (connection = registrations.poll()) != null ) {
+				try {
+					connection.register( selector );
+				} catch ( ClosedChannelException e ) {
+					connection.close();
+				} catch ( CancelledKeyException e ) {
+					connection.close();
+				}
+			}
+
+			while ( (connection = writeRequests.poll()) != null )
+				connection.enableWrite();
+
+			// Bereite Verbindungen bedienen
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while ( keys.hasNext() ) {
+
+				SelectionKey key = keys.next();
+				keys.remove();
+
+				NIOConnection current = (NIOConnection) key.attachment();
+
+				try {
+					if ( key.isValid() && key.isReadable() )
+						current.onReadable();
+
+					if ( key.isValid() && key.isWritable() )
+						current.onWritable();
+
+				} catch ( CancelledKeyException e ) {
+					// Die Verbindung wurde whrenddessen von einem anderen Thread
+					// geschlossen
+					current.close();
+
+				} catch ( RuntimeException e ) {
+					Logger.getInstance().log( LogLevel.ERROR, LOG_NAME, "Closing connection after unexpected error: \"" + e + "\"." );
+					current.close();
+				}
+			}
+		}
+
+		try {
+			selector.close();
+		} catch ( IOException e ) {}
+	}
+
+	/**
+	 * Beendet diesen <code>EventLoop</code>. Der <code>Selector</code> wird
+	 * dabei geschlossen.
+	 */
+	public void shutDown() {
+		interrupt();
+		selector.wakeup();
+	}
+}
@@ -0,0 +1,226 @@
+package de.tungsten.tocs.net;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.config.IntegerType;
+
+/**
+ * Zerlegt die empfangenen Bytes einer Verbindung in Nachrichten und kodiert
+ * ausgehende Nachrichten, jeweils nach den Vorgaben in {@link IConnection}.
+ * Jede Verbindung bentigt einen eigenen <code>FrameCodec</code>, da
+ * unvollstndige Nachrichten zwischen zwei Aufrufen von
+ * {@link #decode(ByteBuffer)} gespeichert werden.
+ * <p>
+ * Die Bytes werden direkt im <code>ByteBuffer</code> nach dem
+ * {@link IConnection#MESSAGE_SEPARATOR} durchsucht und am Stck in einen
+ * wiederverwendeten Puffer kopiert. Die Escape-Sequenz
+ * {@value IConnection#MESSAGE_SEPARATOR_ESCAPE} wird ebenfalls auf Byte-Ebene
+ * ersetzt, bevor die Nachricht genau einmal als UTF-8 dekodiert wird. Das ist
+ * mglich, da die Escape-Sequenz nur aus ASCII-Zeichen besteht, die in UTF-8
+ * nie Teil eines Mehrbyte-Zeichens sind.
+ * <p>
+ * Nachrichten, die lnger als {@link #CONFIG_MAX_FRAME_LENGTH} Bytes sind,
+ * werden verworfen.
+ *
+ * @author tungsten
+ *
+ */
+public class FrameCodec {
+
+	public	static final String	CONFIG_MAX_FRAME_LENGTH		= "maxFrameLength";
+	private static final int	DEFAULT_MAX_FRAME_LENGTH	= 8192;
+
+	private static final int	INITIAL_CAPACITY	= 256;
+
+	public static final Charset CHARSET = Charset.forName( "UTF-8" );
+
+	private static final byte	SEPARATOR	= (byte) IConnection.MESSAGE_SEPARATOR;
+	private static final byte[]	ESCAPE		= IConnection.MESSAGE_SEPARATOR_ESCAPE.getBytes( CHARSET );
+
+	/**
+	 * Die maximale Lnge einer Nachricht in Bytes, ohne den Separator.
+	 */
+	private final int maxFrameLength;
+
+	/**
+	 * Die Bytes der Nachricht, die gerade empfangen wird. Der Puffer wchst
+	 * bei Bedarf bis auf {@link #maxFrameLength}.
+	 */
+	private byte[] frame = new byte[ INITIAL_CAPACITY ];
+	private int length = 0;
+
+	/**
+	 * Gibt an, ob in der aktuellen Nachricht das erste Byte der Escape-Sequenz
+	 * vorkommt. Nur dann muss die Nachricht nach der Sequenz durchsucht werden.
+	 */
+	private boolean escaped = false;
+
+	/**
+	 * Ist <code>true</code>, wenn die aktuelle Nachricht zu lang war. Alle
+	 * Bytes bis zum nchsten Separator werden dann verworfen.
+	 */
+	private boolean discarding = false;
+
+	/**
+	 * Erstellt einen neuen <code>FrameCodec</code>, die maximale Lnge einer
+	 * Nachricht wird aus der Konfiguration gelesen.
+	 */
+	public FrameCodec() {
+		this( (int) Configuration.getInstance().getValue(
+				CONFIG_MAX_FRAME_LENGTH,
+				IntegerType.getInstance(),
+				DEFAULT_MAX_FRAME_LENGTH ) );
+	}
+
+	/**
+	 * Erstellt einen neuen <code>FrameCodec</code> mit der gegebenen
+	 * maximalen Lnge einer Nachricht.
+	 *
+	 * @param maxFrameLength	Die maximale Lnge einer Nachricht in Bytes.
+	 */
+	public FrameCodec( int maxFrameLength ) {
+		this.maxFrameLength = maxFrameLength;
+	}
+
+	/**
+	 * Liest Bytes aus dem gegebenen Puffer, bis eine Nachricht vollstndig
+	 * ist oder der Puffer leer ist. Die Position des Puffers steht danach
+	 * direkt hinter dem gelesenen Separator, sodass die nchste Nachricht mit
+	 * einem weiteren Aufruf gelesen werden kann.
+	 *
+	 * @param buffer	Die empfangenen Bytes.
+	 * @return			Die nchste vollstndige Nachricht, oder
+	 * 					<code>null</code>, wenn der Puffer keinen Separator
+	 * 					mehr enthlt.
+	 * @throws FrameTooLongException	Wenn die aktuelle Nachricht zu lang
+	 * 									ist. Der Rest der Nachricht wird
+	 * 									verworfen, danach kann normal weiter
+	 * 									gelesen werden.
+	 */
+	public String decode( ByteBuffer buffer ) {
+
+		while ( buffer.hasRemaining() ) {
+
+			int start = buffer.position();
+			int limit = buffer.limit();
+
+			// Nach dem Separator suchen
+			int end = start;
+			boolean found = false;
+			for (; end < limit; end++) {
+
+				byte b = buffer.get( end );
+				if ( b == SEPARATOR ) {
+					found = true;
+					break;
+				}
+				if ( b == ESCAPE[0] )
+					escaped = true;
+			}
+
+			int count = end - start;
+
+			if ( discarding ) {
+				// Der Rest einer zu langen Nachricht
+				buffer.position( found ? end + 1 : end );
+				if ( found ) reset();
+				continue;
+			}
+
+			if ( length + count > maxFrameLength ) {
+
+				buffer.position( found ? end + 1 : end );
+				reset();
+				discarding = !found;
+				throw new FrameTooLongException( maxFrameLength );
+			}
+
+			// Die Bytes am Stck kopieren
+			ensureCapacity( length + count );
+			buffer.get( frame, length, count );
+			length += count;
+
+			if ( found ) {
+
+				buffer.get(); // Separator berspringen
+
+				String message = new String( frame, 0, escaped ? unescape() : length, CHARSET );
+				reset();
+				return message;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Kodiert die gegebene Nachricht nach den Vorgaben in {@link IConnection}:
+	 * Alle {@link IConnection#MESSAGE_SEPARATOR}-Zeichen werden durch die
+	 * Escape-Sequenz ersetzt, am Ende wird ein Separator angehngt.
+	 *
+	 * @param message	Die zu kodierende Nachricht.
+	 * @return			Die kodierte Nachricht, bereit zum Lesen.
+	 */
+	public static ByteBuffer encode( String message ) {
+
+		if ( message.indexOf( IConnection.MESSAGE_SEPARATOR ) >= 0 )
+			message = message.replace( String.valueOf( IConnection.MESSAGE_SEPARATOR ), IConnection.MESSAGE_SEPARATOR_ESCAPE );
+
+		byte[] bytes = message.getBytes( CHARSET );
+
+		ByteBuffer result = ByteBuffer.allocate( bytes.length + 1 );
+		result.put( bytes ).put( SEPARATOR );
+		result.flip();
+
+		return result;
+	}
+
+	/**
+	 * Ersetzt alle Escape-Sequenzen im {@link #frame} durch den Separator.
+	 * Die Nachricht wird dabei in einem Durchlauf an Ort und Stelle
+	 * verkrzt.
+	 *
+	 * @return	Die neue Lnge der Nachricht.
+	 */
+	private int unescape() {
+
+		int write = 0;
+		for (int read = 0; read < length; read++) {
+
+			if ( frame[read] == ESCAPE[0] && matchesEscape( read ) ) {
+				frame[write++] = SEPARATOR;
+				read += ESCAPE.length - 1;
+
+			} else frame[write++] = frame[read];
+		}
+
+		return write;
+	}
+
+	private boolean matchesEscape( int offset ) {
+
+		if ( offset + ESCAPE.length > length )
+			return false;
+
+		for (int i = 1; i < ESCAPE.length; i++) {
+			if ( frame[offset + i] != ESCAPE[i] )
+				return false;
+		}
+		return true;
+	}
+
+	private void ensureCapacity( int capacity ) {
+
+		if ( capacity > frame.length )
+			frame = Arrays.copyOf( frame, Math.min( maxFrameLength, Math.max( capacity, frame.length * 2 ) ) );
+	}
+
+	private void reset() {
+		length = 0;
+		escaped = false;
+		discarding = false;
+	}
+}
@@ -0,0 +1,39 @@
+package de.tungsten.tocs.net;
+
+/**
+ * Diese <code>RuntimeException</code> wird vom {@link FrameCodec} geworfen,
+ * wenn eine empfangene Nachricht lnger als die erlaubte Maximallnge ist.
+ * Die Nachricht wird verworfen, der <code>FrameCodec</code> kann danach aber
+ * weiter verwendet werden.
+ *
+ * @author tungsten
+ *
+ */
+@SuppressWarnings("serial")
+public class FrameTooLongException extends RuntimeException {
+
+	/**
+	 * Die maximal erlaubte Lnge einer Nachricht in Bytes.
+	 */
+	private final int maxLength;
+
+	/**
+	 * Erstellt eine neue Instanz von <code>FrameTooLongException</code>.
+	 *
+	 * @param maxLength	Die maximal erlaubte Lnge einer Nachricht in Bytes.
+	 */
+	public FrameTooLongException( int maxLength ) {
+		super( "Message exceeds the maximum length of " + maxLength + " bytes." );
+
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Gibt die maximal erlaubte Lnge einer Nachricht zurck.
+	 *
+	 * @return die {@link #maxLength}.
+	 */
+	public int getMaxLength() {
+		return maxLength;
+	}
+}
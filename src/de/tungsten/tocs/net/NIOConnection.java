@@ -0,0 +1,341 @@
+package de.tungsten.tocs.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import de.tungsten.tocs.LogLevel;
+import de.tungsten.tocs.Logger;
+import de.tungsten.tocs.engine.TickEngine;
+import de.tungsten.tocs.engine.parsing.Parsers;
+
+/**
+ * Eine nicht-blockierende Verbindung zu einem Spieler. Der Socket dieser
+ * Verbindung wird von einem {@link EventLoop} bedient, der die eingehenden
+ * Bytes in Nachrichten zerlegt und ausgehende Nachrichten sendet, sobald der
+ * Socket dazu bereit ist.
+ * <p>
+ * Solange sich der Spieler in den Mens und der Lobby befindet, wird der
+ * Lebenszyklus (siehe {@link AbstractConnection}) in einem Thread des
+ * Servers abgearbeitet, der in {@link #read()} auf die nchste Nachricht
+ * wartet. Sobald der Spieler gespawnt wurde, wird dieser Thread wieder
+ * freigegeben. Ab dann werden eingehende Nachrichten direkt an den
+ * <code>Executor</code> der Engine bergeben, sodass fr Spieler im Spiel
+ * kein eigener Thread mehr bentigt wird. Die Nachrichten eines Spielers
+ * werden dabei nacheinander, in der Reihenfolge ihres Eintreffens
+ * verarbeitet.
+ *
+ * @author tungsten
+ *
+ */
+public class NIOConnection extends AbstractConnection {
+
+	private static final String LOG_NAME	= "(CORE) NIOConnection";
+
+	private static final int	READ_BUFFER_SIZE	= 4096;
+	private static final int	GATHER_SIZE			= 64;
+
+	/**
+	 * Wird beim Schlieen in die {@link #inbox} gelegt, um einen in
+	 * {@link #receive()} wartenden Thread zu wecken. Wird per Identitt
+	 * verglichen.
+	 */
+	private static final String CLOSED = new String( "" );
+
+	private final SocketChannel channel;
+	private final EventLoop eventLoop;
+	private final Executor engine;
+
+	/**
+	 * Der Schlssel dieser Verbindung am <code>Selector</code> des
+	 * {@link #eventLoop}. Er wird nur im Thread des <code>EventLoop</code>s
+	 * verwendet.
+	 */
+	private SelectionKey key;
+
+	private final ByteBuffer readBuffer = ByteBuffer.allocate( READ_BUFFER_SIZE );
+
+	/**
+	 * Zerlegt die empfangenen Bytes in Nachrichten.
+	 */
+	private final FrameCodec codec = new FrameCodec();
+
+	/**
+	 * Die empfangenen, aber noch nicht verarbeiteten Nachrichten.
+	 */
+	private final BlockingQueue<String> inbox = new LinkedBlockingQueue<String>();
+
+	/**
+	 * Die kodierten Nachrichten, die noch gesendet werden mssen.
+	 */
+	private final Queue<ByteBuffer> outbox = new ConcurrentLinkedQueue<ByteBuffer>();
+
+	/**
+	 * Wird in {@link #onWritable()} verwendet, um mehrere Nachrichten aus der
+	 * {@link #outbox} gemeinsam zu senden.
+	 */
+	private final ByteBuffer[] gather = new ByteBuffer[ GATHER_SIZE ];
+
+	/**
+	 * Gibt an, ob der Spieler bereits gespawnt wurde. Ab dann werden die
+	 * Nachrichten aus der {@link #inbox} an die {@link #engine} bergeben.
+	 */
+	private volatile boolean inGame = false;
+
+	/**
+	 * Gibt an, ob bereits ein {@link #dispatcher} fr diese Verbindung an die
+	 * {@link #engine} bergeben wurde.
+	 */
+	private final AtomicBoolean dispatching = new AtomicBoolean( false );
+
+	private final Runnable dispatcher = new Runnable() {
+		@Override
+		public void run() {
+			dispatch();
+		}
+	};
+
+	/**
+	 * Erstellt eine neue <code>NIOConnection</code>. Die Verbindung muss
+	 * danach noch mit {@link EventLoop#register(NIOConnection)} beim
+	 * gegebenen <code>EventLoop</code> angemeldet werden.
+	 *
+	 * @param channel	Der nicht-blockierende Socket zum Spieler.
+	 * @param eventLoop	Der <code>EventLoop</code>, der den Socket bedient.
+	 * @param engine	Der <code>Executor</code>, in dem die Befehle des
+	 * 					gespawnten Spielers ausgefhrt werden.
+	 */
+	public NIOConnection( SocketChannel channel, EventLoop eventLoop, Executor engine ) {
+		this.channel = channel;
+		this.eventLoop = eventLoop;
+		this.engine = engine;
+	}
+
+	/**
+	 * Der Spieler wurde gespawnt. Ab jetzt werden seine Nachrichten an die
+	 * Engine bergeben, der aktuelle Thread wird freigegeben.
+	 */
+	@Override
+	protected void play() {
+
+		inGame = true;
+		write( PROMPT );
+		flush();
+
+		// Nachrichten, die schon vor dem Spawnen eingetroffen sind
+		schedule();
+	}
+
+	@Override
+	protected void transmit( ByteBuffer[] frames ) {
+
+		for (ByteBuffer frame : frames)
+			outbox.offer( frame );
+
+		// Gesendet wird im EventLoop
+		eventLoop.requestWrite( this );
+	}
+
+	/**
+	 * Wartet auf die nchste Nachricht des Spielers. Diese Methode wird nur
+	 * verwendet, solange sich der Spieler in den Mens befindet.
+	 *
+	 * @return	Die nchste Nachricht, oder <code>null</code>, wenn die
+	 * 			Verbindung geschlossen oder der wartende Thread unterbrochen
+	 * 			wurde.
+	 */
+	@Override
+	protected String receive() {
+
+		try {
+			String message = inbox.take();
+			if ( message != CLOSED )
+				return message;
+
+		} catch ( InterruptedException e ) {
+			// Der Server wird heruntergefahren
+		}
+
+		close();
+		return null;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return channel.isOpen();
+	}
+
+	@Override
+	protected void closeTransport() {
+
+		try {
+			// Schliet auch den SelectionKey
+			channel.close();
+		} catch ( IOException e ) {}
+
+		// Einen eventuell wartenden receive()-Aufruf wecken
+		inbox.offer( CLOSED );
+	}
+
+	/**
+	 * Registriert diese Verbindung am gegebenen <code>Selector</code>.
+	 * Wird nur vom {@link EventLoop} aufgerufen.
+	 */
+	void register( Selector selector ) throws ClosedChannelException {
+
+		int interest = SelectionKey.OP_READ;
+		if ( !outbox.isEmpty() )
+			interest |= SelectionKey.OP_WRITE;
+
+		key = channel.register( selector, interest, this );
+	}
+
+	/**
+	 * Meldet Interesse am Schreiben an, wenn Daten in der {@link #outbox}
+	 * liegen. Wird nur vom {@link EventLoop} aufgerufen.
+	 */
+	void enableWrite() {
+
+		try {
+			if ( key != null && key.isValid() && !outbox.isEmpty() )
+				key.interestOps( key.interestOps() | SelectionKey.OP_WRITE );
+
+		} catch ( CancelledKeyException e ) {
+			// Die Verbindung wurde gerade von einem anderen Thread geschlossen
+			close();
+		}
+	}
+
+	/**
+	 * Liest die verfgbaren Bytes vom Socket und zerlegt sie in Nachrichten.
+	 * Wird nur vom {@link EventLoop} aufgerufen.
+	 */
+	void onReadable() {
+
+		int count;
+		try {
+			count = channel.read( readBuffer );
+		} catch ( IOException e ) {
+			count = -1;
+		}
+
+		if ( count < 0 ) {
+			close();
+			return;
+		}
+
+		readBuffer.flip();
+		while ( readBuffer.hasRemaining() ) {
+
+			try {
+				String message = codec.decode( readBuffer );
+				if ( message != null )
+					deliver( message );
+
+			} catch ( FrameTooLongException e ) {
+				Logger.getInstance().log( LogLevel.WARNING, LOG_NAME, e.getMessage() );
+			}
+		}
+		readBuffer.clear();
+	}
+
+	/**
+	 * Sendet so viele Daten aus der {@link #outbox} wie der Socket annimmt.
+	 * Mehrere Nachrichten werden dabei mit einem einzigen Schreibvorgang
+	 * gesendet. Wird nur vom {@link EventLoop} aufgerufen.
+	 */
+	void onWritable() {
+
+		try {
+			while ( !outbox.isEmpty() ) {
+
+				// Nur der EventLoop entfernt Nachrichten aus der outbox, die
+				// ersten Eintrge ndern sich also nicht
+				int count = 0;
+				for (ByteBuffer frame : outbox) {
+					gather[count++] = frame;
+					if ( count == gather.length ) break;
+				}
+
+				channel.write( gather, 0, count );
+
+				// Vollstndig gesendete Nachrichten entfernen
+				for (int i = 0; i < count; i++) {
+
+					// Socket-Puffer voll, spter weitermachen
+					if ( gather[i].hasRemaining() ) {
+						Arrays.fill( gather, null );
+						return;
+					}
+					outbox.poll();
+					sent( 1, gather[i].limit() );
+				}
+				Arrays.fill( gather, null );
+			}
+
+			key.interestOps( SelectionKey.OP_READ );
+
+		} catch ( IOException e ) {
+			close();
+		} catch ( CancelledKeyException e ) {
+			// Die Verbindung wurde gerade von einem anderen Thread geschlossen
+			close();
+		}
+	}
+
+	private void deliver( String message ) {
+
+		touch();
+		inbox.offer( message );
+		if ( inGame ) schedule();
+	}
+
+	private void schedule() {
+
+		if ( dispatching.compareAndSet( false, true ) )
+			engine.execute( dispatcher );
+	}
+
+	/**
+	 * Verarbeitet alle Nachrichten in der {@link #inbox}. Wird in einem
+	 * Thread der {@link #engine} ausgefhrt, fr jede Verbindung aber nie
+	 * in mehreren Threads gleichzeitig.
+	 */
+	private void dispatch() {
+
+		Parsers parsers = Parsers.getInstance();
+		boolean ticks = TickEngine.getInstance().isEnabled();
+
+		String input;
+		while ( (input = inbox.poll()) != null && input != CLOSED ) {
+
+			// Die Engine fhrt den Befehl im nchsten Tick aus und sendet
+			if ( ticks ) {
+				submit( input );
+				continue;
+			}
+
+			// Weiterleiten der Eingabe an das Instruction Parsing System
+			parsers.parse( input, this );
+			write( PROMPT );
+
+			// Alle Ausgaben dieses Befehls auf einmal senden
+			flush();
+		}
+
+		// Eine Nachricht knnte nach dem letzten poll() eingetroffen sein
+		dispatching.set( false );
+		if ( !inbox.isEmpty() ) schedule();
+	}
+}
@@ -1,10 +1,16 @@
 package de.tungsten.tocs.net;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import de.tungsten.tocs.LogLevel;
 import de.tungsten.tocs.Logger;
@@ -14,6 +20,7 @@ import de.tungsten.tocs.config.StringType;
 import de.tungsten.tocs.engine.maps.IMapProvider;
 import de.tungsten.tocs.engine.maps.Map;
 import de.tungsten.tocs.engine.maps.XMLMapProvider;
+import de.tungsten.tocs.engine.parsing.Grammar;
 
 /*
  * Noch nicht dokumentiert, hier ndert sich eh alles wieder.
@@ -35,11 +42,41 @@ public class TOCSServer extends Thread {
 	private static final String CONFIG_MAP_LOADER		= "mapLoader";
 	private static final String DEFAULT_MAP_LOADER		= XMLMapProvider.CONFIGURATION_NAME;
 	
+	// "blocking": Ein Thread pro Verbindung, "nio": EventLoops mit Selector
+	public	static final String	CONFIG_NETWORK_MODE		= "networkMode";
+	public	static final String	NETWORK_MODE_BLOCKING	= "blocking";
+	public	static final String	NETWORK_MODE_NIO		= "nio";
+	private static final String	DEFAULT_NETWORK_MODE	= NETWORK_MODE_BLOCKING;
+	
+	// Anzahl der EventLoops und der Threads, die Befehle ausfhren (nur "nio")
+	public	static final String	CONFIG_EVENT_LOOPS		= "eventLoops";
+	private static final int	DEFAULT_EVENT_LOOPS		= Runtime.getRuntime().availableProcessors();
+	
+	public	static final String	CONFIG_ENGINE_THREADS	= "engineThreads";
+	private static final int	DEFAULT_ENGINE_THREADS	= Runtime.getRuntime().availableProcessors();
+
+	// "platform": Lebenszyklus der Verbindungen in normalen Threads,
+	// "virtual": in virtuellen Threads (erst ab Java 21 verfgbar)
+	public	static final String	CONFIG_THREAD_MODE		= "threadMode";
+	public	static final String	THREAD_MODE_PLATFORM	= "platform";
+	public	static final String	THREAD_MODE_VIRTUAL		= "virtual";
+	private static final String	DEFAULT_THREAD_MODE		= THREAD_MODE_PLATFORM;
+
 	private final Configuration configuration;
 	private static Map map = null;
 	private final Logger logger;
 	
-	private List<Connection> connections = new ArrayList<Connection>();
+	// Alle offenen Verbindungen, geschlossene entfernen sich selbst
+	private final ConnectionRegistry connections;
+
+	// Erstellt die Threads fr den Lebenszyklus der Verbindungen, null
+	// bedeutet normale Threads
+	private ThreadFactory virtualThreads = null;
+
+	// Nur im nicht-blockierenden Modus verwendet
+	private EventLoop[] eventLoops = new EventLoop[0];
+	private ExecutorService sessionExecutor;
+	private ExecutorService engineExecutor;
 	
 	public TOCSServer() throws FatalServerError {
 		super( "TOCS Server-Thread" ); 	// Dem Thread-Konstruktor den richtigen
@@ -53,6 +90,13 @@ public class TOCSServer extends Thread {
 		configuration = Configuration.getInstance();
 		configuration.loadFromFile( CONFIG_FILE_PATH );
 		
+		// Die Registry liest den Idle-Timeout aus der Konfiguration
+		connections = new ConnectionRegistry();
+		
+		// Die Grammatik schon beim Start laden und kompilieren, nicht erst bei der
+		// ersten Eingabe eines Spielers
+		Grammar.getInstance();
+		
 		// Log-Level aus den Konfigurationen auslesen
 		logger.setLogLevel( (int) configuration.getValue( 
 				CONFIG_LOGLEVEL, 
@@ -105,26 +149,31 @@ public class TOCSServer extends Thread {
 					IntegerType.getInstance(), 
 					DEFAULT_PORT );
 			
-			// Socket fr diesen Port erstellen
-			ServerSocket server = new ServerSocket( port );
-			logger.log( LogLevel.INFO, LOG_NAME, "Listening at port " + port + "." );
-			
-			// Wenn der Benutzer shutdown() aufruft, wird dieser Thread
-			// interruptet.
-			while ( !isInterrupted() ) {
-				
-				// client aus Netzwerk accepten
-				Socket client = server.accept();
-				
-				logger.log( LogLevel.INFO, LOG_NAME, "New Connection to " + client.getInetAddress() + "." );
-				
-				// Zu den Connections adden
-				Connection connection = new Connection( client );
-				connections.add( connection );
+			String networkMode = (String) configuration.getValue( 
+					CONFIG_NETWORK_MODE, 
+					StringType.getInstance(), 
+					DEFAULT_NETWORK_MODE );
+
+			String threadMode = (String) configuration.getValue(
+					CONFIG_THREAD_MODE,
+					StringType.getInstance(),
+					DEFAULT_THREAD_MODE );
+
+			if ( threadMode.equals( THREAD_MODE_VIRTUAL ) ) {
+
+				virtualThreads = VirtualThreads.newThreadFactory( "TOCS Connection-" );
+				if ( virtualThreads == null )
+					logger.log( LogLevel.WARNING, LOG_NAME, "Virtual threads are not supported by this JVM, using platform threads." );
 			}
+
+			// Unttige Verbindungen regelmig schlieen
+			connections.start();
+			
+			if ( networkMode.equals( NETWORK_MODE_NIO ) )
+				acceptNonBlocking( port );
+			else
+				acceptBlocking( port );
 			
-			// Socket konventions-konform schlieen
-			server.close();
 			logger.log( LogLevel.INFO, LOG_NAME, "Server down." );
 			
 		} catch (IOException e) {
@@ -133,17 +182,121 @@ public class TOCSServer extends Thread {
 		}
 	}
 	
+	/**
+	 * Nimmt Verbindungen an, die jeweils von einem eigenen Thread bedient
+	 * werden, der beim Lesen blockiert.
+	 */
+	private void acceptBlocking( int port ) throws IOException {
+		
+		// Socket fr diesen Port erstellen
+		ServerSocket server = new ServerSocket( port );
+		logger.log( LogLevel.INFO, LOG_NAME, "Listening at port " + port + "." );
+		
+		// Wenn der Benutzer shutdown() aufruft, wird dieser Thread
+		// interruptet.
+		while ( !isInterrupted() ) {
+			
+			// client aus Netzwerk accepten
+			Socket client = server.accept();
+			
+			logger.log( LogLevel.INFO, LOG_NAME, "New Connection to " + client.getInetAddress() + "." );
+			
+			// Zu den Connections adden
+			Connection connection = new Connection( client );
+			connections.register( connection );
+			
+			if ( virtualThreads != null )
+				virtualThreads.newThread( connection ).start();
+			else
+				new Thread( connection ).start();
+		}
+		
+		// Socket konventions-konform schlieen
+		server.close();
+	}
+	
+	/**
+	 * Nimmt Verbindungen an, deren Sockets von einigen wenigen 
+	 * {@link EventLoop}s bedient werden. Die Mens und die Lobby laufen in den
+	 * Threads des <code>sessionExecutor</code>s, die Befehle gespawnter
+	 * Spieler im <code>engineExecutor</code>.
+	 */
+	private void acceptNonBlocking( int port ) throws IOException {
+		
+		int loopCount = (int) configuration.getValue( 
+				CONFIG_EVENT_LOOPS, 
+				IntegerType.getInstance(), 
+				DEFAULT_EVENT_LOOPS );
+		
+		int engineThreads = (int) configuration.getValue( 
+				CONFIG_ENGINE_THREADS, 
+				IntegerType.getInstance(), 
+				DEFAULT_ENGINE_THREADS );
+		
+		// Virtuelle Threads werden nicht gepoolt, sondern pro Verbindung erstellt
+		if ( virtualThreads != null )
+			sessionExecutor = VirtualThreads.newPerTaskExecutor();
+		else
+			sessionExecutor = Executors.newCachedThreadPool();
+		engineExecutor = Executors.newFixedThreadPool( Math.max( 1, engineThreads ) );
+		
+		eventLoops = new EventLoop[ Math.max( 1, loopCount ) ];
+		for (int i = 0; i < eventLoops.length; i++) {
+			eventLoops[i] = new EventLoop( i );
+			eventLoops[i].start();
+		}
+		
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().bind( new InetSocketAddress( port ) );
+		logger.log( LogLevel.INFO, LOG_NAME, "Listening at port " + port + " (" + eventLoops.length + " event loops)." );
+		
+		int next = 0;
+		while ( !isInterrupted() ) {
+			
+			// Das accept selbst blockiert, die Clients aber nicht
+			SocketChannel client = server.accept();
+			client.configureBlocking( false );
+			
+			logger.log( LogLevel.INFO, LOG_NAME, "New Connection to " + client.socket().getInetAddress() + "." );
+			
+			// Reihum auf die EventLoops verteilen
+			EventLoop eventLoop = eventLoops[ next ];
+			next = (next + 1) % eventLoops.length;
+			
+			NIOConnection connection = new NIOConnection( client, eventLoop, engineExecutor );
+			connections.register( connection );
+			
+			eventLoop.register( connection );
+			sessionExecutor.execute( connection );
+		}
+		
+		server.close();
+	}
+	
 	public void shutDown() {
 		
-		// Alle aktiven Connections abtten
-		for ( Connection current : connections ) {
-			current.close();
+		// Alle aktiven Connections abtten, danach sind alle Sockets zu
+		connections.closeAll();
+		
+		for ( EventLoop eventLoop : eventLoops ) {
+			eventLoop.shutDown();
 		}
+		if ( sessionExecutor != null ) sessionExecutor.shutdownNow();
+		if ( engineExecutor != null ) engineExecutor.shutdownNow();
+		
 		interrupt(); 	// Thread beenden, die dazugehrige Schleife ist in
 						// run()
 		
 	}
 	
+	/**
+	 * Gibt die Registry mit allen offenen Verbindungen zurck, z.B. um die
+	 * Anzahl der Spieler pro {@link ConnectionState} abzufragen.
+	 */
+	public ConnectionRegistry getConnections() {
+		return connections;
+	}
+	
 	// TODO Diese Methode sollte ich woanders platzieren
 	public static Map getMap() {
 		return map; 
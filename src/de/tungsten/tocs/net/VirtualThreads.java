@@ -0,0 +1,81 @@
+package de.tungsten.tocs.net;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Stellt virtuelle Threads zur Verfgung, sofern die laufende JVM sie
+ * untersttzt (ab Java 21). Da TOCS mit einem lteren Sprachlevel bersetzt
+ * wird, werden die entsprechenden Methoden per Reflection aufgerufen.
+ * <p>
+ * Virtuelle Threads belegen keinen Thread des Betriebssystems, solange sie
+ * blockieren. Damit eignen sie sich fr den Lebenszyklus einer
+ * {@link AbstractConnection}, der fast die gesamte Zeit in <code>read()</code>
+ * oder in der {@link de.tungsten.tocs.engine.Lobby} wartet.
+ *
+ * @author tungsten
+ *
+ */
+public final class VirtualThreads {
+
+	private VirtualThreads() {}
+
+	/**
+	 * Gibt zurck, ob die laufende JVM virtuelle Threads untersttzt.
+	 *
+	 * @return	<code>true</code>, wenn virtuelle Threads erstellt werden
+	 * 			knnen, sonst <code>false</code>.
+	 */
+	public static boolean isSupported() {
+		try {
+			Thread.class.getMethod( "ofVirtual" );
+			return true;
+
+		} catch ( NoSuchMethodException e ) {
+			return false;
+		}
+	}
+
+	/**
+	 * Erstellt eine <code>ThreadFactory</code> fr virtuelle Threads. Die
+	 * Threads werden mit dem gegebenen Prfix und einer fortlaufenden Nummer
+	 * benannt.
+	 *
+	 * @param prefix	Der Prfix fr die Namen der Threads.
+	 * @return			Die <code>ThreadFactory</code>, oder <code>null</code>,
+	 * 					wenn virtuelle Threads nicht untersttzt werden.
+	 */
+	public static ThreadFactory newThreadFactory( String prefix ) {
+		try {
+			Object builder = Thread.class.getMethod( "ofVirtual" ).invoke( null );
+
+			Class<?> builderClass = Class.forName( "java.lang.Thread$Builder" );
+			Method name = builderClass.getMethod( "name", String.class, long.class );
+			Method factory = builderClass.getMethod( "factory" );
+
+			builder = name.invoke( builder, prefix, 0L );
+			return (ThreadFactory) factory.invoke( builder );
+
+		} catch ( Exception e ) {
+			return null;
+		}
+	}
+
+	/**
+	 * Erstellt einen <code>ExecutorService</code>, der jede bergebene
+	 * Aufgabe in einem neuen virtuellen Thread ausfhrt.
+	 *
+	 * @return	Der <code>ExecutorService</code>, oder <code>null</code>, wenn
+	 * 			virtuelle Threads nicht untersttzt werden.
+	 */
+	public static ExecutorService newPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+
+		} catch ( Exception e ) {
+			return null;
+		}
+	}
+}
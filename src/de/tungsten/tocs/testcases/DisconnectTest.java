@@ -0,0 +1,112 @@
+package de.tungsten.tocs.testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.net.Connection;
+import de.tungsten.tocs.net.ConnectionRegistry;
+import de.tungsten.tocs.net.IConnection;
+
+/**
+ * Verbindet viele Clients ber Loopback mit dem Server und trennt sie alle
+ * gleichzeitig wieder, jeweils in einem anderen Abschnitt des Lebenszyklus
+ * (Nickname, Team, Lobby). Danach mssen alle Threads der Verbindungen
+ * beendet und alle Verbindungen aus der {@link ConnectionRegistry} entfernt
+ * sein. Die CPU-Zeit im anschlieenden Leerlauf wird nur ausgegeben, da sie
+ * von der Umgebung abhngt.
+ *
+ * @author tungsten
+ *
+ */
+public class DisconnectTest {
+
+	private static final int CLIENTS = 200;
+
+	@Test
+	public void test() throws Exception {
+
+		Configuration.getInstance().loadFromFile( "tocs.conf" );
+
+		InetAddress loopback = InetAddress.getLoopbackAddress();
+		ServerSocket server = new ServerSocket( 0, CLIENTS, loopback );
+
+		List<Socket> clients = new ArrayList<Socket>();
+		List<Thread> threads = new ArrayList<Thread>();
+		ConnectionRegistry registry = new ConnectionRegistry( 0 );
+
+		for (int i = 0; i < CLIENTS; i++) {
+
+			Socket client = new Socket( loopback, server.getLocalPort() );
+			clients.add( client );
+
+			Connection connection = new Connection( server.accept() );
+			registry.register( connection );
+
+			Thread thread = new Thread( connection, "DisconnectTest-" + i );
+			thread.start();
+			threads.add( thread );
+
+			// Ein Drittel bleibt beim Nickname, eins beim Team, eins kommt in die Lobby
+			String input = "";
+			if ( i % 3 > 0 ) input += "player" + i + IConnection.MESSAGE_SEPARATOR;
+			if ( i % 3 > 1 ) input += "t" + IConnection.MESSAGE_SEPARATOR;
+			client.getOutputStream().write( input.getBytes( "UTF-8" ) );
+		}
+
+		// Mens und Lobby erreichen lassen
+		Thread.sleep( 500 );
+
+		for (int i = 0; i < CLIENTS; i++) {
+
+			// Jeder zweite Client setzt die Verbindung zurck, statt sie zu schlieen
+			if ( i % 2 == 0 )
+				clients.get( i ).setSoLinger( true, 0 );
+			clients.get( i ).close();
+		}
+
+		for (Thread thread : threads) {
+			thread.join( 5000 );
+			assertFalse( thread.getName() + " is still running", thread.isAlive() );
+		}
+
+		server.close();
+
+		// Alle Verbindungen haben sich beim Schlieen aus der Registry entfernt
+		assertEquals( registry.getCounts().toString(), 0, registry.size() );
+		for (int count : registry.getCounts().values())
+			assertEquals( 0, count );
+
+		// Kein Thread einer Verbindung luft noch
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+			assertFalse( thread.getName() + " is still running", thread.getName().startsWith( "DisconnectTest-" ) );
+
+		long before = cpuTime();
+		Thread.sleep( 1000 );
+		long idle = cpuTime() - before;
+
+		System.out.println( "CPU time during 1s idle after " + CLIENTS + " disconnects: " + (idle / 1000000) + " ms" );
+	}
+
+	private long cpuTime() {
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		long sum = 0;
+		for (long id : threads.getAllThreadIds()) {
+			long time = threads.getThreadCpuTime( id );
+			if ( time > 0 ) sum += time;
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,141 @@
+package de.tungsten.tocs.testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.net.EventLoop;
+import de.tungsten.tocs.net.FrameCodec;
+import de.tungsten.tocs.net.NIOConnection;
+
+/**
+ * Prft, dass ein Fehler beim Bedienen einer Verbindung nur diese Verbindung
+ * schliet und der {@link EventLoop} die brigen Verbindungen weiter bedient.
+ *
+ * @author tungsten
+ *
+ */
+public class EventLoopTest {
+
+	/**
+	 * Eine Verbindung, deren Spieler sofort gespawnt wird.
+	 */
+	private static class InGameConnection extends NIOConnection {
+
+		InGameConnection( SocketChannel channel, EventLoop eventLoop, Executor engine ) {
+			super( channel, eventLoop, engine );
+		}
+
+		@Override
+		public void play() {
+			super.play();
+		}
+	}
+
+	/**
+	 * Fhrt die Befehle sofort aus, bis {@link #rejecting} gesetzt wird.
+	 */
+	private static class Engine implements Executor {
+
+		volatile boolean rejecting = false;
+
+		@Override
+		public void execute( Runnable command ) {
+
+			if ( rejecting )
+				throw new RejectedExecutionException( "engine shut down" );
+			command.run();
+		}
+	}
+
+	@Test
+	public void testFailingConnection() throws Exception {
+
+		Configuration.getInstance().loadFromFile( "tocs.conf" );
+
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+
+		EventLoop loop = new EventLoop( 0 );
+		loop.start();
+
+		try {
+			// Die Engine nimmt die Befehle dieses Spielers nicht an, der EventLoop
+			// bekommt beim Empfangen eine RuntimeException
+			Engine engine = new Engine();
+			Socket failingClient = connect( server );
+			InGameConnection failing = new InGameConnection( accept( server ), loop, engine );
+			loop.register( failing );
+			failing.play();
+			engine.rejecting = true;
+
+			failingClient.getOutputStream().write( bytes( FrameCodec.encode( "look" ) ) );
+			failingClient.getOutputStream().flush();
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while ( failing.isOpen() && System.currentTimeMillis() < deadline )
+				Thread.sleep( 10 );
+			assertFalse( failing.isOpen() );
+			assertTrue( loop.isAlive() );
+
+			// Eine andere Verbindung wird weiter bedient
+			Socket client = connect( server );
+			NIOConnection connection = new NIOConnection( accept( server ), loop, engine );
+			loop.register( connection );
+
+			connection.write( "hello" );
+			connection.flush();
+
+			byte[] expected = bytes( FrameCodec.encode( "hello" ) );
+			byte[] received = new byte[ expected.length ];
+			client.setSoTimeout( 5000 );
+			InputStream in = client.getInputStream();
+			for (int read = 0; read < received.length; ) {
+				int count = in.read( received, read, received.length - read );
+				assertTrue( count > 0 );
+				read += count;
+			}
+			assertEquals( new String( expected, "ISO-8859-1" ), new String( received, "ISO-8859-1" ) );
+
+			connection.close();
+			failingClient.close();
+			client.close();
+
+		} finally {
+			loop.shutDown();
+			server.close();
+		}
+	}
+
+	private static Socket connect( ServerSocketChannel server ) throws IOException {
+		return new Socket( InetAddress.getLoopbackAddress(), server.socket().getLocalPort() );
+	}
+
+	private static SocketChannel accept( ServerSocketChannel server ) throws IOException {
+
+		SocketChannel channel = server.accept();
+		channel.configureBlocking( false );
+		return channel;
+	}
+
+	private static byte[] bytes( ByteBuffer frame ) {
+
+		byte[] bytes = new byte[ frame.remaining() ];
+		frame.duplicate().get( bytes );
+		return bytes;
+	}
+}
@@ -0,0 +1,77 @@
+package de.tungsten.tocs.testcases;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import de.tungsten.tocs.engine.nodes.Node;
+import de.tungsten.tocs.engine.nodes.Room;
+
+/**
+ * Misst den Speicherbedarf einer groen Map. Die meisten Knoten einer Map (Wnde,
+ * Kisten, Schlssel, ...) haben weder Attribute noch Kind-Knoten. Frher wurden fr
+ * jeden Knoten trotzdem eine <code>HashMap</code> fr die Attribute und ein
+ * Namens-Index mit einer <code>ConcurrentHashMap</code> erstellt, heute erst bei
+ * Bedarf.
+ * <p>
+ * Zum Vergleich wird gemessen, wie viel Speicher diese beiden Objekte (ohne
+ * Eintrge) pro Knoten belegen wrden.
+ *
+ * @author tungsten
+ *
+ */
+public class FootprintBenchmark {
+
+	private static final int ROOMS	= 1000;
+	private static final int ITEMS	= 100;
+
+	@Test
+	public void test() {
+
+		long before = usedHeap();
+
+		Room root = new Room( new String[] { "world" }, "The world.", false, false );
+		for (int r = 0; r < ROOMS; r++) {
+
+			Room room = new Room( root, new String[] { "room" + r }, "A room.", false, false );
+			room.setAttribute( Node.HIDDEN, false );
+
+			// Dieselben Namen in jedem Raum, wie bei den Wnden und Kisten einer Map
+			for (int i = 0; i < ITEMS; i++)
+				new Node( room, new String[] { "item" + i, "thing" }, "An item." );
+		}
+
+		long nodes = 1 + ROOMS + (long) ROOMS * ITEMS;
+		double perNode = ( usedHeap() - before ) / (double) nodes;
+		assertEquals( ROOMS, root.getChildren().size() );
+
+		// Was frher zustzlich fr jeden Knoten erstellt wurde
+		before = usedHeap();
+		List<Object> eager = new ArrayList<Object>();
+		for (int i = 0; i < nodes; i++) {
+			eager.add( new HashMap<String, Object>() );
+			eager.add( new ConcurrentHashMap<Integer, Object>() );
+		}
+		double eagerPerNode = ( usedHeap() - before ) / (double) nodes;
+		assertEquals( 2 * nodes, eager.size() );
+
+		System.out.printf( "%d nodes: %.0f bytes/node, eager attribute map and name index would add %.0f bytes/node (%.0f%%)%n",
+				nodes, perNode, eagerPerNode, 100 * eagerPerNode / perNode );
+
+		// Erst nach der Messung freigeben
+		root.getDescription();
+	}
+
+	private static long usedHeap() {
+
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
@@ -1,38 +1,555 @@
 package de.tungsten.tocs.testcases;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.Stack;
+
+import org.junit.Before;
 import org.junit.Test;
 
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.config.StringType;
+import de.tungsten.tocs.engine.Lexicon;
+import de.tungsten.tocs.engine.nodes.DoorDirection;
+import de.tungsten.tocs.engine.parsing.Grammar;
+import de.tungsten.tocs.engine.parsing.IParser;
 import de.tungsten.tocs.engine.parsing.Instruction;
+import de.tungsten.tocs.engine.parsing.InstructionCache;
 import de.tungsten.tocs.engine.parsing.InstructionParser;
+import de.tungsten.tocs.engine.parsing.NodeLocation;
+import de.tungsten.tocs.engine.parsing.NodeLocationSet;
+import de.tungsten.tocs.engine.parsing.Parsers;
+import de.tungsten.tocs.engine.parsing.Preposition;
+import de.tungsten.tocs.net.IPlayerConnection;
 
 public class InstructionParserTest {
 
+	private static final int ITERATIONS = 100000;
+
 	private class TestInstructionParser extends InstructionParser {
 		
 		public Instruction parsePublic( String input ) {
 			return createInstruction( input );
 		}
+		
+		public Instruction parseUncached( String input ) {
+			return parseInstruction( input );
+		}
+	}
+	
+	/**
+	 * Die Implementierung von <code>createInstruction()</code> vor dem
+	 * <code>InstructionLexer</code>, mit fnf Ersetzungen und
+	 * <code>split()</code>. Die neue Implementierung muss mit der
+	 * eingebauten Grammatik genau dieselben Ergebnisse liefern.
+	 * <p>
+	 * Einzige nderung: Die Identifier vor einer Prposition kommen in das
+	 * Argument der vorherigen Prposition, nicht in das der neuen.
+	 */
+	private static class LegacyInstructionParser {
+
+		private static final String[] ARTICLES = new String[] 
+				{ "the", "this", "my", "these", "those", "a", "an", "some", "one" };
+
+		public Instruction createInstruction( String input ) {
+
+			final String DELIMITER = "and";
+
+			String verb = null;
+			Set<NodeLocation> prefix = new HashSet<NodeLocation>();
+			EnumMap<Preposition, Set<NodeLocation>> arguments = new EnumMap<Preposition, Set<NodeLocation>>(Preposition.class);
+			arguments.put( Preposition.TO, new HashSet<NodeLocation>() );
+			arguments.put( Preposition.WITH, new HashSet<NodeLocation>() );
+
+			input = input.replace( ",", " " + DELIMITER + " " );
+			input = input.replace( "as well as", DELIMITER );
+			input = input.replace( ";", "" );
+			input = input.replace( ".", "" );
+			input = input.replace( "!", "" );
+			input = input.trim();
+
+			String[] words = input.split("\\s+");
+		
+			boolean prepositionMode = false;
+
+			boolean verbRecognized = true;
+
+			Set<String> lastObjects = new HashSet<String>();
+			List<Set<String>> lastLocation = new ArrayList<Set<String>>();
+		
+			String lastIdentifier = "";
+		
+			Preposition lastPreposition = null;
+		
+			for (String word : words) {
+
+				if ( verbRecognized ) {
+					verb = word;
+					verbRecognized = false;
+					continue;
+				}
+
+				boolean isSmallWord = false;
+				for (String article : ARTICLES) {
+					if ( article.equalsIgnoreCase( word ) ) {
+						isSmallWord = true;
+						break;
+					}
+				}
+			
+				if ( !isSmallWord ) {
+
+					Preposition currentPreposition = Preposition.fromString( word );
+			
+					if ( word.equalsIgnoreCase( DELIMITER ) ) {
+
+						lastObjects.add( lastIdentifier );
+						lastIdentifier = "";
+					
+					} else if ( currentPreposition == null ) {
+
+						lastIdentifier += " " + word;
+					
+					} else if ( currentPreposition == Preposition.OF ) {
+
+						lastObjects.add( lastIdentifier );
+						lastLocation.add( lastObjects );
+						lastObjects = new HashSet<String>();
+						lastIdentifier = "";
+					
+					} else {
+
+						lastObjects.add( lastIdentifier );
+						lastLocation.add( lastObjects );
+					
+						if ( prepositionMode ) {
+
+							Set<NodeLocation> nodeLocations = createNodeLocations( lastLocation );
+							if ( arguments.get( lastPreposition ) != null )
+								arguments.get( lastPreposition ).addAll( nodeLocations );
+							else
+								arguments.put( lastPreposition, nodeLocations );
+						
+							lastPreposition = currentPreposition;
+
+						} else {
+						
+							prepositionMode = true;
+							prefix = createNodeLocations( lastLocation );
+							lastPreposition = currentPreposition;
+
+						}
+
+						lastIdentifier = "";
+						lastObjects = new HashSet<String>();
+						lastLocation = new ArrayList<Set<String>>();
+					
+					}
+				} 
+			}
+
+			lastObjects.add( lastIdentifier );
+			lastLocation.add( lastObjects );
+		
+			Set<NodeLocation> nodeLocations = createNodeLocations( lastLocation );
+			if ( prepositionMode ) {
+				if ( arguments.get( lastPreposition ) != null )
+					arguments.get( lastPreposition ).addAll( nodeLocations );
+				else 
+					arguments.put( lastPreposition, nodeLocations );
+			} else
+				prefix = nodeLocations;
+
+			Instruction result = new Instruction(verb, prefix, arguments);
+			return result;
+		}
+
+		private Set<NodeLocation> createNodeLocations( List<Set<String>> locations ) {
+
+			Stack<Set<String>> reverseStack = new Stack<Set<String>>();
+			for (Set<String> set : locations) 
+				reverseStack.push( set );
+		
+			locations.clear();
+			while ( !reverseStack.isEmpty() )
+				locations.add( reverseStack.pop() );
+
+			Set<NodeLocation> nodeLocations = new HashSet<NodeLocation>();
+		
+			Stack<Set<List<String>>> stack = new Stack<Set<List<String>>>();
+			for (Set<String> set : locations) {
+
+				Set<List<String>> element = new HashSet<List<String>>();
+				for (String current : set) {
+					List<String> list = new ArrayList<String>();
+					list.add( current.trim() );
+				
+					element.add( list );
+				}
+
+				stack.push( element );
+			}
+
+			while ( stack.size() > 1 ) {
+
+				Set<List<String>> set01 = stack.pop(),
+								  set02 = stack.pop();
+
+				Set<List<String>> result = new HashSet<List<String>>();
+
+				for (List<String> element02 : set02) {
+					for (List<String> element01 : set01) {
+
+						List<String> list = new ArrayList<String>();
+						list.addAll( element02 );
+						list.addAll( element01 );
+					
+						result.add( list );
+					}
+				}
+			
+				stack.push( result );	
+			} 
+
+			for (List<String> list : stack.pop()) {
+				nodeLocations.add( new NodeLocation( list ) );
+			}
+		
+			return nodeLocations;
+		}
+
+	}
+	
+	private static final String[] TEST_INPUTS = new String[] {
+		"open book",
+		"open the book",
+		"open the book and the box",
+		"open the book with the knife",
+		"open the book in the box with the knife",
+		"open the book in the box with the knife on the desk",
+		"open the book and the chest in the box on the desk"
+	};
+	
+	// Randflle der Ersetzungen, die der Lexer genauso behandeln muss
+	private static final String[] EDGE_INPUTS = new String[] {
+		"",
+		"   ",
+		"look",
+		"  Look  AT the Bear!  ",
+		"take the knife, the key and the rope.",
+		"put the ball as well as the knife on the table into the box!",
+		"x,as well asy",
+		",look",
+		"take ,",
+		"take a,,b",
+		"take the Knife AND THE box",
+		"go north; go south.",
+		"as. well as",
+		"as well as well as",
+		"\u0001look\u0001",
+		"take a b\u0001 c",
+		"put the ball onto the table with the key of the chest, and the rope",
+		"the",
+		"and and",
+		"take the\tknife\r\nfrom the box"
+	};
+	
+	@Before
+	public void setUp() {
+		Configuration.getInstance().loadFromFile( "tocs.conf" );
 	}
 	
 	@Test
 	public void testCreateInstruction() {
 
-		final String[] testInputs = new String[] {
-			"open book",
-			"open the book",
-			"open the book and the box",
-			"open the book with the knife",
-			"open the book in the box with the knife",
-			"open the book in the box with the knife on the desk",
-			"open the book and the chest in the box on the desk"
-		};
-		
 		TestInstructionParser parser = new TestInstructionParser();
-		for (String input : testInputs) {
+		for (String input : TEST_INPUTS) {
 			
 			Instruction instruction = parser.parsePublic( input );
 			System.out.println( instruction );
 		}
 	}
-
+	
+	@Test
+	public void testSameResults() {
+		
+		TestInstructionParser parser = new TestInstructionParser();
+		LegacyInstructionParser legacy = new LegacyInstructionParser();
+		
+		List<String> inputs = new ArrayList<String>();
+		Collections.addAll( inputs, TEST_INPUTS );
+		Collections.addAll( inputs, EDGE_INPUTS );
+		
+		for (String input : inputs) {
+			assertEquals( input, 
+					canonical( legacy.createInstruction( input ) ), 
+					canonical( parser.parsePublic( input ) ) );
+			
+			// Unter derselben normalisierten Eingabe gespeichert
+			assertEquals( input, 
+					canonical( legacy.createInstruction( input ) ), 
+					canonical( parser.parsePublic( " \t" + input + "\r\n" ) ) );
+		}
+	}
+	
+	@Test
+	public void testGrammar() {
+		
+		TestInstructionParser parser = new TestInstructionParser();
+		
+		// Jedes Argument bekommt die Identifier nach seiner Prposition
+		Instruction put = parser.parseUncached( "put the ball onto the table with the key of the chest" );
+		assertEquals( "[ball]", sorted( put.getPrefix() ).toString() );
+		assertEquals( "[table]", sorted( put.getArgument( Preposition.TO ) ).toString() );
+		assertEquals( "[chest-> key]", sorted( put.getArgument( Preposition.WITH ) ).toString() );
+		
+		// Die Grammatik-Datei definiert zustzliche Verben. Sie wird wie vom Server
+		// ber die Konfiguration gefunden.
+		String path = (String) Configuration.getInstance().getValue(
+				Grammar.CONFIG_GRAMMAR, 
+				StringType.getInstance(), 
+				"" );
+		assertTrue( !path.isEmpty() );
+		Grammar file = Grammar.loadFromFile( path );
+		assertEquals( "take", file.getKeyword( "Grab" ) );
+		assertEquals( null, file.getKeyword( "take" ) );
+		
+		Grammar grammar = new Grammar();
+		grammar.addArticle( "der" );
+		grammar.setDelimiter( "und" );
+		grammar.addAlias( "&" );
+		grammar.addPreposition( "mit", Preposition.WITH );
+		grammar.addPreposition( "von", Preposition.OF );
+		grammar.addVerb( "nimm", "take" );
+		
+		Grammar previous = Grammar.getInstance();
+		Grammar.setInstance( grammar );
+		try {
+			
+			Instruction instruction = parser.parsePublic( "Nimm der Ball und Seil & Messer von der Kiste mit der Zange" );
+			assertEquals( "take", instruction.getVerb() );
+			assertEquals( "[Kiste-> Ball, Kiste-> Messer, Kiste-> Seil]", sorted( instruction.getPrefix() ).toString() );
+			assertEquals( "[Zange]", sorted( instruction.getArgument( Preposition.WITH ) ).toString() );
+			
+			// Die eingebauten Wrter gelten nicht mehr
+			instruction = parser.parsePublic( "take the ball and the rope with the knife" );
+			assertEquals( "[the ball and the rope with the knife]", sorted( instruction.getPrefix() ).toString() );
+			
+			try {
+				grammar.addArticle( "die" );
+				fail( "A compiled grammar could be modified." );
+			} catch ( IllegalStateException e ) {}
+			
+		} finally {
+			Grammar.setInstance( previous );
+		}
+	}
+	
+	@Test
+	public void testCache() {
+		
+		TestInstructionParser parser = new TestInstructionParser();
+		InstructionCache cache = InstructionCache.getInstance();
+		cache.clear();
+		
+		long hits = cache.getHits(), misses = cache.getMisses();
+		
+		Instruction first = parser.parsePublic( "take the key" );
+		assertSame( first, parser.parsePublic( "take the key" ) );
+		assertSame( first, parser.parsePublic( "  take the key " ) );
+		assertNotSame( first, parser.parsePublic( "take the Key" ) );
+		
+		assertEquals( hits + 2, cache.getHits() );
+		assertEquals( misses + 2, cache.getMisses() );
+		
+		// Geteilte Instructions drfen nicht verndert werden knnen
+		try {
+			first.getPrefix().add( new NodeLocation( new ArrayList<String>() ) );
+			fail( "The prefix of a cached instruction could be modified." );
+		} catch ( UnsupportedOperationException e ) {}
+		try {
+			first.getArguments().get( Preposition.TO ).clear();
+			fail( "The arguments of a cached instruction could be modified." );
+		} catch ( UnsupportedOperationException e ) {}
+		
+		// Ein neuer Parser leert den Cache
+		Parsers.getInstance().addParser( new IParser() {
+			@Override
+			public String[] getKeywords() {
+				return new String[] { "testcache" };
+			}
+			@Override
+			public void parse( String input, IPlayerConnection connection ) {}
+		} );
+		assertEquals( 0, cache.size() );
+		assertNotSame( first, parser.parsePublic( "take the key" ) );
+		
+		System.out.println( "InstructionCache: " + cache );
+	}
+	
+	@Test
+	public void testBoundedExpansion() {
+		
+		// "take a0 and b0 and c0 of a1 and b1 and c1 of ...", 3^LEVELS Pfade
+		final int LEVELS = 14;
+		StringBuilder input = new StringBuilder( "take" );
+		for (int level = 0; level < LEVELS; level++) {
+			if ( level > 0 ) input.append( " of" );
+			input.append( " a" + level + " and b" + level + " and c" + level );
+		}
+		
+		TestInstructionParser parser = new TestInstructionParser();
+		
+		long start = System.nanoTime();
+		Instruction instruction = parser.parsePublic( input.toString() );
+		
+		int count = 0;
+		for (NodeLocation location : instruction.getPrefix()) {
+			assertTrue( location.getTarget().endsWith( "0" ) );
+			count++;
+		}
+		long time = System.nanoTime() - start;
+		
+		System.out.println( String.format( "%d levels: %d of %.0f paths expanded in %d s",
+				LEVELS, count, Math.pow( 3, LEVELS ), time / 1000 ) );
+		assertEquals( NodeLocationSet.MAX_LOCATIONS, count );
+		assertEquals( count, instruction.getPrefix().size() );
+		
+		// Hinzugefgte NodeLocations sind wie in jeder Set nur einmal enthalten
+		NodeLocationSet set = new NodeLocationSet( Collections.<Set<String>>singletonList( Collections.singleton( "box" ) ) );
+		NodeLocation key = new NodeLocation( Collections.singletonList( "key" ) );
+		assertTrue( set.add( key ) );
+		assertTrue( !set.add( key ) );
+		assertEquals( 2, set.size() );
+		
+		count = 0;
+		for (NodeLocation location : set) {
+			assertTrue( location != null );
+			count++;
+		}
+		assertEquals( set.size(), count );
+	}
+	
+	@Test
+	public void testLexicon() {
+		
+		Lexicon lexicon = Lexicon.getInstance();
+		
+		// Prpositionen und Richtungen sind immer eingetragen
+		assertTrue( lexicon.lookup( "onto" ) != Lexicon.UNKNOWN );
+		assertEquals( "onto", lexicon.getWord( lexicon.lookup( "onto" ) ) );
+		assertSame( Preposition.TO, Preposition.fromString( "Onto" ) );
+		assertSame( Preposition.OF, Preposition.fromString( "from" ) );
+		assertSame( null, Preposition.fromString( "beyond" ) );
+		assertSame( DoorDirection.NORTHWEST, DoorDirection.fromString( "northwest" ) );
+		assertSame( null, DoorDirection.fromString( "North" ) );
+		
+		// Auch mit trkischer Sprache wird "IN" nicht zu "in" ohne i-Punkt
+		Locale locale = Locale.getDefault();
+		Locale.setDefault( new Locale( "tr", "TR" ) );
+		try {
+			assertSame( Preposition.OF, Preposition.fromString( "IN" ) );
+		} finally {
+			Locale.setDefault( locale );
+		}
+		
+		// Eintragen ist idempotent, Nachschlagen trgt nichts ein
+		int size = lexicon.size();
+		assertEquals( lexicon.intern( "onto" ), lexicon.lookup( "onto" ) );
+		assertEquals( Lexicon.UNKNOWN, lexicon.lookup( "xyzzy-not-a-word" ) );
+		assertEquals( size, lexicon.size() );
+	}
+	
+	@Test
+	public void testAllocations() {
+		
+		final TestInstructionParser parser = new TestInstructionParser();
+		final LegacyInstructionParser legacy = new LegacyInstructionParser();
+		
+		// Zweimal, damit die zweite Messung nach dem Aufwrmen zhlt
+		long before = 0, after = 0;
+		for (int round = 0; round < 2; round++) {
+			
+			before = allocatedBytes( new Runnable() {
+				@Override
+				public void run() {
+					for (String input : TEST_INPUTS)
+						legacy.createInstruction( input );
+				}
+			} );
+			after = allocatedBytes( new Runnable() {
+				@Override
+				public void run() {
+					for (String input : TEST_INPUTS)
+						parser.parseUncached( input );
+				}
+			} );
+		}
+		
+		if ( before < 0 ) {
+			System.out.println( "Allocation measurement is not supported by this JVM, skipped." );
+			return;
+		}
+		
+		long commands = (long) ITERATIONS * TEST_INPUTS.length;
+		System.out.println( String.format( "createInstruction: %d bytes/command before, %d bytes/command after",
+				before / commands, after / commands ) );
+		assertTrue( after < before );
+	}
+	
+	/**
+	 * Fhrt die gegebene Aufgabe {@link #ITERATIONS} mal aus und gibt zurck, wie viele
+	 * Bytes der aktuelle Thread dabei allokiert hat, oder -1, wenn die JVM das nicht
+	 * messen kann.
+	 */
+	private long allocatedBytes( Runnable task ) {
+		
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if ( !(threads instanceof com.sun.management.ThreadMXBean) )
+			return -1;
+		
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+		long id = Thread.currentThread().getId();
+		
+		long start = bean.getThreadAllocatedBytes( id );
+		for (int i = 0; i < ITERATIONS; i++)
+			task.run();
+		return bean.getThreadAllocatedBytes( id ) - start;
+	}
+	
+	/**
+	 * Eine vergleichbare Darstellung einer Instruction. Die Mengen werden sortiert, da
+	 * die Reihenfolge der <code>HashSet</code>s zufllig ist.
+	 */
+	private String canonical( Instruction instruction ) {
+		
+		String result = instruction.getVerb() + " | " + sorted( instruction.getPrefix() );
+		for (Entry<Preposition, Set<NodeLocation>> argument : instruction.getArguments().entrySet())
+			result += " | " + argument.getKey() + " " + sorted( argument.getValue() );
+		
+		return result;
+	}
+	
+	private List<String> sorted( Set<NodeLocation> locations ) {
+		
+		List<String> result = new ArrayList<String>();
+		for (NodeLocation location : locations)
+			result.add( location.toString() );
+		
+		Collections.sort( result );
+		return result;
+	}
 }
@@ -0,0 +1,107 @@
+package de.tungsten.tocs.testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.engine.nodes.Node;
+import de.tungsten.tocs.engine.nodes.NodeTable;
+import de.tungsten.tocs.engine.nodes.Player;
+
+public class NodeTableTest {
+
+	@Before
+	public void setUp() {
+		Configuration.getInstance().loadFromFile( "tocs.conf" );
+	}
+
+	@Test
+	public void testConcurrentIDs() throws InterruptedException {
+
+		final int THREADS = 8, NODES = 20000;
+
+		final NodeTable table = NodeTable.getInstance();
+		final Node[][] created = new Node[ THREADS ][ NODES ];
+		final CountDownLatch start = new CountDownLatch( 1 );
+		int before = table.getAllocated();
+
+		// Spieler und andere Knoten werden gleichzeitig von mehreren Threads erstellt
+		Thread[] threads = new Thread[ THREADS ];
+		for (int t = 0; t < THREADS; t++) {
+			final int index = t;
+			threads[t] = new Thread( new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < NODES; i++)
+						created[ index ][ i ] = i % 2 == 0
+								? new Node( new String[] { "table-node" }, "A node." )
+								: new Player( "table-player", null );
+				}
+			} );
+			threads[t].start();
+		}
+
+		long time = System.nanoTime();
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+		time = System.nanoTime() - time;
+
+		// Player legt beim Erstellen eigene Knoten an (Inventar, Hnde), die IDs sind
+		// also nur insgesamt lckenlos
+		int after = table.getAllocated();
+		BitSet seen = new BitSet();
+		for (Node[] nodes : created) {
+			for (Node node : nodes) {
+
+				int id = node.getID();
+				assertTrue( id >= before && id < after );
+				assertTrue( "duplicate ID " + id, !seen.get( id ) );
+				seen.set( id );
+
+				assertSame( node, table.get( id ) );
+			}
+		}
+		for (int id = before; id < after; id++)
+			assertTrue( table.get( id ) != null );
+
+		System.out.printf( "%d threads created %d nodes (%d IDs) in %.1f ms%n",
+				THREADS, THREADS * NODES, after - before, time / 1e6 );
+	}
+
+	@Test
+	public void testRelease() {
+
+		NodeTable table = NodeTable.getInstance();
+
+		Node player = new Node( new String[] { "table-owner" }, "An owner." );
+		Node item = new Node( player, new String[] { "table-item" }, "An item." );
+		assertEquals( item.getID(), player.getID() + 1 );
+		assertSame( item, table.get( item.getID() ) );
+
+		// Mit allem, was er trgt, austragen
+		table.release( player );
+		assertNull( table.get( player.getID() ) );
+		assertNull( table.get( item.getID() ) );
+
+		// IDs werden nicht wieder vergeben
+		Node next = new Node( new String[] { "table-next" }, "Another node." );
+		assertTrue( next.getID() > item.getID() );
+
+		assertNull( table.get( -1 ) );
+		assertNull( table.get( table.getAllocated() ) );
+	}
+}
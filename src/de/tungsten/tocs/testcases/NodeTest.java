@@ -0,0 +1,458 @@
+package de.tungsten.tocs.testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.engine.Lexicon;
+import de.tungsten.tocs.engine.nodes.AttributeKey;
+import de.tungsten.tocs.engine.nodes.INodeVisitor;
+import de.tungsten.tocs.engine.nodes.IPredicate;
+import de.tungsten.tocs.engine.nodes.IValueCalculator;
+import de.tungsten.tocs.engine.nodes.Node;
+import de.tungsten.tocs.engine.nodes.OpenableNode;
+import de.tungsten.tocs.engine.nodes.Player;
+import de.tungsten.tocs.engine.parsing.NodeLocator;
+
+public class NodeTest {
+
+	private static final int ITERATIONS = 100000;
+
+	@Test
+	public void testNameIndex() {
+
+		Node root = new Node();
+		Node room = new Node( root, new String[] { "hall", "corridor" }, "A hall." );
+		Node box = new Node( room, new String[] { "box", "crate" }, "A box." );
+		Node ball = new Node( box, new String[] { "ball", "sphere" }, "A ball." );
+		Node table = new Node( room, new String[] { "table" }, "A table." );
+
+		// Alle Namen, nicht nur der Identifier, mit Suchtiefe
+		assertSame( ball, NodeLocator.findSubNode( "sphere", room, -1 ) );
+		assertSame( ball, NodeLocator.findSubNode( "sphere", root, -1 ) );
+		assertSame( null, NodeLocator.findSubNode( "sphere", room, 1 ) );
+		assertSame( box, NodeLocator.findSubNode( "crate", room, 1 ) );
+		assertSame( room, NodeLocator.findSubNode( "corridor", room, 0 ) );
+		assertSame( null, NodeLocator.findSubNode( "xyzzy-not-a-name", room, -1 ) );
+
+		// Bewegte Knoten werden in allen bergeordneten Indizes nachgefhrt
+		ball.move( table );
+		assertSame( null, NodeLocator.findSubNode( "ball", box, -1 ) );
+		assertSame( ball, NodeLocator.findSubNode( "ball", table, 1 ) );
+		assertSame( ball, NodeLocator.findSubNode( "sphere", room, 2 ) );
+
+		// Ganze Teilbume werden mitbewegt
+		Node other = new Node( root, new String[] { "kitchen" }, "A kitchen." );
+		table.move( other );
+		assertSame( null, NodeLocator.findSubNode( "ball", room, -1 ) );
+		assertSame( ball, NodeLocator.findSubNode( "ball", other, -1 ) );
+		assertSame( ball, NodeLocator.findSubNode( "ball", root, -1 ) );
+
+		room.removeChild( box );
+		assertSame( null, NodeLocator.findSubNode( "crate", root, -1 ) );
+
+		// Identifier gehen anderen Namen vor, dann der nchste Knoten
+		Node crate = new Node( table, new String[] { "crate" }, "Another crate." );
+		new Node( other, new String[] { "chest", "crate" }, "A chest." );
+		assertSame( crate, NodeLocator.findSubNode( "crate", other, -1 ) );
+		Node near = new Node( other, new String[] { "ball" }, "Another ball." );
+		assertSame( near, NodeLocator.findSubNode( "ball", other, -1 ) );
+
+		// Geschlossene Knoten nehmen nichts auf, der Index bleibt unverndert
+		OpenableNode closed = new OpenableNode( other, new String[] { "safe" }, "A safe.", true );
+		closed.addChild( new Node( new String[] { "gold" }, "Some gold." ) );
+		assertSame( null, NodeLocator.findSubNode( "gold", root, -1 ) );
+	}
+
+	@Test
+	public void testChildren() {
+
+		Configuration.getInstance().loadFromFile( "tocs.conf" );
+
+		// Inventar und Hnde wurden frher doppelt hinzugefgt
+		Player player = new Player( "tester", null );
+		assertEquals( 2, player.getChildren().size() );
+		assertSame( player.getInventory(), player.getChildren().get( 0 ) );
+		assertSame( player.getHands(), player.getChildren().get( 1 ) );
+
+		Node room = new Node( new String[] { "hall" }, "A hall." );
+		Node other = new Node( new String[] { "kitchen" }, "A kitchen." );
+		List<Node> items = new ArrayList<Node>();
+		for (int i = 0; i < 10000; i++)
+			items.add( new Node( room, new String[] { "item" + i }, "An item." ) );
+
+		// Jeden zweiten Knoten bewegen, die Reihenfolge bleibt erhalten
+		long start = System.nanoTime();
+		for (int i = 0; i < items.size(); i += 2)
+			items.get( i ).move( other );
+		double move = ( System.nanoTime() - start ) / ( items.size() / 2.0 );
+
+		assertEquals( items.size() / 2, room.getChildren().size() );
+		assertEquals( items.size() / 2, other.getChildren().size() );
+		int i = 1;
+		for (Node child : room.getChildren()) {
+			assertSame( items.get( i ), child );
+			assertSame( room, child.getParent() );
+			i += 2;
+		}
+
+		// Knoten, die keine Kind-Knoten sind, werden nicht entfernt
+		room.removeChild( items.get( 0 ) );
+		assertSame( other, items.get( 0 ).getParent() );
+		assertEquals( items.size() / 2, other.getChildren().size() );
+
+		try {
+			room.getChildren().add( items.get( 0 ) );
+			fail( "getChildren() must be read-only" );
+		} catch ( UnsupportedOperationException e ) {}
+
+		System.out.printf( "%d children: %.1f ns/move%n", items.size(), move );
+	}
+
+	@Test
+	public void testConcurrentMoves() throws InterruptedException {
+
+		final int ROOMS = 4, BOXES = 8, ITEMS = 200, THREADS = 8, MOVES = 20000;
+
+		final Node root = new Node();
+		final Node[] rooms = new Node[ ROOMS ];
+		for (int i = 0; i < ROOMS; i++)
+			rooms[i] = new Node( root, new String[] { "stress-room" + i }, "A room." );
+
+		// Kisten werden zwischen Rumen und in andere Kisten bewegt, Gegenstnde
+		// zwischen Rumen und Kisten, auch whrend die Kiste selbst bewegt wird
+		final OpenableNode[] boxes = new OpenableNode[ BOXES ];
+		for (int i = 0; i < BOXES; i++)
+			boxes[i] = new OpenableNode( rooms[ i % ROOMS ], new String[] { "stress-box" + i }, "A box.", false );
+
+		final Node[] items = new Node[ ITEMS ];
+		for (int i = 0; i < ITEMS; i++)
+			items[i] = new Node( rooms[ i % ROOMS ], new String[] { "stress-item" + i }, "An item." );
+
+		final AtomicInteger elsewhere = new AtomicInteger();
+		Thread[] threads = new Thread[ THREADS ];
+		for (int t = 0; t < THREADS; t++) {
+			final Random random = new Random( t );
+			threads[t] = new Thread( new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < MOVES; i++) {
+
+						int kind = random.nextInt( 10 );
+						if ( kind == 0 ) {
+							// Auch in Kisten, die in dieser Kiste liegen, was abgelehnt
+							// werden muss
+							Node target = random.nextBoolean() 
+									? rooms[ random.nextInt( ROOMS ) ] 
+									: boxes[ random.nextInt( BOXES ) ];
+							boxes[ random.nextInt( BOXES ) ].move( target );
+						} else if ( kind == 1 ) {
+							// Geschlossene Kisten nehmen nichts auf
+							OpenableNode box = boxes[ random.nextInt( BOXES ) ];
+							if ( random.nextBoolean() ) box.close(); else box.open();
+						} else {
+							Node item = items[ random.nextInt( ITEMS ) ];
+							Node target = kind < 6 
+									? rooms[ random.nextInt( ROOMS ) ] 
+									: boxes[ random.nextInt( BOXES ) ];
+							item.move( target );
+							if ( item.getParent() != target ) elsewhere.incrementAndGet();
+						}
+					}
+				}
+			} );
+			threads[t].start();
+		}
+
+		// Hngt ein Thread, gab es einen Deadlock (oder einen Zyklus)
+		for (Thread thread : threads) {
+			thread.join( 60000 );
+			assertTrue( "deadlock", !thread.isAlive() );
+		}
+
+		// Kein Knoten liegt in seinem eigenen Teilbaum, alle fhren zur Wurzel
+		for (Node box : boxes) {
+			int depth = 0;
+			for (Node current = box; current != root; current = current.getParent()) {
+				assertTrue( "cycle", current != null && depth++ <= BOXES + 1 );
+			}
+		}
+
+		// Jeder Knoten befindet sich genau einmal im Baum, bei seinem Parent-Knoten
+		final Map<Node, Integer> seen = new HashMap<Node, Integer>();
+		root.traverse( new INodeVisitor() {
+			@Override
+			public boolean visit( Node node, int depth ) {
+
+				Integer count = seen.get( node );
+				seen.put( node, count == null ? 1 : count + 1 );
+
+				int size = 0;
+				for (Node child : node.getChildren()) {
+					assertSame( node, child.getParent() );
+					size++;
+				}
+				assertEquals( node.getChildren().size(), size );
+				return true;
+			}
+		}, -1 );
+
+		assertEquals( 1 + ROOMS + BOXES + ITEMS, seen.size() );
+		for (Integer count : seen.values())
+			assertEquals( 1, (int) count );
+
+		// Auch die Namens-Indizes sind aktuell
+		for (Node item : items) {
+			assertSame( item, NodeLocator.findSubNode( item.getIdentifier(), root, -1 ) );
+			assertSame( item, NodeLocator.findSubNode( item.getIdentifier(), item.getParent(), 1 ) );
+		}
+		for (OpenableNode box : boxes) {
+			assertSame( box, NodeLocator.findSubNode( box.getIdentifier(), root, -1 ) );
+			for (Node child : box.getChildren())
+				assertSame( child, NodeLocator.findSubNode( child.getIdentifier(), box.getParent(), 2 ) );
+		}
+
+		System.out.printf( "%d threads, %d moves each, %d items not at their target afterwards (closed box or moved again)%n",
+				THREADS, MOVES, elsewhere.get() );
+	}
+
+	/**
+	 * Ein Knoten, der beim nchsten {@link #addChild(Node)} anhlt, bis er
+	 * freigegeben wird.
+	 */
+	private static class BlockingNode extends Node {
+
+		final CountDownLatch entered = new CountDownLatch( 1 );
+		final CountDownLatch release = new CountDownLatch( 1 );
+		volatile boolean block = false;
+
+		BlockingNode( Node parent, String name ) {
+			super( parent, new String[] { name }, "A box." );
+		}
+
+		@Override
+		public Node addChild( Node child ) {
+
+			if ( block ) {
+				block = false;
+				entered.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return super.addChild( child );
+		}
+	}
+
+	@Test
+	public void testContainerCycle() throws InterruptedException {
+
+		// A in R1 enthlt D, B in R2 enthlt C
+		Node root = new Node();
+		Node r1 = new Node( root, new String[] { "cycle-room1" }, "A room." );
+		Node r2 = new Node( root, new String[] { "cycle-room2" }, "A room." );
+		final Node a = new Node( r1, new String[] { "cycle-a" }, "A box." );
+		final Node b = new Node( r2, new String[] { "cycle-b" }, "A box." );
+		final BlockingNode c = new BlockingNode( b, "cycle-c" );
+		final Node d = new Node( a, new String[] { "cycle-d" }, "A box." );
+
+		// A in C bewegen und anhalten, nachdem geprft wurde, dass C nicht in A liegt
+		c.block = true;
+		Thread first = new Thread( new Runnable() {
+			@Override
+			public void run() {
+				a.move( c );
+			}
+		} );
+		first.start();
+		assertTrue( c.entered.await( 5, TimeUnit.SECONDS ) );
+
+		// Gleichzeitig B in D bewegen: Die Sperren berschneiden sich nicht, aber
+		// zusammen wrde ein Zyklus A -> C -> B -> D -> A entstehen
+		Thread second = new Thread( new Runnable() {
+			@Override
+			public void run() {
+				b.move( d );
+			}
+		} );
+		second.start();
+		second.join( 200 );
+
+		c.release.countDown();
+		first.join( 5000 );
+		second.join( 5000 );
+		assertTrue( !first.isAlive() && !second.isAlive() );
+
+		// Die zweite Bewegung wurde abgelehnt
+		assertSame( c, a.getParent() );
+		assertSame( r2, b.getParent() );
+		for (Node node : new Node[] { a, b, c, d }) {
+			int depth = 0;
+			for (Node current = node; current != root; current = current.getParent())
+				assertTrue( "cycle", current != null && depth++ < 10 );
+		}
+	}
+
+	@Test
+	public void testDescriptionCache() {
+
+		Configuration.getInstance().loadFromFile( "tocs.conf" );
+
+		Node room = new Node( new String[] { "hall" }, "A hall." );
+		Node box = new Node( room, new String[] { "box" }, "A box." );
+		Node other = new Node( new String[] { "kitchen" }, "A kitchen." );
+
+		assertEquals( "A hall.\n\t\tbox", room.getDescription() );
+		assertEquals( "A hall.\n\t\t\tbox", room.getDescription( 2 ) );
+		assertEquals( "A hall.", room.getDescription( 0 ) );
+
+		// Wiederverwendet, bis sich etwas ndert
+		long hits = Node.getDescriptionCacheHits();
+		String first = room.getDescription();
+		assertSame( first, room.getDescription() );
+		assertEquals( hits + 1, Node.getDescriptionCacheHits() );
+
+		Node ball = new Node( room, new String[] { "ball" }, "A ball." );
+		assertEquals( "A hall.\n\t\tbox\n\t\tball", room.getDescription() );
+
+		// move() ndert beide Parent-Knoten
+		assertEquals( "A kitchen.", other.getDescription() );
+		box.move( other );
+		assertEquals( "A hall.\n\t\tball", room.getDescription() );
+		assertEquals( "A kitchen.\n\t\tbox", other.getDescription() );
+
+		room.removeChild( ball );
+		assertEquals( "A hall.", room.getDescription() );
+
+		// Ein IValueCalculator wird jedes Mal aufgerufen, die Kind-Knoten nicht
+		final AtomicInteger calls = new AtomicInteger();
+		other.getAttributes().put( Node.ATTR_DESCRIPTION_HANDLER, new IValueCalculator<String>() {
+			@Override
+			public String calculate( Node target ) {
+				return "Call " + calls.incrementAndGet() + ".";
+			}
+		} );
+		assertEquals( "Call 1.\n\t\tbox", other.getDescription() );
+		assertEquals( "Call 2.\n\t\tbox", other.getDescription() );
+		other.getAttributes().remove( Node.ATTR_DESCRIPTION_HANDLER );
+		assertEquals( "A kitchen.\n\t\tbox", other.getDescription() );
+
+		Player player = new Player( "tester", null );
+		player.getDescription();
+		player.setSkin( "A tester." );
+		assertEquals( "A tester.", player.getDescription( 0 ) );
+
+		// "look" in einem vollen Raum
+		Node busy = new Node( new String[] { "market" }, "A market." );
+		for (int i = 0; i < 200; i++)
+			new Node( busy, new String[] { "stand" + i }, "A stand." );
+
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS / 100; i++) {
+			new Node( busy, new String[] { "visitor" }, "A visitor." ).move( null );
+			busy.getDescription();
+		}
+		double miss = ( System.nanoTime() - start ) / (double) ( ITERATIONS / 100 );
+
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++)
+			busy.getDescription();
+		double hit = ( System.nanoTime() - start ) / (double) ITERATIONS;
+
+		System.out.printf( "200 children, one added and removed each time: %.1f ns/describe, cached: %.1f ns/describe, %d hits, %d misses%n",
+				miss, hit, Node.getDescriptionCacheHits(), Node.getDescriptionCacheMisses() );
+	}
+
+	@Test
+	public void testAttributes() {
+
+		Node cat = new Node( new String[] { "cat" }, "A cat." );
+		assertTrue( cat.getAttributes().isEmpty() );
+		assertSame( null, cat.getAttribute( Node.HIDDEN ) );
+
+		// Typisierte Schlssel
+		cat.setAttribute( Node.HIDDEN, true );
+		assertEquals( Boolean.TRUE, cat.getAttribute( Node.HIDDEN ) );
+		assertEquals( Boolean.TRUE, cat.getAttribute( Node.ATTR_HIDDEN ) );
+
+		AttributeKey<Integer> lives = AttributeKey.register( "test-lives", Integer.class );
+		assertSame( lives, AttributeKey.register( "test-lives", Integer.class ) );
+		cat.setAttribute( lives, 9 );
+		assertEquals( 9, (int) cat.getAttribute( lives ) );
+
+		// Die Map ist eine Sicht auf dieselben Attribute, unbekannte Namen werden registriert
+		Map<String, Object> attributes = cat.getAttributes();
+		attributes.put( "test-sleeping", true );
+		assertEquals( Boolean.TRUE, cat.getAttribute( "test-sleeping" ) );
+		assertEquals( Object.class, AttributeKey.forName( "test-sleeping" ).getType() );
+		assertEquals( 3, attributes.size() );
+		assertEquals( 9, attributes.get( "test-lives" ) );
+
+		try {
+			attributes.put( "test-lives", "nine" );
+			fail( "the type of a registered attribute must be checked" );
+		} catch ( ClassCastException e ) {}
+
+		try {
+			AttributeKey.register( "test-lives", String.class );
+			fail( "a name must not be registered for two types" );
+		} catch ( IllegalArgumentException e ) {}
+
+		// Entfernen ber Map, Iterator und null
+		attributes.remove( "test-sleeping" );
+		cat.setAttribute( lives, null );
+		assertEquals( 1, attributes.size() );
+		Iterator<Map.Entry<String, Object>> iterator = attributes.entrySet().iterator();
+		assertEquals( Node.ATTR_HIDDEN, iterator.next().getKey() );
+		iterator.remove();
+		assertTrue( attributes.isEmpty() );
+		assertSame( null, cat.getAttribute( Node.HIDDEN ) );
+	}
+
+	@Test
+	public void testNameIndexPerformance() {
+
+		Node room = new Node( new String[] { "hall" }, "A hall." );
+		for (int i = 0; i < 1000; i++)
+			new Node( room, new String[] { "item" + i, "thing" }, "An item." );
+
+		final int nameID = Lexicon.getInstance().lookup( "item999" );
+		IPredicate<Node> predicate = new IPredicate<Node>() {
+			@Override
+			public boolean matches( Node node ) {
+				return node.hasName( nameID );
+			}
+		};
+
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS / 100; i++) {
+			List<Node> result = room.find( predicate, 1 );
+			assertEquals( 1, result.size() );
+		}
+		double walk = ( System.nanoTime() - start ) / (double) ( ITERATIONS / 100 );
+
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++)
+			assertEquals( "item999", NodeLocator.findSubNode( "item999", room, 1 ).getIdentifier() );
+		double index = ( System.nanoTime() - start ) / (double) ITERATIONS;
+
+		System.out.printf( "1000 nodes, tree walk: %.1f ns/lookup, name index: %.1f ns/lookup (%.1fx)%n",
+				walk, index, walk / index );
+	}
+}
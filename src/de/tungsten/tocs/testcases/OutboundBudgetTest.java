@@ -0,0 +1,159 @@
+package de.tungsten.tocs.testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.net.AbstractConnection;
+import de.tungsten.tocs.net.FrameCodec;
+
+/**
+ * Prft das Budget fr noch nicht gesendete Nachrichten einer Verbindung. Der
+ * Spieler empfngt in beiden Tests nichts, {@link AbstractConnection#flush()}
+ * bleibt also im bertragen hngen.
+ *
+ * @author tungsten
+ *
+ */
+public class OutboundBudgetTest {
+
+	private static final int BUDGET			= 1000;
+	private static final int SLOW_TIMEOUT	= 200;
+
+	/**
+	 * Ein Spieler, der nichts empfngt, bis {@link #release} ausgelst wird.
+	 */
+	private static class StalledConnection extends AbstractConnection {
+
+		final CountDownLatch release = new CountDownLatch( 1 );
+		volatile boolean open = true;
+
+		@Override
+		protected void transmit( ByteBuffer[] frames ) {
+
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			long bytes = 0;
+			for (ByteBuffer frame : frames)
+				bytes += frame.limit();
+			sent( frames.length, bytes );
+		}
+
+		@Override
+		protected String receive() {
+			return null;
+		}
+
+		@Override
+		protected void closeTransport() {
+			open = false;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+	}
+
+	private StalledConnection connection;
+
+	@Before
+	public void setUp() throws IOException {
+
+		// Kleines Budget und kurzes Timeout, werden beim Erstellen der Verbindung gelesen
+		File config = File.createTempFile( "budget", ".conf" );
+		FileWriter writer = new FileWriter( config );
+		writer.write( AbstractConnection.CONFIG_OUTBOUND_BUDGET + " = " + BUDGET + "\n" );
+		writer.write( AbstractConnection.CONFIG_SLOW_CLIENT_POLICY + " = " + AbstractConnection.SLOW_CLIENT_DISCONNECT + "\n" );
+		writer.write( AbstractConnection.CONFIG_SLOW_CLIENT_TIMEOUT + " = " + SLOW_TIMEOUT + "\n" );
+		writer.close();
+
+		Configuration.getInstance().loadFromFile( config.getPath() );
+		connection = new StalledConnection();
+		Configuration.getInstance().loadFromFile( "tocs.conf" );
+		config.delete();
+	}
+
+	@After
+	public void tearDown() {
+
+		connection.release.countDown();
+		connection.close();
+	}
+
+	@Test
+	public void testConcurrentWriters() throws InterruptedException {
+
+		final int THREADS = 8, WRITES = 200;
+		final String message = "0123456789012345678901234567890123456789";
+		final int size = FrameCodec.encode( message ).limit();
+
+		final AtomicLong accepted = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch( 1 );
+
+		Thread[] threads = new Thread[ THREADS ];
+		for (int t = 0; t < THREADS; t++) {
+			threads[t] = new Thread( new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < WRITES; i++)
+						if ( connection.write( message ) )
+							accepted.addAndGet( size );
+				}
+			} );
+			threads[t].start();
+		}
+
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+
+		// Es wurde nichts gesendet, alle angenommenen Nachrichten warten noch
+		assertTrue( "accepted " + accepted.get() + " bytes", accepted.get() <= BUDGET );
+		assertEquals( accepted.get(), connection.getQueuedBytes() );
+		assertEquals( accepted.get() / size, connection.getQueuedMessages() );
+		assertEquals( THREADS * WRITES - accepted.get() / size, connection.getDroppedMessages() );
+	}
+
+	@Test
+	public void testStalledClient() throws InterruptedException {
+
+		StringBuilder message = new StringBuilder();
+		for (int i = 0; i < BUDGET / 2; i++)
+			message.append( 'x' );
+
+		// Die zweite Nachricht passt nicht mehr ins Budget
+		assertTrue( connection.write( message.toString() ) );
+		assertFalse( connection.write( message.toString() ) );
+		assertEquals( 1, connection.getDroppedMessages() );
+
+		// Danach wird nichts mehr geschrieben, die Verbindung muss trotzdem
+		// geschlossen werden
+		long deadline = System.currentTimeMillis() + 10 * SLOW_TIMEOUT;
+		while ( connection.isOpen() && System.currentTimeMillis() < deadline )
+			Thread.sleep( 10 );
+
+		assertFalse( connection.isOpen() );
+	}
+}
@@ -0,0 +1,136 @@
+package de.tungsten.tocs.testcases;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.engine.parsing.IParser;
+import de.tungsten.tocs.engine.parsing.Parsers;
+import de.tungsten.tocs.engine.parsing.instances.DescribeParser;
+import de.tungsten.tocs.engine.parsing.instances.GoParser;
+import de.tungsten.tocs.engine.parsing.instances.PutParser;
+import de.tungsten.tocs.engine.parsing.instances.TakeParser;
+import de.tungsten.tocs.net.IPlayerConnection;
+
+/**
+ * Vergleicht die Auswahl des zustndigen Parsers ber die Tabelle in
+ * {@link Parsers#findParser(String)} mit der frheren Schleife, die fr jede
+ * Eingabe alle Parser und deren Schlsselwrter durchlaufen hat. Zustzlich
+ * zu den echten Parsern werden weitere Parser mit erfundenen Verben
+ * hinzugefgt, wie es bei einem greren Wortschatz der Fall wre.
+ *
+ * @author tungsten
+ *
+ */
+public class ParserDispatchBenchmark {
+
+	private static final int EXTRA_PARSERS	= 50;
+	private static final int ITERATIONS		= 1050000;
+
+	private static final String[] INPUTS = {
+		"go north",
+		"take the knife",
+		"put the knife into the box",
+		"look",
+		"describe the bear",
+		"Walk east",
+		"dance"
+	};
+
+	private class DummyParser implements IParser {
+
+		private final String verb;
+
+		public DummyParser( String verb ) {
+			this.verb = verb;
+		}
+
+		@Override
+		public String[] getKeywords() {
+			return new String[] { verb, verb + "s" };
+		}
+
+		@Override
+		public void parse( String input, IPlayerConnection connection ) {}
+	}
+
+	@Test
+	public void test() {
+
+		Configuration.getInstance().loadFromFile( "tocs.conf" );
+
+		Set<IParser> set = new HashSet<IParser>();
+		set.add( new GoParser() );
+		set.add( new TakeParser() );
+		set.add( new PutParser() );
+		set.add( new DescribeParser() );
+		for (int i = 0; i < EXTRA_PARSERS; i++)
+			set.add( new DummyParser( "verb" + i ) );
+
+		Parsers parsers = Parsers.getInstance();
+		for (IParser parser : set)
+			parsers.addParser( parser );
+
+		// Beide Varianten mssen dieselben Parser whlen
+		for (String input : INPUTS) {
+			IParser expected = loop( set, input );
+			IParser actual = parsers.findParser( input );
+			assertEquals( input, expected == null ? null : expected.getClass(), actual == null ? null : actual.getClass() );
+		}
+
+		// Aufwrmen
+		measureLoop( set );
+		measureTable( parsers );
+
+		long loop = measureLoop( set );
+		long table = measureTable( parsers );
+
+		System.out.println( String.format( "%d parsers, loop: %.1f ns/input, table: %.1f ns/input (%.1fx)",
+				set.size(), (double) loop / ITERATIONS, (double) table / ITERATIONS, (double) loop / table ) );
+	}
+
+	private long measureLoop( Set<IParser> set ) {
+
+		int found = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			if ( loop( set, INPUTS[i % INPUTS.length] ) != null ) found++;
+		}
+		long time = System.nanoTime() - start;
+
+		// Verhindert, dass der JIT die Schleife wegoptimiert; nur "dance" passt nicht
+		assertEquals( ITERATIONS / INPUTS.length * (INPUTS.length - 1), found );
+		return time;
+	}
+
+	private long measureTable( Parsers parsers ) {
+
+		int found = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			if ( parsers.findParser( INPUTS[i % INPUTS.length] ) != null ) found++;
+		}
+		long time = System.nanoTime() - start;
+
+		assertEquals( ITERATIONS / INPUTS.length * (INPUTS.length - 1), found );
+		return time;
+	}
+
+	/**
+	 * Die Auswahl, wie sie <code>Parsers.parse()</code> frher vorgenommen hat.
+	 */
+	private IParser loop( Set<IParser> set, String input ) {
+
+		for (IParser parser : set) {
+			for (String keyword : parser.getKeywords()) {
+				if ( input.toLowerCase().startsWith( keyword.toLowerCase() ) )
+					return parser;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,182 @@
+package de.tungsten.tocs.testcases;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.engine.Team;
+import de.tungsten.tocs.engine.nodes.DoorDirection;
+import de.tungsten.tocs.engine.nodes.Node;
+import de.tungsten.tocs.engine.nodes.Player;
+import de.tungsten.tocs.engine.nodes.Room;
+import de.tungsten.tocs.engine.parsing.Parsers;
+import de.tungsten.tocs.engine.parsing.instances.DescribeParser;
+import de.tungsten.tocs.engine.parsing.instances.GoParser;
+import de.tungsten.tocs.engine.parsing.instances.PutParser;
+import de.tungsten.tocs.engine.parsing.instances.TakeParser;
+import de.tungsten.tocs.net.IPlayerConnection;
+
+/**
+ * Misst, wie viele Eingaben pro Sekunde {@link Parsers#parse(String, IPlayerConnection)}
+ * mit 1, 2, 4, ... Threads bis zur Anzahl der Prozessoren bearbeitet. Jeder Thread
+ * steuert einen eigenen Spieler, der in zwei eigenen Rumen einen Gegenstand nimmt,
+ * ablegt und beschreibt, alle Rume hngen aber am selben Root-Knoten.
+ * <p>
+ * Zum Vergleich wird jede Messung auch mit einer globalen Sperre um jeden Aufruf
+ * wiederholt, wie sie <code>parse()</code> frher hatte.
+ *
+ * @author tungsten
+ *
+ */
+public class ParsersScalingBenchmark {
+
+	private static final long MEASURE_MILLIS	= 1000;
+	private static final int MAX_THREADS		= 16;
+
+	private static final Object GLOBAL_LOCK = new Object();
+
+	private class DummyConnection implements IPlayerConnection {
+
+		private final Player player;
+
+		public DummyConnection( Player player ) {
+			this.player = player;
+		}
+
+		@Override
+		public boolean write( String message ) {
+			return true;
+		}
+
+		@Override
+		public String read() {
+			return "";
+		}
+
+		@Override
+		public Player getPlayer() {
+			return player;
+		}
+	}
+
+	@Test
+	public void test() throws InterruptedException {
+
+		Configuration.getInstance().loadFromFile( "tocs.conf" );
+
+		Parsers parsers = Parsers.getInstance();
+		parsers.addParser( new GoParser() );
+		parsers.addParser( new DescribeParser() );
+		parsers.addParser( new TakeParser() );
+		parsers.addParser( new PutParser() );
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		int maxThreads = Math.min( MAX_THREADS, Math.max( 2, cores ) );
+		System.out.println( cores + " processors available." );
+
+		// Aufwrmen, damit der JIT nicht die erste Messung verflscht
+		for (int i = 0; i < 3; i++) {
+			measure( 1, false );
+			measure( 1, true );
+		}
+
+		double base = 0;
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+
+			double free = measure( threads, false );
+			double locked = measure( threads, true );
+			if ( threads == 1 ) base = free;
+
+			System.out.println( String.format( "%2d threads: %10.0f instructions/s (%.2fx), with global lock %10.0f instructions/s",
+					threads, free, free / base, locked ) );
+		}
+	}
+
+	private double measure( int threads, final boolean globalLock ) throws InterruptedException {
+
+		// Eine neue Welt pro Messung, damit Suchen nicht mit der Zeit lnger dauern
+		Node root = new Room( new String[] { "world" }, "The world.", false, false );
+
+		final Parsers parsers = Parsers.getInstance();
+		final AtomicBoolean running = new AtomicBoolean( true );
+		final CountDownLatch start = new CountDownLatch( 1 );
+		final long[] counts = new long[ threads ];
+
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+
+			// Jeder Spieler hat zwei eigene Rume und ein Messer
+			String suffix = String.valueOf( i );
+			Room hall = new Room( root, new String[] { "hall" + suffix }, "A hall.", false, false );
+			Room yard = new Room( root, new String[] { "yard" + suffix }, "A yard.", false, false );
+			hall.setAdjacentRoom( DoorDirection.NORTH, yard );
+			yard.setAdjacentRoom( DoorDirection.SOUTH, hall );
+			new Node( hall, new String[] { "knife" }, "A knife." );
+
+			Player player = new Player( "player" + suffix, Team.TERRORISTS );
+			player.move( hall );
+
+			final IPlayerConnection connection = new DummyConnection( player );
+			final String[] commands = {
+					"look",
+					"take the knife",
+					"go north",
+					"put the knife into the yard" + suffix,
+					"describe the knife",
+					"take the knife",
+					"go south",
+					"put the knife into the hall" + suffix
+			};
+
+			final int index = i;
+			Thread worker = new Thread( new Runnable() {
+				@Override
+				public void run() {
+
+					try {
+						start.await();
+					} catch ( InterruptedException e ) {
+						return;
+					}
+
+					long count = 0;
+					while ( running.get() ) {
+						for (String command : commands) {
+							if ( globalLock ) {
+								synchronized ( GLOBAL_LOCK ) {
+									parsers.parse( command, connection );
+								}
+							} else {
+								parsers.parse( command, connection );
+							}
+						}
+						count += commands.length;
+					}
+					counts[index] = count;
+				}
+			} );
+			worker.start();
+			workers.add( worker );
+		}
+
+		long begin = System.nanoTime();
+		start.countDown();
+		Thread.sleep( MEASURE_MILLIS );
+		running.set( false );
+
+		for (Thread worker : workers)
+			worker.join();
+
+		double seconds = (System.nanoTime() - begin) / 1000000000.0;
+
+		long sum = 0;
+		for (long count : counts)
+			sum += count;
+
+		return sum / seconds;
+	}
+}
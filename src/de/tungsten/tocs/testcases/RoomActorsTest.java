@@ -0,0 +1,275 @@
+package de.tungsten.tocs.testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.engine.RoomActors;
+import de.tungsten.tocs.engine.Team;
+import de.tungsten.tocs.engine.nodes.INodeVisitor;
+import de.tungsten.tocs.engine.nodes.Node;
+import de.tungsten.tocs.engine.nodes.NodeTable;
+import de.tungsten.tocs.engine.nodes.Player;
+import de.tungsten.tocs.engine.nodes.Room;
+import de.tungsten.tocs.net.IPlayerConnection;
+
+public class RoomActorsTest {
+
+	/**
+	 * Ein Raum, der sich merkt, welche Threads ihn verndert haben.
+	 */
+	private static class TrackingRoom extends Room {
+
+		final Set<String> threads = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+
+		TrackingRoom( Node parent, String name ) {
+			super( parent, new String[] { name }, "A room.", false, false );
+		}
+
+		@Override
+		public Node addChild( Node child ) {
+			threads.add( Thread.currentThread().getName() );
+			return super.addChild( child );
+		}
+
+		@Override
+		public void removeChild( Node child ) {
+			threads.add( Thread.currentThread().getName() );
+			super.removeChild( child );
+		}
+	}
+
+	@Test
+	public void testRoomThreads() throws InterruptedException {
+
+		final int ROOMS = 4, ITEMS = 100, THREADS = 8, MOVES = 5000;
+
+		final RoomActors actors = new RoomActors( 2 );
+
+		final Node root = new Node();
+		final TrackingRoom[] rooms = new TrackingRoom[ ROOMS ];
+		for (int i = 0; i < ROOMS; i++)
+			rooms[i] = new TrackingRoom( root, "actor-room" + i );
+
+		for (int i = 0; i < ITEMS; i++)
+			new Node( rooms[ i % ROOMS ], new String[] { "actor-item" + i }, "An item." );
+
+		final Node[] walkers = new Node[ THREADS ];
+		for (int i = 0; i < THREADS; i++)
+			walkers[i] = new Node( rooms[ i % ROOMS ], new String[] { "actor-walker" + i }, "A walker." );
+
+		for (TrackingRoom room : rooms)
+			room.threads.clear();
+
+		// Jeder Thread ist die Verbindung eines Spielers: er hebt Gegenstnde auf, legt
+		// sie ab und geht in andere Rume, die Gegenstnde nimmt er mit
+		final AtomicInteger arrived = new AtomicInteger();
+		final AtomicInteger lost = new AtomicInteger();
+		Thread[] threads = new Thread[ THREADS ];
+		for (int t = 0; t < THREADS; t++) {
+			final Node walker = walkers[t];
+			final Random random = new Random( t );
+			threads[t] = new Thread( new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < MOVES; i++) {
+
+						final Room target = rooms[ random.nextInt( ROOMS ) ];
+						final boolean drop = random.nextBoolean();
+						actors.run( walker, new Runnable() {
+							@Override
+							public void run() {
+
+								Node room = walker.getParent();
+								if ( drop && walker.getChildren().size() > 0 ) {
+									walker.getChildren().get( 0 ).move( room );
+								} else {
+									for (Node child : room.getChildren()) {
+										if ( child.getIdentifier().startsWith( "actor-item" ) ) {
+											child.move( walker );
+											break;
+										}
+									}
+								}
+
+								actors.move( walker, target, new Runnable() {
+									@Override
+									public void run() {
+										if ( walker.getParent() == target ) arrived.incrementAndGet();
+									}
+								} );
+							}
+						} );
+
+						// run() kehrt erst zurck, wenn der Spieler angekommen ist
+						if ( walker.getParent() != target ) lost.incrementAndGet();
+					}
+				}
+			} );
+			threads[t].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join( 60000 );
+			assertTrue( "deadlock", !thread.isAlive() );
+		}
+		actors.shutdown();
+
+		assertEquals( 0, lost.get() );
+		assertEquals( THREADS * MOVES, arrived.get() );
+
+		// Jeder Raum wurde nur vom Thread seiner Gruppe verndert
+		for (TrackingRoom room : rooms) {
+			assertEquals( room.threads.toString(), 1, room.threads.size() );
+			assertTrue( room.threads.iterator().next().endsWith( "-" + actors.getGroup( room ) ) );
+		}
+
+		// Jeder Knoten befindet sich genau einmal im Baum, bei seinem Parent-Knoten
+		final Map<Node, Integer> seen = new HashMap<Node, Integer>();
+		root.traverse( new INodeVisitor() {
+			@Override
+			public boolean visit( Node node, int depth ) {
+
+				Integer count = seen.get( node );
+				seen.put( node, count == null ? 1 : count + 1 );
+				for (Node child : node.getChildren())
+					assertSame( node, child.getParent() );
+				return true;
+			}
+		}, -1 );
+
+		assertEquals( 1 + ROOMS + ITEMS + THREADS, seen.size() );
+		for (Integer count : seen.values())
+			assertEquals( 1, (int) count );
+
+		System.out.printf( "%d groups, %d threads, %d moves each, %d handed off to another group%n",
+				actors.getGroupCount(), THREADS, MOVES, actors.getHandoffs() );
+	}
+
+	@Test
+	public void testDisconnectDuringHandoff() throws InterruptedException {
+
+		Configuration.getInstance().loadFromFile( "tocs.conf" );
+
+		final RoomActors actors = new RoomActors( 2 );
+		RoomActors.setInstance( actors );
+
+		// Zwei benachbarte IDs, also zwei verschiedene Gruppen
+		Node root = new Node();
+		Room from = new Room( root, new String[] { "handoff-from" }, "A room.", false, false );
+		final Room to = new Room( root, new String[] { "handoff-to" }, "A room.", false, false );
+		assertTrue( actors.getGroup( from ) != actors.getGroup( to ) );
+
+		final Player player = new Player( "handoff-player", Team.TERRORISTS );
+		IPlayerConnection connection = new IPlayerConnection() {
+			@Override
+			public boolean write( String message ) {
+				return true;
+			}
+
+			@Override
+			public String read() {
+				return null;
+			}
+
+			@Override
+			public Player getPlayer() {
+				return player;
+			}
+		};
+
+		EnumMap<Team, Node> spawnPoints = new EnumMap<Team, Node>( Team.class );
+		spawnPoints.put( Team.TERRORISTS, from );
+		de.tungsten.tocs.engine.maps.Map map = new de.tungsten.tocs.engine.maps.Map( "handoff", root, from, spawnPoints );
+
+		final CountDownLatch blocked = new CountDownLatch( 1 );
+		final CountDownLatch release = new CountDownLatch( 1 );
+		try {
+			map.spawn( connection );
+			assertSame( from, player.getParent() );
+
+			// Die Gruppe des Ziels ist beschftigt, der Spieler bleibt unterwegs
+			actors.execute( to, new Runnable() {
+				@Override
+				public void run() {
+					blocked.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			} );
+			blocked.await();
+
+			actors.execute( player, new Runnable() {
+				@Override
+				public void run() {
+					actors.move( player, to, null );
+				}
+			} );
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while ( player.getParent() != null && System.currentTimeMillis() < deadline )
+				Thread.sleep( 1 );
+			assertNull( player.getParent() );
+
+			// Der Spieler trennt die Verbindung, whrend er unterwegs ist
+			map.remove( connection );
+			release.countDown();
+
+			// Warten, bis die Gruppe des Ziels alles abgearbeitet hat
+			actors.run( to, new Runnable() {
+				@Override
+				public void run() {}
+			} );
+
+			assertNull( player.getParent() );
+			assertFalse( to.getChildren().contains( player ) );
+			assertNull( NodeTable.getInstance().get( player.getID() ) );
+
+		} finally {
+			release.countDown();
+			actors.shutdown();
+			RoomActors.setInstance( null );
+		}
+	}
+
+	@Test
+	public void testSharedMode() {
+
+		RoomActors actors = new RoomActors( 0 );
+		assertTrue( !actors.isEnabled() );
+
+		Node root = new Node();
+		Room room = new Room( root, new String[] { "shared-room" }, "A room.", false, false );
+		final Node node = new Node( new String[] { "shared-node" }, "A node." );
+		assertEquals( -1, actors.getGroup( room ) );
+
+		// Alles wird sofort im aktuellen Thread ausgefhrt
+		final AtomicInteger done = new AtomicInteger();
+		actors.move( node, room, new Runnable() {
+			@Override
+			public void run() {
+				done.incrementAndGet();
+			}
+		} );
+		assertSame( room, node.getParent() );
+		assertEquals( 1, done.get() );
+	}
+}
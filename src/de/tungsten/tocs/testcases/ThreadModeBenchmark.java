@@ -0,0 +1,111 @@
+package de.tungsten.tocs.testcases;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+
+import org.junit.Test;
+
+import de.tungsten.tocs.net.VirtualThreads;
+
+/**
+ * Vergleicht die Anzahl der Threads und den Speicherverbrauch, wenn 1.000
+ * bzw. 10.000 Spieler verbunden sind und ihr Lebenszyklus entweder in
+ * normalen oder in virtuellen Threads luft. Jeder simulierte Spieler wartet
+ * dabei, wie in der Lobby, blockierend darauf, dass er spawnen darf.
+ * <p>
+ * Virtuelle Threads werden nur gemessen, wenn die JVM sie untersttzt. Der
+ * Speicher wird auf dem Heap gemessen; die Stacks normaler Threads liegen
+ * auerhalb des Heaps und kommen pro Thread noch hinzu, die Stacks virtueller
+ * Threads liegen dagegen auf dem Heap.
+ *
+ * @author tungsten
+ *
+ */
+public class ThreadModeBenchmark {
+
+	private static final int[] PLAYER_COUNTS = { 1000, 10000 };
+
+	@Test
+	public void test() throws InterruptedException {
+
+		for (int players : PLAYER_COUNTS) {
+
+			measure( "platform", new ThreadFactory() {
+				@Override
+				public Thread newThread( Runnable r ) {
+					return new Thread( r );
+				}
+			}, players );
+
+			ThreadFactory virtual = VirtualThreads.newThreadFactory( "Benchmark-" );
+			if ( virtual != null )
+				measure( "virtual", virtual, players );
+			else
+				System.out.println( "virtual threads are not supported by this JVM, skipped." );
+		}
+	}
+
+	private void measure( String mode, ThreadFactory factory, int players ) throws InterruptedException {
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		long heapBefore = usedHeap();
+		int threadsBefore = threads.getThreadCount();
+
+		final CountDownLatch started = new CountDownLatch( players );
+		final CountDownLatch release = new CountDownLatch( 1 );
+
+		Runnable player = new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch ( InterruptedException e ) {}
+			}
+		};
+
+		List<Thread> running = new ArrayList<Thread>( players );
+		long start = System.nanoTime();
+
+		try {
+			for (int i = 0; i < players; i++) {
+				Thread thread = factory.newThread( player );
+				thread.start();
+				running.add( thread );
+			}
+			started.await();
+
+		} catch ( OutOfMemoryError e ) {
+			// Zu viele Threads fr dieses Betriebssystem
+			release.countDown();
+			System.out.println( mode + " threads, " + players + " players: failed after " + running.size()
+					+ " threads (" + e.getMessage() + ")." );
+			return;
+		}
+
+		long startMillis = (System.nanoTime() - start) / 1000000;
+		int threadsDuring = threads.getThreadCount();
+		long heapDuring = usedHeap();
+
+		release.countDown();
+		for (Thread thread : running)
+			thread.join();
+
+		System.out.println( mode + " threads, " + players + " players: "
+				+ (threadsDuring - threadsBefore) + " OS threads, "
+				+ ((heapDuring - heapBefore) / 1024) + " KiB heap, "
+				+ startMillis + " ms to start." );
+	}
+
+	private long usedHeap() {
+
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
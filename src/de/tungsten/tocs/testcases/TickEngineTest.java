@@ -0,0 +1,273 @@
+package de.tungsten.tocs.testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Flushable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.engine.TickEngine;
+import de.tungsten.tocs.engine.nodes.Player;
+import de.tungsten.tocs.net.AbstractConnection;
+import de.tungsten.tocs.net.IPlayerConnection;
+
+public class TickEngineTest {
+
+	/**
+	 * Eine Verbindung, die nur ihre Schreibvorgnge zhlt.
+	 */
+	private static class DummyConnection implements IPlayerConnection, Flushable {
+
+		private final Player player;
+		int flushes = 0;
+
+		DummyConnection( Player player ) {
+			this.player = player;
+		}
+
+		@Override
+		public Player getPlayer() {
+			return player;
+		}
+
+		@Override
+		public boolean write( String message ) {
+			return true;
+		}
+
+		@Override
+		public String read() {
+			return null;
+		}
+
+		@Override
+		public void flush() {
+			flushes++;
+		}
+	}
+
+	/**
+	 * Eine Verbindung, deren bertragung hngt, bis sie freigegeben wird, wie bei
+	 * einem Spieler mit vollem TCP-Sendepuffer.
+	 */
+	private static class StalledConnection extends AbstractConnection {
+
+		final CountDownLatch transmitting = new CountDownLatch( 1 );
+		final CountDownLatch release = new CountDownLatch( 1 );
+
+		@Override
+		protected void transmit( ByteBuffer[] frames ) {
+
+			transmitting.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			long bytes = 0;
+			for (ByteBuffer frame : frames)
+				bytes += frame.limit();
+			sent( frames.length, bytes );
+		}
+
+		@Override
+		protected String receive() {
+			return null;
+		}
+
+		@Override
+		protected void closeTransport() {}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+	}
+
+	private final List<String> log = Collections.synchronizedList( new ArrayList<String>() );
+
+	@Before
+	public void setUp() {
+		Configuration.getInstance().loadFromFile( "tocs.conf" );
+	}
+
+	private Runnable entry( final String text ) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				log.add( text );
+			}
+		};
+	}
+
+	@Test
+	public void testDeterministicBatch() {
+
+		TickEngine engine = new TickEngine( 20 );
+
+		// Die IDs steigen in der Reihenfolge der Erstellung
+		DummyConnection a = new DummyConnection( new Player( "a", null ) );
+		DummyConnection b = new DummyConnection( new Player( "b", null ) );
+		DummyConnection c = new DummyConnection( new Player( "c", null ) );
+
+		engine.submit( c, entry( "c1" ) );
+		engine.submit( a, entry( "a1" ) );
+		engine.submit( a, entry( "a2" ) );
+		engine.submit( c, entry( "c2" ) );
+		engine.submit( a, entry( "a3" ) );
+		engine.submit( b, entry( "b1" ) );
+
+		// Erst im nchsten Tick ausgefhrt
+		assertTrue( log.isEmpty() );
+		engine.tick();
+
+		// Reihum, nach ID sortiert, jeder Spieler in seiner eigenen Reihenfolge
+		assertEquals( Arrays.asList( "a1", "b1", "c1", "a2", "c2", "a3" ), log );
+		assertEquals( 6, engine.getCommandCount() );
+
+		// Ein flush() pro Spieler und Tick
+		assertEquals( 1, a.flushes );
+		assertEquals( 1, b.flushes );
+		assertEquals( 1, c.flushes );
+
+		// Ohne Befehle kein flush()
+		engine.tick();
+		assertEquals( 1, a.flushes );
+	}
+
+	@Test
+	public void testTimers() {
+
+		TickEngine engine = new TickEngine( 20 );
+		DummyConnection a = new DummyConnection( new Player( "a", null ) );
+
+		engine.schedule( entry( "t2" ), 2 );
+		engine.schedule( entry( "t1" ), 1 );
+		engine.schedule( entry( "t1b" ), 1 );
+		engine.submit( a, entry( "command" ) );
+
+		// Befehle vor Timern, gleich fllige Timer in der Reihenfolge des Einplanens
+		engine.tick();
+		assertEquals( Arrays.asList( "command", "t1", "t1b" ), log );
+
+		engine.tick();
+		assertEquals( Arrays.asList( "command", "t1", "t1b", "t2" ), log );
+		assertEquals( 2, engine.getTick() );
+	}
+
+	@Test
+	public void testDisabled() {
+
+		TickEngine engine = new TickEngine( 0 );
+		assertTrue( !engine.isEnabled() );
+
+		// Sofort im aktuellen Thread ausgefhrt
+		engine.submit( new DummyConnection( null ), entry( "now" ) );
+		assertEquals( Arrays.asList( "now" ), log );
+	}
+
+	/**
+	 * Fhrt einen Tick in einem eigenen Thread aus und prft, dass er nicht hngt.
+	 */
+	private void tickWithin( final TickEngine engine, long millis ) throws InterruptedException {
+
+		Thread thread = new Thread( new Runnable() {
+			@Override
+			public void run() {
+				engine.tick();
+			}
+		} );
+		thread.start();
+		thread.join( millis );
+		assertTrue( "tick blocked", !thread.isAlive() );
+	}
+
+	@Test
+	public void testStalledClient() throws InterruptedException {
+
+		TickEngine engine = new TickEngine( 20 );
+		final StalledConnection slow = new StalledConnection();
+		DummyConnection fast = new DummyConnection( new Player( "fast", null ) );
+
+		Runnable output = new Runnable() {
+			@Override
+			public void run() {
+				slow.write( "Some output." );
+			}
+		};
+
+		// Das Senden hngt, aber nicht im Thread der Engine
+		engine.submit( slow, output );
+		tickWithin( engine, 2000 );
+		assertTrue( slow.transmitting.await( 5, TimeUnit.SECONDS ) );
+
+		// Die nchsten Ticks laufen weiter, auch mit neuen Ausgaben des hngenden
+		// Spielers, whrend ein anderer Thread seine Sperre hlt
+		for (int i = 0; i < 3; i++) {
+			engine.submit( slow, output );
+			engine.submit( fast, entry( "fast" + i ) );
+			tickWithin( engine, 2000 );
+		}
+		assertEquals( Arrays.asList( "fast0", "fast1", "fast2" ), log );
+		assertEquals( 3, fast.flushes );
+
+		slow.release.countDown();
+	}
+
+	@Test
+	public void testLatency() throws InterruptedException {
+
+		final int RATE = 50, COMMANDS = 100;
+
+		final TickEngine engine = new TickEngine( RATE );
+		engine.start();
+
+		DummyConnection a = new DummyConnection( new Player( "a", null ) );
+		final CountDownLatch done = new CountDownLatch( COMMANDS );
+		final long[] latencies = new long[ COMMANDS ];
+		final long[] ticks = new long[ COMMANDS ];
+
+		for (int i = 0; i < COMMANDS; i++) {
+
+			final int index = i;
+			final long submitted = System.nanoTime();
+			engine.submit( a, new Runnable() {
+				@Override
+				public void run() {
+					latencies[ index ] = System.nanoTime() - submitted;
+					ticks[ index ] = engine.getTick();
+					done.countDown();
+				}
+			} );
+			Thread.sleep( 3 );
+		}
+
+		assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+		engine.shutdown();
+
+		// Die Befehle eines Spielers laufen in der Reihenfolge ihres Eintreffens, in
+		// aufsteigenden Ticks. Die Wartezeit hngt von der Auslastung des Rechners ab
+		// und wird nur grob geprft.
+		for (int i = 1; i < COMMANDS; i++)
+			assertTrue( ticks[ i - 1 ] <= ticks[ i ] );
+
+		Arrays.sort( latencies );
+		long period = TimeUnit.SECONDS.toNanos( 1 ) / RATE;
+		assertTrue( latencies[ COMMANDS / 2 ] <= 25 * period );
+
+		System.out.printf( "%d Hz: p50=%.1f ms, max=%.1f ms, %d ticks, %d overruns%n",
+				RATE, latencies[ COMMANDS / 2 ] / 1e6, latencies[ COMMANDS - 1 ] / 1e6,
+				engine.getTick(), engine.getOverruns() );
+	}
+}
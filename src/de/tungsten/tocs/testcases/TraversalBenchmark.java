@@ -0,0 +1,135 @@
+package de.tungsten.tocs.testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.tungsten.tocs.engine.nodes.INodeVisitor;
+import de.tungsten.tocs.engine.nodes.IPredicate;
+import de.tungsten.tocs.engine.nodes.Node;
+
+/**
+ * Vergleicht die Suche mit {@link Node#findFirst(IPredicate, int)}, die einen
+ * wiederverwendeten Stack verwendet und beim ersten Treffer abbricht, mit der
+ * frheren rekursiven Suche, die fr jede Ebene eine Liste erstellt und alle
+ * Treffer sammelt, auch wenn nur der erste verwendet wird.
+ * <p>
+ * Der Baum ist ein vollstndiger Binrbaum. Gesucht wird ein Knoten in der
+ * Mitte der untersten Ebene, der erste Treffer liegt also etwa in der Mitte
+ * der Suche.
+ *
+ * @author tungsten
+ *
+ */
+public class TraversalBenchmark {
+
+	private static final int LEVELS		= 14;
+	private static final int ITERATIONS	= 200;
+	private static final int CHAIN		= 2000;
+
+	/**
+	 * Die rekursive Implementierung von <code>Node.find()</code> vor
+	 * {@link Node#traverse(INodeVisitor, int)}.
+	 */
+	private static List<Node> legacyFind( Node node, IPredicate<Node> predicate, int depth ) {
+
+		List<Node> result = new ArrayList<Node>();
+
+		if ( predicate.matches( node ) ) result.add( node );
+
+		if ( depth == 0 ) return result;
+		else {
+
+			for (Node child : node.getChildren()) {
+				result.addAll( legacyFind( child, predicate, depth - 1 ) );
+			}
+
+			return result;
+		}
+	}
+
+	private static Node build( Node parent, int level, String path ) {
+
+		Node node = new Node( parent, new String[] { "n" + path }, "A node." );
+		if ( level < LEVELS ) {
+			build( node, level + 1, path + "0" );
+			build( node, level + 1, path + "1" );
+		}
+		return node;
+	}
+
+	@Test
+	public void test() {
+
+		Node root = build( null, 0, "" );
+
+		// Gesucht wird der erste Knoten der untersten Ebene in der rechten Hlfte
+		final String target = "n1";
+		IPredicate<Node> predicate = new IPredicate<Node>() {
+			@Override
+			public boolean matches( Node node ) {
+				return node.getIdentifier().startsWith( target )
+						&& node.getIdentifier().length() == LEVELS + 1;
+			}
+		};
+
+		// Beide Varianten mssen denselben Knoten finden
+		Node expected = legacyFind( root, predicate, -1 ).get( 0 );
+		assertSame( expected, root.findFirst( predicate, -1 ) );
+		assertEquals( legacyFind( root, predicate, -1 ), root.find( predicate, -1 ) );
+		assertSame( null, root.findFirst( predicate, LEVELS - 1 ) );
+
+		// Aufwrmen
+		for (int i = 0; i < ITERATIONS; i++) {
+			legacyFind( root, predicate, -1 );
+			root.findFirst( predicate, -1 );
+		}
+
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++)
+			legacyFind( root, predicate, -1 ).get( 0 );
+		double legacy = ( System.nanoTime() - start ) / 1000.0 / ITERATIONS;
+		long legacyBytes = ( allocatedBytes() - bytes ) / ITERATIONS;
+
+		bytes = allocatedBytes();
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++)
+			root.findFirst( predicate, -1 );
+		double visitor = ( System.nanoTime() - start ) / 1000.0 / ITERATIONS;
+		long visitorBytes = ( allocatedBytes() - bytes ) / ITERATIONS;
+
+		System.out.printf( "%d nodes, recursive find: %.1f s/search (%d bytes), findFirst: %.1f s/search (%d bytes) (%.1fx)%n",
+				( 1 << ( LEVELS + 1 ) ) - 1, legacy, legacyBytes, visitor, visitorBytes, legacy / visitor );
+
+		// Tiefe Bume werden ohne Rekursion durchlaufen
+		Node chain = new Node( new String[] { "top" }, "The top." );
+		Node bottom = chain;
+		for (int i = 0; i < CHAIN; i++)
+			bottom = new Node( bottom, new String[] { "link" + i }, "A link." );
+
+		final int[] visited = new int[ 1 ];
+		chain.traverse( new INodeVisitor() {
+			@Override
+			public boolean visit( Node node, int depth ) {
+				visited[ 0 ] = Math.max( visited[ 0 ], depth );
+				return true;
+			}
+		}, -1 );
+		assertEquals( CHAIN, visited[ 0 ] );
+		assertSame( chain, bottom.getRoot() );
+	}
+
+	private static long allocatedBytes() {
+
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if ( bean instanceof com.sun.management.ThreadMXBean )
+			return ( (com.sun.management.ThreadMXBean) bean ).getThreadAllocatedBytes( Thread.currentThread().getId() );
+		return 0;
+	}
+}
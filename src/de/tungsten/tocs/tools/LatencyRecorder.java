@@ -0,0 +1,101 @@
+package de.tungsten.tocs.tools;
+
+import java.util.Arrays;
+
+/**
+ * Sammelt Latenzen in Nanosekunden und wertet sie als Perzentile aus. Alle
+ * Methoden sind threadsicher, mehrere {@link SimulatedClient}s knnen also in
+ * denselben <code>LatencyRecorder</code> schreiben.
+ *
+ * @author tungsten
+ *
+ */
+public class LatencyRecorder {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final String name;
+
+	private long[] samples = new long[ INITIAL_CAPACITY ];
+	private int count = 0;
+
+	/**
+	 * Erstellt einen neuen, leeren <code>LatencyRecorder</code>.
+	 *
+	 * @param name	Der Name, unter dem die Werte im Bericht erscheinen.
+	 */
+	public LatencyRecorder( String name ) {
+		this.name = name;
+	}
+
+	/**
+	 * Nimmt eine gemessene Latenz auf.
+	 *
+	 * @param nanos	Die Latenz in Nanosekunden.
+	 */
+	public synchronized void record( long nanos ) {
+
+		if ( count == samples.length )
+			samples = Arrays.copyOf( samples, samples.length * 2 );
+
+		samples[count++] = nanos;
+	}
+
+	/**
+	 * Gibt die Anzahl der aufgenommenen Werte zurck.
+	 */
+	public synchronized int getCount() {
+		return count;
+	}
+
+	/**
+	 * Gibt das gegebene Perzentil aller bisher aufgenommenen Werte zurck.
+	 *
+	 * @param percentile	Das Perzentil zwischen <code>0</code> und
+	 * 						<code>100</code>.
+	 * @return				Die Latenz in Nanosekunden, oder <code>0</code>,
+	 * 						wenn noch nichts aufgenommen wurde.
+	 */
+	public long getPercentile( double percentile ) {
+		return percentile( sorted(), percentile );
+	}
+
+	/**
+	 * Gibt eine Zeile mit Anzahl, p50, p90, p99 und Maximum in Millisekunden
+	 * zurck.
+	 */
+	@Override
+	public String toString() {
+
+		long[] sorted = sorted();
+		if ( sorted.length == 0 )
+			return String.format( "%-16s n=0", name );
+
+		return String.format( "%-16s n=%-8d p50=%8.2f ms  p90=%8.2f ms  p99=%8.2f ms  max=%8.2f ms",
+				name, sorted.length,
+				millis( percentile( sorted, 50 ) ),
+				millis( percentile( sorted, 90 ) ),
+				millis( percentile( sorted, 99 ) ),
+				millis( sorted[sorted.length - 1] ) );
+	}
+
+	private synchronized long[] sorted() {
+
+		long[] copy = Arrays.copyOf( samples, count );
+		Arrays.sort( copy );
+		return copy;
+	}
+
+	private static long percentile( long[] sorted, double percentile ) {
+
+		if ( sorted.length == 0 ) return 0;
+
+		// Nearest-Rank-Methode
+		int rank = (int) Math.ceil( percentile / 100.0 * sorted.length );
+		return sorted[Math.max( 0, Math.min( sorted.length, rank ) - 1 )];
+	}
+
+	private static double millis( long nanos ) {
+		return nanos / 1000000.0;
+	}
+}
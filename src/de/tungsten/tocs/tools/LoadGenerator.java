@@ -0,0 +1,299 @@
+package de.tungsten.tocs.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.tungsten.tocs.config.Configuration;
+import de.tungsten.tocs.config.IntegerType;
+import de.tungsten.tocs.net.TOCSServer;
+
+/**
+ * Erzeugt Last auf einem lokal laufenden {@link TOCSServer}. Dazu werden
+ * beliebig viele {@link SimulatedClient}s gestartet, die sich ber Loopback
+ * verbinden, die Mens durchlaufen und danach Befehle senden. Am Ende werden
+ * die Perzentile der Verbindungszeit, der Zeit von <code>Ready</code> bis zum
+ * Spawnen und der Latenz jedes Befehls ausgegeben.
+ * <p>
+ * Die Einstellungen werden als <code>name=wert</code> bergeben, z.B.
+ * <pre>
+ * java de.tungsten.tocs.tools.LoadGenerator clients=200 rate=2 duration=60 mix=go:4,describe:3,take:2,put:1
+ * </pre>
+ * <ul>
+ * <li> <b>port</b> - Der Port des Servers. Ohne Angabe wird er wie beim Server
+ * 		aus <code>tocs.conf</code> gelesen.
+ * <li> <b>clients</b> - Die Anzahl der simulierten Spieler.
+ * <li> <b>rate</b> - Befehle pro Sekunde und Spieler.
+ * <li> <b>duration</b> - Sekunden, die nach dem Start Befehle gesendet werden.
+ * <li> <b>mix</b> - Die Gewichtung der Befehle <code>go</code>,
+ * 		<code>take</code>, <code>put</code> und <code>describe</code>.
+ * <li> <b>item</b> - Der Gegenstand, der genommen und abgelegt wird.
+ * <li> <b>ramp</b> - Millisekunden zwischen dem Start zweier Spieler.
+ * <li> <b>timeout</b> - Sekunden, die ein Spieler hchstens auf eine Antwort
+ * 		wartet. Muss lnger sein als der Countdown der Lobby.
+ * </ul>
+ *
+ * @author tungsten
+ *
+ */
+public class LoadGenerator {
+
+	// Wie in TOCSServer
+	private static final String	CONFIG_FILE		= "tocs.conf";
+	private static final String	CONFIG_PORT		= "port";
+	private static final int	DEFAULT_PORT	= 10024;
+
+	private static final int	DEFAULT_CLIENTS		= 10;
+	private static final double	DEFAULT_RATE		= 1.0;
+	private static final int	DEFAULT_DURATION	= 30;
+	private static final String	DEFAULT_MIX			= "go:4,describe:3,take:2,put:1";
+	private static final String	DEFAULT_ITEM		= "knife";
+	private static final int	DEFAULT_RAMP		= 10;
+	private static final int	DEFAULT_TIMEOUT		= 180;
+
+	public static final String VERB_GO			= "go";
+	public static final String VERB_TAKE		= "take";
+	public static final String VERB_PUT			= "put";
+	public static final String VERB_DESCRIBE	= "describe";
+
+	private static final String[] DIRECTIONS = { "north", "east", "south", "west" };
+
+	private int port;
+	private int clients = DEFAULT_CLIENTS;
+	private double rate = DEFAULT_RATE;
+	private int duration = DEFAULT_DURATION;
+	private String item = DEFAULT_ITEM;
+	private int ramp = DEFAULT_RAMP;
+	private int timeout = DEFAULT_TIMEOUT;
+
+	// Die Verben und ihre aufsummierten Gewichte
+	private final List<String> verbs = new ArrayList<String>();
+	private int[] weights;
+
+	private final LatencyRecorder connectLatency = new LatencyRecorder( "connect" );
+	private final LatencyRecorder spawnLatency = new LatencyRecorder( "lobby-to-spawn" );
+	private final LinkedHashMap<String, LatencyRecorder> commandLatency = new LinkedHashMap<String, LatencyRecorder>();
+
+	private final AtomicInteger failures = new AtomicInteger();
+
+	private volatile long deadline;
+
+	public static void main( String[] args ) throws InterruptedException {
+
+		LoadGenerator generator = new LoadGenerator();
+		for (String arg : args) {
+
+			int index = arg.indexOf( '=' );
+			if ( index < 0 ) {
+				System.err.println( "Expected name=value, got \"" + arg + "\"." );
+				System.exit( 1 );
+			}
+			generator.set( arg.substring( 0, index ).trim(), arg.substring( index + 1 ).trim() );
+		}
+
+		generator.run();
+	}
+
+	/**
+	 * Erstellt einen neuen <code>LoadGenerator</code> mit den
+	 * Standardeinstellungen.
+	 */
+	public LoadGenerator() {
+
+		// Den Port wie der Server bestimmen, falls die Konfiguration da ist
+		port = DEFAULT_PORT;
+		if ( new File( CONFIG_FILE ).exists() ) {
+			Configuration configuration = Configuration.getInstance();
+			configuration.loadFromFile( CONFIG_FILE );
+			port = (int) configuration.getValue( CONFIG_PORT, IntegerType.getInstance(), DEFAULT_PORT );
+		}
+
+		setMix( DEFAULT_MIX );
+	}
+
+	/**
+	 * ndert eine Einstellung, siehe die Beschreibung der Klasse.
+	 *
+	 * @param name	Der Name der Einstellung.
+	 * @param value	Der neue Wert.
+	 * @throws IllegalArgumentException	Wenn es die Einstellung nicht gibt
+	 * 									oder der Wert ungltig ist.
+	 */
+	public void set( String name, String value ) {
+
+		if ( name.equals( "port" ) ) port = Integer.parseInt( value );
+		else if ( name.equals( "clients" ) ) clients = Integer.parseInt( value );
+		else if ( name.equals( "rate" ) ) rate = Double.parseDouble( value );
+		else if ( name.equals( "duration" ) ) duration = Integer.parseInt( value );
+		else if ( name.equals( "mix" ) ) setMix( value );
+		else if ( name.equals( "item" ) ) item = value;
+		else if ( name.equals( "ramp" ) ) ramp = Integer.parseInt( value );
+		else if ( name.equals( "timeout" ) ) timeout = Integer.parseInt( value );
+		else throw new IllegalArgumentException( "Unknown setting \"" + name + "\"." );
+
+		if ( clients < 1 || rate <= 0 || duration < 0 || ramp < 0 || timeout < 1 )
+			throw new IllegalArgumentException( "Invalid value \"" + value + "\" for \"" + name + "\"." );
+	}
+
+	/**
+	 * Liest die Gewichtung der Befehle im Format <code>verb:gewicht,...</code>.
+	 */
+	private void setMix( String mix ) {
+
+		verbs.clear();
+		commandLatency.clear();
+
+		List<Integer> sums = new ArrayList<Integer>();
+		int sum = 0;
+
+		for (String entry : mix.split( "," )) {
+
+			String[] parts = entry.split( ":" );
+			String verb = parts[0].trim();
+			int weight = parts.length > 1 ? Integer.parseInt( parts[1].trim() ) : 1;
+
+			if ( !verb.equals( VERB_GO ) && !verb.equals( VERB_TAKE )
+					&& !verb.equals( VERB_PUT ) && !verb.equals( VERB_DESCRIBE ) )
+				throw new IllegalArgumentException( "Unknown command \"" + verb + "\" in mix." );
+
+			if ( weight <= 0 ) continue;
+
+			sum += weight;
+			verbs.add( verb );
+			sums.add( sum );
+			commandLatency.put( verb, new LatencyRecorder( verb ) );
+		}
+
+		if ( verbs.isEmpty() )
+			throw new IllegalArgumentException( "The mix \"" + mix + "\" contains no commands." );
+
+		weights = new int[ sums.size() ];
+		for (int i = 0; i < weights.length; i++)
+			weights[i] = sums.get( i );
+	}
+
+	/**
+	 * Startet alle Spieler, wartet bis sie fertig sind und gibt den Bericht
+	 * aus.
+	 */
+	public void run() throws InterruptedException {
+
+		System.out.println( "Starting " + clients + " clients against port " + port + ", "
+				+ rate + " commands/s each for " + duration + " s, mix " + verbs + "." );
+
+		// Die Messung beginnt erst, wenn alle Spieler gestartet wurden
+		deadline = Long.MAX_VALUE;
+
+		List<Thread> threads = new ArrayList<Thread>( clients );
+		for (int i = 0; i < clients; i++) {
+
+			Thread thread = new Thread( new SimulatedClient( i, this ), "LoadGenerator-" + i );
+			thread.setDaemon( true );
+			thread.start();
+			threads.add( thread );
+
+			if ( ramp > 0 ) Thread.sleep( ramp );
+		}
+
+		long start = System.nanoTime();
+		deadline = start + duration * 1000000000L;
+
+		for (Thread thread : threads)
+			thread.join();
+
+		double seconds = (System.nanoTime() - start) / 1000000000.0;
+		report( seconds );
+	}
+
+	private void report( double seconds ) {
+
+		int commands = 0;
+
+		System.out.println();
+		System.out.println( (clients - failures.get()) + " clients finished, " + failures.get() + " failed." );
+		System.out.println( connectLatency );
+		System.out.println( spawnLatency );
+
+		for (LatencyRecorder recorder : commandLatency.values()) {
+			System.out.println( recorder );
+			commands += recorder.getCount();
+		}
+
+		System.out.println( String.format( "%d commands in %.1f s, %.1f commands/s.",
+				commands, seconds, commands / seconds ) );
+	}
+
+	void failed( int id, Exception e ) {
+
+		failures.incrementAndGet();
+		System.err.println( "Client " + id + " failed: " + e );
+	}
+
+	boolean isFinished() {
+		return System.nanoTime() >= deadline;
+	}
+
+	/**
+	 * Whlt ein Verb entsprechend der Gewichtung aus.
+	 */
+	String nextVerb( Random random ) {
+
+		int value = random.nextInt( weights[weights.length - 1] );
+		for (int i = 0; i < weights.length; i++) {
+			if ( value < weights[i] ) return verbs.get( i );
+		}
+		return verbs.get( verbs.size() - 1 );
+	}
+
+	/**
+	 * Erstellt die Eingabe fr das gegebene Verb.
+	 */
+	String createCommand( String verb, Random random ) {
+
+		if ( verb.equals( VERB_GO ) )
+			return "go " + DIRECTIONS[random.nextInt( DIRECTIONS.length )];
+
+		if ( verb.equals( VERB_TAKE ) )
+			return "take the " + item;
+
+		if ( verb.equals( VERB_PUT ) )
+			return "put the " + item + " onto the floor";
+
+		// Abwechselnd den Raum und den Gegenstand beschreiben
+		return random.nextBoolean() ? "look" : "describe the " + item;
+	}
+
+	int getPort() {
+		return port;
+	}
+
+	/**
+	 * Gibt den Timeout in Millisekunden zurck.
+	 */
+	int getTimeout() {
+		return timeout * 1000;
+	}
+
+	/**
+	 * Gibt den Abstand zwischen zwei Befehlen eines Spielers in Nanosekunden
+	 * zurck.
+	 */
+	long getCommandInterval() {
+		return (long) (1000000000L / rate);
+	}
+
+	LatencyRecorder getConnectLatency() {
+		return connectLatency;
+	}
+
+	LatencyRecorder getSpawnLatency() {
+		return spawnLatency;
+	}
+
+	LatencyRecorder getCommandLatency( String verb ) {
+		return commandLatency.get( verb );
+	}
+}
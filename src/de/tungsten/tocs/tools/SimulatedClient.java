@@ -0,0 +1,196 @@
+package de.tungsten.tocs.tools;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import de.tungsten.tocs.net.FrameCodec;
+
+/**
+ * Ein simulierter Spieler des {@link LoadGenerator}s. Er verbindet sich ber
+ * Loopback mit dem Server, whlt Nickname und Team, klickt sich in der Lobby
+ * zu <code>Ready</code> durch und sendet nach dem Spawnen bis zum Ende der
+ * Messung Befehle im eingestellten Takt.
+ * <p>
+ * Der Client wertet die Ausgaben des Servers nicht aus, er wartet nur auf die
+ * Eingabeaufforderungen. Jede Ausgabe des Servers ist ein eigener Frame, die
+ * Eingabeaufforderungen lassen sich daher genau erkennen:
+ * <ul>
+ * <li> <code>"\n&gt; "</code> - Die Mens warten auf eine Eingabe.
+ * <li> <code>"\n\n&gt; "</code> - Der Spieler ist im Spiel und der letzte
+ * 		Befehl wurde vollstndig abgearbeitet.
+ * </ul>
+ *
+ * @author tungsten
+ *
+ */
+public class SimulatedClient implements Runnable {
+
+	// Die Eingabeaufforderungen der Mens und von AbstractConnection.play()
+	private static final String MENU_PROMPT	= "\n> ";
+	private static final String GAME_PROMPT	= "\n\n> ";
+
+	// Team automatisch zuweisen lassen, damit die Teams ausgeglichen sind
+	private static final String TEAM_OPTION		= "a";
+
+	// Equipment [0], Skins [1], Ready [2]
+	private static final String READY_OPTION	= "2";
+
+	// Die Server-Ausgaben sind lnger als die Eingaben der Spieler
+	private static final int MAX_FRAME_LENGTH	= 65536;
+
+	private final int id;
+	private final LoadGenerator generator;
+	private final Random random;
+
+	private final FrameCodec codec = new FrameCodec( MAX_FRAME_LENGTH );
+	private final ByteBuffer readBuffer = ByteBuffer.allocate( 4096 );
+
+	private Socket socket;
+	private InputStream in;
+	private OutputStream out;
+
+	/**
+	 * Erstellt einen neuen simulierten Spieler.
+	 *
+	 * @param id		Die Nummer des Spielers, daraus wird der Nickname
+	 * 					gebildet und die Folge der Befehle bestimmt.
+	 * @param generator	Der <code>LoadGenerator</code>, der die Einstellungen
+	 * 					enthlt und die Messwerte sammelt.
+	 */
+	public SimulatedClient( int id, LoadGenerator generator ) {
+		this.id = id;
+		this.generator = generator;
+		this.random = new Random( id );
+
+		readBuffer.limit( 0 );
+	}
+
+	@Override
+	public void run() {
+
+		try {
+			connect();
+			enterGame();
+			play();
+
+		} catch ( IOException e ) {
+			generator.failed( id, e );
+
+		} finally {
+			try {
+				if ( socket != null ) socket.close();
+			} catch ( IOException e ) {}
+		}
+	}
+
+	/**
+	 * Verbindet sich mit dem Server und misst die Zeit bis zur Frage nach dem
+	 * Nickname.
+	 */
+	private void connect() throws IOException {
+
+		long start = System.nanoTime();
+
+		socket = new Socket();
+		socket.connect( new InetSocketAddress( InetAddress.getLoopbackAddress(), generator.getPort() ),
+				generator.getTimeout() );
+		socket.setSoTimeout( generator.getTimeout() );
+		socket.setTcpNoDelay( true );
+
+		in = socket.getInputStream();
+		out = socket.getOutputStream();
+
+		await( MENU_PROMPT );
+		generator.getConnectLatency().record( System.nanoTime() - start );
+	}
+
+	/**
+	 * Whlt Nickname und Team, whlt in der Lobby <code>Ready</code> und
+	 * misst die Zeit, bis der Spieler gespawnt wurde.
+	 */
+	private void enterGame() throws IOException {
+
+		send( "load" + id );
+		await( MENU_PROMPT );
+
+		send( TEAM_OPTION );
+		await( MENU_PROMPT );
+
+		long ready = System.nanoTime();
+		send( READY_OPTION );
+		await( GAME_PROMPT );
+		generator.getSpawnLatency().record( System.nanoTime() - ready );
+	}
+
+	/**
+	 * Sendet Befehle aus dem Mix des <code>LoadGenerator</code>s, bis die
+	 * Messung beendet ist. Ein Befehl ist abgeschlossen, wenn der Server die
+	 * nchste Eingabeaufforderung sendet.
+	 */
+	private void play() throws IOException {
+
+		long interval = generator.getCommandInterval();
+		long next = System.nanoTime();
+
+		while ( !generator.isFinished() ) {
+
+			String verb = generator.nextVerb( random );
+
+			long start = System.nanoTime();
+			send( generator.createCommand( verb, random ) );
+			await( GAME_PROMPT );
+			generator.getCommandLatency( verb ).record( System.nanoTime() - start );
+
+			// Fester Takt, ein langsamer Befehl wird aber nicht nachgeholt
+			next += interval;
+			long delay = next - System.nanoTime();
+			if ( delay > 0 ) {
+				try {
+					Thread.sleep( delay / 1000000, (int) (delay % 1000000) );
+				} catch ( InterruptedException e ) {
+					return;
+				}
+			} else {
+				next = System.nanoTime();
+			}
+		}
+	}
+
+	private void send( String message ) throws IOException {
+
+		ByteBuffer frame = FrameCodec.encode( message );
+		out.write( frame.array(), frame.arrayOffset() + frame.position(), frame.remaining() );
+		out.flush();
+	}
+
+	/**
+	 * Liest Nachrichten des Servers, bis die gegebene Nachricht empfangen
+	 * wurde. Alle anderen Nachrichten werden verworfen.
+	 */
+	private void await( String expected ) throws IOException {
+
+		while ( true ) {
+
+			String message = codec.decode( readBuffer );
+			if ( message == null ) {
+
+				// Der Codec hat den Puffer vollstndig gelesen
+				int read = in.read( readBuffer.array() );
+				if ( read < 0 )
+					throw new EOFException( "The server closed the connection." );
+
+				readBuffer.position( 0 ).limit( read );
+
+			} else if ( message.equals( expected ) ) {
+				return;
+			}
+		}
+	}
+}